@@ -0,0 +1,57 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.AuditManager;
+import wangxianming.lowop.testkit.SimulatedServer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuditManager 基准：追加审计记录（经由 addLogEntry）与关键字搜索
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuditManagerBenchmark {
+
+    private File dataFolder;
+    private AuditManager auditManager;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dataFolder = SimulatedServer.createDataFolder();
+        LowOP plugin = SimulatedServer.enablePlugin(dataFolder);
+        auditManager = plugin.getAuditManager();
+
+        // Fill the in-memory log up to its cap so searches scan a full buffer
+        for (int i = 0; i < 1000; i++) {
+            auditManager.logCommandExecution(i % 10 == 0 ? "reload" : "status", "Staff" + (i % 7), true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimulatedServer.deleteRecursively(dataFolder);
+    }
+
+    @Benchmark
+    public void addLogEntry() {
+        auditManager.logCommandExecution("status", "Staff1", true);
+    }
+
+    @Benchmark
+    public List<String> searchHit() {
+        return auditManager.searchEntries("reload", 50);
+    }
+
+    @Benchmark
+    public List<String> searchMiss() {
+        return auditManager.searchEntries("does-not-exist", 50);
+    }
+}
@@ -0,0 +1,97 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import wangxianming.lowop.utils.MessageTemplate;
+import wangxianming.lowop.utils.MessageUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比旧的 replace + colorize 发送路径与预编译模板渲染
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageRenderBenchmark {
+
+    private static final String CHANGE_MESSAGE = "&a已将玩家 &6{player} &a权限级别从 &7{from} &a设置为 &6{to}";
+    private static final String WELCOME_MESSAGE = "&6欢迎回来，管理员！";
+    private static final String HEX_MESSAGE = "&#FFAA00LowOP &7- &f{player} &8(&#55FF55{status}&8)";
+
+    private Map<String, String> changePlaceholders;
+    private Map<String, String> hexPlaceholders;
+
+    private MessageTemplate changeTemplate;
+    private MessageTemplate welcomeTemplate;
+    private MessageTemplate hexTemplate;
+
+    @Setup
+    public void setup() {
+        changePlaceholders = Map.of(
+            "player", "Notch",
+            "from", "§7普通玩家",
+            "to", "§6全权限管理员"
+        );
+        hexPlaceholders = Map.of(
+            "player", "Notch",
+            "status", "§e低权限管理员"
+        );
+
+        changeTemplate = MessageTemplate.compile(CHANGE_MESSAGE);
+        welcomeTemplate = MessageTemplate.compile(WELCOME_MESSAGE);
+        hexTemplate = MessageTemplate.compile(HEX_MESSAGE);
+    }
+
+    private static String legacyRender(String message, Map<String, String> placeholders) {
+        if (placeholders != null) {
+            for (Map.Entry<String, String> entry : placeholders.entrySet()) {
+                message = message.replace("{" + entry.getKey() + "}", entry.getValue());
+            }
+        }
+        return MessageUtils.colorize(message);
+    }
+
+    @Benchmark
+    public String colorize() {
+        return MessageUtils.colorize(CHANGE_MESSAGE);
+    }
+
+    @Benchmark
+    public String colorizeHex() {
+        return MessageUtils.colorize(HEX_MESSAGE);
+    }
+
+    @Benchmark
+    public String legacyChange() {
+        return legacyRender(CHANGE_MESSAGE, changePlaceholders);
+    }
+
+    @Benchmark
+    public String compiledChange() {
+        return changeTemplate.render(changePlaceholders);
+    }
+
+    @Benchmark
+    public String legacyWelcome() {
+        return legacyRender(WELCOME_MESSAGE, null);
+    }
+
+    @Benchmark
+    public String compiledWelcome() {
+        return welcomeTemplate.render();
+    }
+
+    @Benchmark
+    public String legacyHex() {
+        return legacyRender(HEX_MESSAGE, hexPlaceholders);
+    }
+
+    @Benchmark
+    public String compiledHex() {
+        return hexTemplate.render(hexPlaceholders);
+    }
+}
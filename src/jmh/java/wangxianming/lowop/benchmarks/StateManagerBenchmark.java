@@ -0,0 +1,88 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.managers.StateManager;
+import wangxianming.lowop.testkit.SimulatedServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StateManager 持久化基准：加载索引、离线玩家按需查找、修改后保存
+ * 初始数据以旧版 player_states.yml 写出，启用插件时迁移为二进制索引
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StateManagerBenchmark {
+
+    private static final String[] LEVELS = { "PLAYER", "LOWOP", "OP" };
+
+    @Param({ "1000", "100000", "1000000" })
+    public int players;
+
+    private File dataFolder;
+    private LowOP plugin;
+    private StateManager stateManager;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dataFolder = SimulatedServer.createDataFolder();
+        writeStates(new File(dataFolder, "player_states.yml"), players);
+        plugin = SimulatedServer.enablePlugin(dataFolder);
+        stateManager = plugin.getStateManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimulatedServer.deleteRecursively(dataFolder);
+    }
+
+    private static void writeStates(File file, int count) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("players:\n");
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(0x4C6F774F50L, i);
+                writer.write("  ");
+                writer.write(uuid.toString());
+                writer.write(":\n    level: ");
+                writer.write(LEVELS[i % LEVELS.length]);
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Benchmark
+    public StateManager load() {
+        return new StateManager(plugin);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 3, time = 1)
+    public PermissionManager.PermissionLevel lookup() {
+        // 逐个访问不同玩家，缓存容量远小于玩家数时基本都会落到索引
+        next = (next + 7919) % players;
+        return stateManager.getPlayerPermissionLevel(new UUID(0x4C6F774F50L, next));
+    }
+
+    @Benchmark
+    public void save() {
+        next = (next + 1) % players;
+        stateManager.setPlayerPermissionLevel(new UUID(0x4C6F774F50L, next), PermissionManager.PermissionLevel.OP, "Benchmark");
+        stateManager.saveAllData();
+    }
+}
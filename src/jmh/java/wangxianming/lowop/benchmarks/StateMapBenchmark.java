@@ -0,0 +1,88 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jol.info.GraphLayout;
+import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.utils.UuidLevelMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StateManager 内存表对比：HashMap&lt;UUID, PermissionLevel&gt; 与 UuidLevelMap
+ * 初始化时用 JOL 统计整个对象图的占用并打印每条目字节数，基准本身测量命中与未命中的查找
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StateMapBenchmark {
+
+    private static final PermissionManager.PermissionLevel[] LEVELS = PermissionManager.PermissionLevel.values();
+    private static final int PROBES = 1024;
+
+    @Param({ "10000", "1000000" })
+    public int players;
+
+    private Map<UUID, PermissionManager.PermissionLevel> hashMap;
+    private UuidLevelMap compactMap;
+    private UUID[] present;
+    private UUID[] absent;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hashMap = new HashMap<>();
+        compactMap = new UuidLevelMap();
+        for (int i = 0; i < players; i++) {
+            UUID uuid = UUID.randomUUID();
+            PermissionManager.PermissionLevel level = LEVELS[i % LEVELS.length];
+            hashMap.put(uuid, level);
+            compactMap.put(uuid, (byte) level.ordinal());
+        }
+
+        // 从 HashMap 中取出真实存在的键作为命中样本
+        present = hashMap.keySet().stream().limit(PROBES).toArray(UUID[]::new);
+        absent = new UUID[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            absent[i] = UUID.randomUUID();
+        }
+
+        // 枚举常量是共享的，不计入 HashMap 的占用
+        long enumBytes = GraphLayout.parseInstance((Object[]) LEVELS).totalSize();
+        long hashBytes = GraphLayout.parseInstance(hashMap).totalSize() - enumBytes;
+        long compactBytes = GraphLayout.parseInstance(compactMap).totalSize();
+        System.out.printf("%n[footprint] players=%d HashMap=%d bytes (%.1f/entry) UuidLevelMap=%d bytes (%.1f/entry) ratio=%.1fx%n",
+            players, hashBytes, hashBytes / (double) players, compactBytes, compactBytes / (double) players,
+            hashBytes / (double) Math.max(compactBytes, 1));
+    }
+
+    private int nextProbe() {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public PermissionManager.PermissionLevel hashMapHit() {
+        return hashMap.get(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public PermissionManager.PermissionLevel hashMapMiss() {
+        return hashMap.get(absent[nextProbe()]);
+    }
+
+    @Benchmark
+    public byte compactHit() {
+        return compactMap.get(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public byte compactMiss() {
+        return compactMap.get(absent[nextProbe()]);
+    }
+}
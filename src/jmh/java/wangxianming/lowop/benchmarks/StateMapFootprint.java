@@ -0,0 +1,57 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jol.info.GraphLayout;
+import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.utils.UuidLevelMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * UuidLevelMap 的内存占用检查：用 JOL 统计整个对象图，每条目字节数超过上限时以非零状态退出
+ * 运行: mvn -P benchmark test-compile exec:exec@footprint
+ */
+public final class StateMapFootprint {
+
+    // 0.75 装载因子下表容量为 2 的幂，最坏情况约 45 字节/条目；10k 与 1M 时分别约 28 与 36
+    private static final double MAX_BYTES_PER_ENTRY = 40.0;
+    private static final int[] SIZES = { 10_000, 1_000_000 };
+
+    private StateMapFootprint() {
+    }
+
+    public static void main(String[] args) {
+        PermissionManager.PermissionLevel[] levels = PermissionManager.PermissionLevel.values();
+        // 枚举常量是共享的，不计入 HashMap 的占用
+        long enumBytes = GraphLayout.parseInstance((Object[]) levels).totalSize();
+        boolean failed = false;
+
+        for (int players : SIZES) {
+            Map<UUID, PermissionManager.PermissionLevel> hashMap = new HashMap<>();
+            UuidLevelMap compactMap = new UuidLevelMap();
+            for (int i = 0; i < players; i++) {
+                UUID uuid = UUID.randomUUID();
+                PermissionManager.PermissionLevel level = levels[i % levels.length];
+                hashMap.put(uuid, level);
+                compactMap.put(uuid, (byte) level.ordinal());
+            }
+
+            long hashBytes = GraphLayout.parseInstance(hashMap).totalSize() - enumBytes;
+            long compactBytes = GraphLayout.parseInstance(compactMap).totalSize();
+            double perEntry = compactBytes / (double) players;
+            System.out.printf("[footprint] players=%d HashMap=%.1f/entry UuidLevelMap=%.1f/entry ratio=%.1fx%n",
+                players, hashBytes / (double) players, perEntry, hashBytes / (double) Math.max(compactBytes, 1));
+
+            if (perEntry > MAX_BYTES_PER_ENTRY) {
+                System.err.printf("[footprint] UuidLevelMap uses %.1f bytes/entry at %d players, above the %.0f byte ceiling%n",
+                    perEntry, players, MAX_BYTES_PER_ENTRY);
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package wangxianming.lowop.benchmarks;
+
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.*;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.commands.LowOPTabCompleter;
+import wangxianming.lowop.testkit.SimulatedServer;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /lowop Tab 补全基准，随离线玩家数量变化
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TabCompleterBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int offlinePlayers;
+
+    private File dataFolder;
+    private LowOPTabCompleter completer;
+    private CommandSender sender;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dataFolder = SimulatedServer.createDataFolder();
+        LowOP plugin = SimulatedServer.enablePlugin(dataFolder);
+        SimulatedServer.clearPlayers();
+        SimulatedServer.addOfflinePlayers(offlinePlayers);
+
+        completer = new LowOPTabCompleter(plugin.getConfigManager());
+        sender = SimulatedServer.stub(CommandSender.class, Map.of(
+            "getName", args -> "CONSOLE",
+            "hasPermission", args -> true
+        ));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimulatedServer.clearPlayers();
+        SimulatedServer.deleteRecursively(dataFolder);
+    }
+
+    @Benchmark
+    public List<String> firstArgument() {
+        return completer.onTabComplete(sender, null, "lowop", new String[] { "Player1" });
+    }
+
+    @Benchmark
+    public List<String> statusTarget() {
+        return completer.onTabComplete(sender, null, "lowop", new String[] { "status", "Player9" });
+    }
+}
@@ -0,0 +1,42 @@
+package wangxianming.lowop.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wangxianming.lowop.utils.ValidationUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ValidationUtils 中基于正则的校验器基准
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    private final String validName = "Steve_2024";
+    private final String invalidName = "this-is-not-a-valid-name";
+    private final String validUuid = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+    private final String invalidUuid = "069a79f4-44e9-4726-a5be-fca90e38aaZZ";
+
+    @Benchmark
+    public void usernames(Blackhole blackhole) {
+        blackhole.consume(ValidationUtils.isValidUsername(validName));
+        blackhole.consume(ValidationUtils.isValidUsername(invalidName));
+    }
+
+    @Benchmark
+    public void uuids(Blackhole blackhole) {
+        blackhole.consume(ValidationUtils.isValidUUID(validUuid));
+        blackhole.consume(ValidationUtils.isValidUUID(invalidUuid));
+    }
+
+    @Benchmark
+    public void filePaths(Blackhole blackhole) {
+        blackhole.consume(ValidationUtils.isSafeFilePath("exports/staff.csv"));
+        blackhole.consume(ValidationUtils.isSafeFilePath("../../etc/passwd"));
+    }
+}
@@ -0,0 +1,515 @@
+package wangxianming.lowop.loadtest;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.commands.LowOPCommand;
+import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.managers.RateLimitManager;
+import wangxianming.lowop.managers.ReconcileManager;
+import wangxianming.lowop.managers.StateManager;
+import wangxianming.lowop.managers.TaskManager;
+import wangxianming.lowop.testkit.FakeLuckPerms;
+import wangxianming.lowop.testkit.SimulatedScheduler;
+import wangxianming.lowop.testkit.SimulatedServer;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * 无头负载测试：在模拟服务器上让 N 个玩家登录/退出，管理员持续执行 /lowop 与批量命令，
+ * 自动保存按配置周期运行；结束后报告吞吐量、主线程 tick 耗时以及正确性不变式
+ * 指定 --outage 时 LuckPerms 会在场景中途故障若干秒，用于验证重试、熔断与恢复后的重放
+ * 排空后运行一轮漂移修复，再检查不变式；--no-reconcile 可跳过以观察未修复的漂移
+ *
+ * 运行：mvn -P loadtest test-compile exec:exec -Dloadtest.args="--players 500 --duration 120"
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final String[] LEVELS = { "player", "helper", "mod", "senior-mod", "lowop", "op" };
+
+    private final Options options;
+    private final Random random;
+    private final List<Player> players = new ArrayList<>();
+    private final List<Player> staff = new ArrayList<>();
+    private final Map<String, UUID> uuidByName = new HashMap<>();
+    private final Set<Player> online = new LinkedHashSet<>();
+    private final List<Long> tickNanos = new ArrayList<>();
+    private final List<String> violations = new ArrayList<>();
+
+    private LowOP plugin;
+    private LowOPCommand command;
+    private int joins;
+    private int quits;
+    private int singleCommands;
+    private int batchCommands;
+    private int detectCommands;
+    private int syncTasks;
+    private long drainNanos;
+    private boolean quiesced;
+
+    private LoadTest(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        LoadTest test = new LoadTest(options);
+        boolean passed;
+        try {
+            passed = test.run();
+        } finally {
+            SimulatedServer.getScheduler().shutdown();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        File dataFolder = SimulatedServer.createDataFolder();
+        try {
+            SimulatedServer.install();
+            writeConfig(dataFolder);
+            plugin = SimulatedServer.enablePlugin(dataFolder);
+            if (!options.verbose) {
+                plugin.getLogger().setLevel(Level.WARNING);
+            }
+            command = new LowOPCommand(plugin);
+            createPlayers();
+
+            // LuckPerms 修改用户数据后会触发 UserDataRecalculateEvent
+            FakeLuckPerms luckPerms = SimulatedServer.getLuckPerms();
+            luckPerms.setChangeListener(name -> {
+                UUID uuid = uuidByName.get(name);
+                if (uuid != null) {
+                    plugin.getPermissionManager().invalidateDetection(uuid);
+                }
+            });
+            plugin.getReconcileManager().setGroupLookup(new FakeGroupLookup(luckPerms));
+            // 离线时没有 LuckPerms 的用户名缓存，未命中缓存的玩家名从模拟玩家中查找
+            plugin.getSelectorManager().setNameLookup(name ->
+                CompletableFuture.completedFuture(uuidByName.get(name.toLowerCase(Locale.ROOT))));
+
+            long started = System.nanoTime();
+            runScenario();
+            long scenarioNanos = System.nanoTime() - started;
+
+            long drainStarted = System.nanoTime();
+            quiesced = drain();
+            if (options.reconcile) {
+                plugin.getReconcileManager().startPass();
+                quiesced &= drain();
+            }
+            drainNanos = System.nanoTime() - drainStarted;
+
+            checkInvariants();
+            plugin.onDisable();
+            checkPersistedState();
+
+            report(scenarioNanos);
+            return violations.isEmpty();
+        } finally {
+            SimulatedServer.deleteRecursively(dataFolder);
+        }
+    }
+
+    /**
+     * 基于默认配置写入测试配置；除非指定 --default-limits，否则放宽速率限制以测量吞吐量
+     */
+    private void writeConfig(File dataFolder) throws Exception {
+        YamlConfiguration config;
+        try (InputStream in = LowOP.class.getClassLoader().getResourceAsStream("config.yml");
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            config = YamlConfiguration.loadConfiguration(reader);
+        }
+
+        // 默认配置只有三级，压测使用六级阶梯覆盖多级等级的路径
+        List<Map<String, Object>> levels = new ArrayList<>();
+        String[] groups = { "default", "helper", "mod", "seniormod", "otherop", "op" };
+        for (int i = 0; i < LEVELS.length; i++) {
+            levels.add(Map.of("name", LEVELS[i], "group", groups[i]));
+        }
+        config.set("permission-groups.levels", levels);
+        config.set("settings.auto-save-interval", options.autoSaveSeconds);
+        if (!options.defaultLimits) {
+            config.set("settings.rate-limit", 1000);
+            config.set("settings.command-cooldown", 0.1);
+            config.set("rate-limit.backend-burst", 10000);
+            config.set("rate-limit.backend-refill-per-second", 10000);
+            config.set("rate-limit.batch-burst", 10000);
+            config.set("rate-limit.batch-refill-per-second", 10000);
+        }
+        // 漂移修复只在排空后手动触发一轮，且不限速
+        config.set("reconcile.interval-minutes", 0);
+        config.set("reconcile.repairs-per-minute", 100000);
+        if (options.outageSeconds > 0) {
+            // 缩短退避与熔断时间，让恢复在排空阶段内完成
+            config.set("advanced.retry-delay", 100);
+            config.set("advanced.breaker-open-seconds", 2);
+        }
+        dataFolder.mkdirs();
+        config.save(new File(dataFolder, "config.yml"));
+    }
+
+    private void createPlayers() {
+        for (int i = 0; i < options.players; i++) {
+            String name = String.format("Sim%05d", i);
+            UUID uuid = UUID.nameUUIDFromBytes(("LowOP-LoadTest:" + name).getBytes(StandardCharsets.UTF_8));
+            players.add(SimulatedServer.simulatedPlayer(name, uuid, false));
+            uuidByName.put(name.toLowerCase(Locale.ROOT), uuid);
+        }
+        // 管理员不登录，避免自身的 OP 状态进入不变式检查
+        for (int i = 0; i < options.staff; i++) {
+            String name = "Staff" + i;
+            staff.add(SimulatedServer.simulatedPlayer(name, UUID.nameUUIDFromBytes(("LowOP-LoadTest:" + name).getBytes(StandardCharsets.UTF_8)), true));
+        }
+    }
+
+    private void runScenario() {
+        SimulatedScheduler scheduler = SimulatedServer.getScheduler();
+        long totalTicks = options.durationSeconds * 20L;
+        long joinWindow = Math.max(1L, totalTicks / 4);
+        int nextJoin = 0;
+        long deadline = System.nanoTime();
+
+        long outageStart = options.outageSeconds > 0 ? totalTicks / 2 : -1L;
+        long outageEnd = outageStart + options.outageSeconds * 20L;
+        FakeLuckPerms luckPerms = SimulatedServer.getLuckPerms();
+
+        for (long tick = 1; tick <= totalTicks; tick++) {
+            long start = System.nanoTime();
+
+            if (tick == outageStart) {
+                luckPerms.setOutage(true);
+            }
+            if (tick == outageEnd) {
+                luckPerms.setOutage(false);
+            }
+
+            // 前四分之一时间内所有玩家依次首次登录
+            int joinTarget = (int) Math.min(players.size(), (players.size() * tick + joinWindow - 1) / joinWindow);
+            while (nextJoin < joinTarget) {
+                join(players.get(nextJoin++));
+            }
+
+            if (tick > joinWindow) {
+                churn();
+            }
+
+            for (int i = 0; i < staff.size(); i++) {
+                if ((tick + i * 7L) % options.commandIntervalTicks == 0) {
+                    issueStaffCommand(staff.get(i));
+                }
+            }
+
+            syncTasks += scheduler.tick();
+            tickNanos.add(System.nanoTime() - start);
+
+            deadline += TICK_NANOS;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            } else {
+                deadline = System.nanoTime();
+            }
+        }
+    }
+
+    private void join(Player player) {
+        SimulatedServer.join(player);
+        online.add(player);
+        joins++;
+    }
+
+    private void churn() {
+        // 每秒约有 churn-rate 比例的玩家退出，同时有等量玩家重新登录
+        double perTick = options.churnRate / 20.0 * players.size();
+        int events = (int) perTick + (random.nextDouble() < perTick - (int) perTick ? 1 : 0);
+        for (int i = 0; i < events; i++) {
+            if (!online.isEmpty()) {
+                Player leaving = pick(new ArrayList<>(online));
+                SimulatedServer.quit(leaving);
+                online.remove(leaving);
+                quits++;
+            }
+            List<Player> offline = new ArrayList<>(players);
+            offline.removeAll(online);
+            if (!offline.isEmpty()) {
+                join(pick(offline));
+            }
+        }
+    }
+
+    private void issueStaffCommand(Player sender) {
+        int roll = random.nextInt(100);
+        if (roll < 65) {
+            singleCommands++;
+            dispatch(sender, pick(players).getName(), LEVELS[random.nextInt(LEVELS.length)]);
+        } else if (roll < 90) {
+            batchCommands++;
+            int size = 2 + random.nextInt(9);
+            StringJoiner targets = new StringJoiner(",");
+            for (int i = 0; i < size; i++) {
+                targets.add(pick(players).getName());
+            }
+            dispatch(sender, "batch", LEVELS[random.nextInt(LEVELS.length)], targets.toString());
+        } else {
+            detectCommands++;
+            dispatch(sender, "detect", "@a");
+        }
+    }
+
+    private void dispatch(Player sender, String... args) {
+        try {
+            command.onCommand(sender, null, "lowop", args);
+        } catch (RuntimeException e) {
+            violations.add("command /lowop " + String.join(" ", args) + " threw " + e);
+        }
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    /**
+     * 停止产生负载后继续推进 tick，直到连续两秒没有待执行的一次性任务和异步任务，且没有暂存待重放的变更
+     */
+    private boolean drain() {
+        // 故障持续到场景结束时，在排空前恢复后端
+        SimulatedServer.getLuckPerms().setOutage(false);
+        SimulatedScheduler scheduler = SimulatedServer.getScheduler();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drainTimeoutSeconds);
+        int idleTicks = 0;
+        while (System.nanoTime() < deadline) {
+            syncTasks += scheduler.tick();
+            // 插件自己的工作线程与主线程派发队列也必须清空
+            TaskManager tasks = plugin.getTaskManager();
+            if (scheduler.getPendingSyncTasks() == 0 && scheduler.getActiveAsyncTasks() == 0
+                    && tasks.getActiveWorkers() == 0
+                    && tasks.getMainThreadQueueDepth() == 0
+                    && plugin.getPermissionManager().getParkedChangeCount() == 0
+                    && !plugin.getReconcileManager().isPassRunning()
+                    && plugin.getReconcileManager().getQueuedRepairs() == 0) {
+                if (++idleTicks >= 40) {
+                    return true;
+                }
+            } else {
+                idleTicks = 0;
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+        return false;
+    }
+
+    /**
+     * 每个模拟玩家的 LuckPerms 父组必须恰好是其存储级别对应的组
+     */
+    private void checkInvariants() {
+        if (!quiesced) {
+            violations.add("plugin did not quiesce within " + options.drainTimeoutSeconds + "s");
+        }
+
+        StateManager stateManager = plugin.getStateManager();
+        FakeLuckPerms luckPerms = SimulatedServer.getLuckPerms();
+        for (Player player : players) {
+            PermissionManager.PermissionLevel stored = stateManager.getPlayerPermissionLevel(player.getUniqueId());
+            Set<String> expected = Collections.singleton(groupFor(stored).toLowerCase(Locale.ROOT));
+            Set<String> actual = luckPerms.getGroups(player.getName());
+            if (!actual.equals(expected)) {
+                violations.add(player.getName() + ": stored " + stored + " but LuckPerms groups " + actual);
+            }
+        }
+    }
+
+    /**
+     * 关闭插件后重新从磁盘加载，结果必须与内存状态一致
+     */
+    private void checkPersistedState() {
+        Map<UUID, PermissionManager.PermissionLevel> inMemory = collect(plugin.getStateManager());
+        Map<UUID, PermissionManager.PermissionLevel> onDisk = collect(new StateManager(plugin));
+        if (!inMemory.equals(onDisk)) {
+            violations.add("persisted state differs from memory: " + inMemory.size() + " in memory, " + onDisk.size() + " on disk");
+        }
+    }
+
+    private static Map<UUID, PermissionManager.PermissionLevel> collect(StateManager stateManager) {
+        Map<UUID, PermissionManager.PermissionLevel> states = new HashMap<>();
+        stateManager.iteratePlayerStates().forEachRemaining(entry -> states.put(entry.getKey(), entry.getValue()));
+        return states;
+    }
+
+    private String groupFor(PermissionManager.PermissionLevel level) {
+        return plugin.getConfigManager().getLevelLadder().getGroup(level);
+    }
+
+    private void report(long scenarioNanos) {
+        FakeLuckPerms luckPerms = SimulatedServer.getLuckPerms();
+        RateLimitManager rateLimits = plugin.getRateLimitManager();
+        double seconds = (scenarioNanos + drainNanos) / 1e9;
+        List<Long> sorted = new ArrayList<>(tickNanos);
+        Collections.sort(sorted);
+        long overruns = sorted.stream().filter(nanos -> nanos > TICK_NANOS).count();
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+
+        System.out.println("==== LowOP load test ====");
+        System.out.printf("players=%d staff=%d duration=%ds churn=%.2f/s command-interval=%d ticks limits=%s seed=%d%n",
+            options.players, options.staff, options.durationSeconds, options.churnRate, options.commandIntervalTicks,
+            options.defaultLimits ? "default" : "relaxed", options.seed);
+        System.out.println("-- load");
+        System.out.printf("joins=%d quits=%d single=%d batch=%d detect=%d sync-tasks=%d messages=%d%n",
+            joins, quits, singleCommands, batchCommands, detectCommands, syncTasks, SimulatedServer.getMessagesSent());
+        System.out.println("-- throughput");
+        System.out.printf("lp commands=%d (%.1f/s) writes=%d (%.1f/s) syncs=%d rejected=%d drain=%.1fs peak-async-threads=%d%n",
+            luckPerms.getCommandCount(), luckPerms.getCommandCount() / seconds,
+            luckPerms.getWriteCount(), luckPerms.getWriteCount() / seconds,
+            luckPerms.getSyncCount(), luckPerms.getRejectedCount(), drainNanos / 1e9,
+            SimulatedServer.getScheduler().getPeakAsyncThreads());
+        TaskManager tasks = plugin.getTaskManager();
+        System.out.printf("executor: completed=%d peak-active=%d main-thread peak-queue=%d failures=%d%n",
+            tasks.getCompletedWorkerTasks(), tasks.getPeakActiveWorkers(),
+            tasks.getPeakMainThreadQueueDepth(), tasks.getFailedTasks());
+        System.out.printf("rate limited: sender=%d backend=%d (throttled %d) batch=%d%n",
+            rateLimits.getSenderRejections(), rateLimits.getBackendRejections(),
+            rateLimits.getBackendThrottled(), rateLimits.getBatchRejections());
+        PermissionManager permissions = plugin.getPermissionManager();
+        System.out.printf("backend: outage=%ds failed-during-outage=%d retries=%d breaker=%s trips=%d fast-failed=%d parked=%d%n",
+            options.outageSeconds, luckPerms.getUnavailableCount(), permissions.getBackendRetries(),
+            permissions.getBackendBreakerState(), permissions.getBackendBreakerTrips(),
+            permissions.getBackendBreakerRejections(), permissions.getParkedChangeCount());
+        ReconcileManager reconcile = plugin.getReconcileManager();
+        System.out.printf("reconcile: passes=%d checked=%d drift=%d repaired=%d failed=%d%n",
+            reconcile.getPasses(), reconcile.getScanned(), reconcile.getDrift(),
+            reconcile.getRepaired(), reconcile.getRepairFailed());
+        System.out.println("-- tick impact (main thread ms per tick)");
+        System.out.printf("mean=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f over-budget=%d/%d%n",
+            mean, percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+            sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1) / 1e6, overruns, sorted.size());
+        System.out.println("-- invariants");
+        System.out.printf("stored players=%d lp users=%d violations=%d%n",
+            plugin.getStateManager().getTotalPlayers(), luckPerms.getKnownUsers().size(), violations.size());
+        violations.stream().limit(20).forEach(violation -> System.out.println("  ! " + violation));
+        if (violations.size() > 20) {
+            System.out.println("  ... " + (violations.size() - 20) + " more");
+        }
+        System.out.println(violations.isEmpty() ? "RESULT: PASS" : "RESULT: FAIL");
+    }
+
+    /**
+     * 从 FakeLuckPerms 读取父组，代替离线时不可用的 LuckPerms API
+     */
+    private final class FakeGroupLookup implements ReconcileManager.GroupLookup {
+        private final FakeLuckPerms luckPerms;
+
+        private FakeGroupLookup(FakeLuckPerms luckPerms) {
+            this.luckPerms = luckPerms;
+        }
+
+        @Override
+        public CompletableFuture<Set<String>> getGroups(UUID playerUUID) {
+            return CompletableFuture.completedFuture(luckPerms.getGroups(nameOf(playerUUID)));
+        }
+
+        @Override
+        public CompletableFuture<Set<UUID>> getMembers(Collection<String> groups) {
+            Set<UUID> members = new HashSet<>();
+            for (String user : luckPerms.getKnownUsers()) {
+                UUID uuid = uuidByName.get(user);
+                if (uuid != null && !Collections.disjoint(luckPerms.getGroups(user), groups)) {
+                    members.add(uuid);
+                }
+            }
+            return CompletableFuture.completedFuture(members);
+        }
+
+        private String nameOf(UUID playerUUID) {
+            for (Map.Entry<String, UUID> entry : uuidByName.entrySet()) {
+                if (entry.getValue().equals(playerUUID)) {
+                    return entry.getKey();
+                }
+            }
+            return playerUUID.toString();
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+    }
+
+    private static final class Options {
+        private int players = 200;
+        private int staff = 3;
+        private int durationSeconds = 60;
+        private int commandIntervalTicks = 40;
+        private int autoSaveSeconds = 5;
+        private int drainTimeoutSeconds = 120;
+        private int outageSeconds;
+        private boolean reconcile = true;
+        private double churnRate = 0.01;
+        private long seed = 42L;
+        private boolean defaultLimits;
+        private boolean verbose;
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--players":
+                        options.players = Integer.parseInt(args[++i]);
+                        break;
+                    case "--staff":
+                        options.staff = Integer.parseInt(args[++i]);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--command-interval":
+                        options.commandIntervalTicks = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--auto-save":
+                        options.autoSaveSeconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--drain-timeout":
+                        options.drainTimeoutSeconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--outage":
+                        options.outageSeconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--no-reconcile":
+                        options.reconcile = false;
+                        break;
+                    case "--churn":
+                        options.churnRate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--default-limits":
+                        options.defaultLimits = true;
+                        break;
+                    case "--verbose":
+                        options.verbose = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg
+                            + " (supported: --players --staff --duration --command-interval --auto-save"
+                            + " --drain-timeout --outage --no-reconcile --churn --seed --default-limits --verbose)");
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package wangxianming.lowop;
 
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import wangxianming.lowop.commands.LowOPCommand;
 import wangxianming.lowop.commands.LowOPTabCompleter;
+import wangxianming.lowop.listeners.LuckPermsListener;
 import wangxianming.lowop.listeners.PlayerJoinListener;
 import wangxianming.lowop.managers.*;
 import wangxianming.lowop.utils.MessageUtils;
 import wangxianming.lowop.utils.ValidationUtils;
 
+import java.io.File;
 import java.util.logging.Level;
 
 public class LowOP extends JavaPlugin {
@@ -16,9 +20,29 @@ public class LowOP extends JavaPlugin {
     
     private ConfigManager configManager;
     private StateManager stateManager;
+    private ContextManager contextManager;
     private PermissionManager permissionManager;
     private AuditManager auditManager;
     private HealthManager healthManager;
+    private NotificationManager notificationManager;
+    private RateLimitManager rateLimitManager;
+    private TaskManager taskManager;
+    private OutboxManager outboxManager;
+    private ReconcileManager reconcileManager;
+    private TransferManager transferManager;
+    private SelectorManager selectorManager;
+    private ExpiryManager expiryManager;
+    private SyncManager syncManager;
+    private LuckPermsListener luckPermsListener;
+
+    public LowOP() {
+        super();
+    }
+
+    // Used by benchmarks and tests that load the plugin outside a running server
+    protected LowOP(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
 
     @Override
     public void onEnable() {
@@ -36,17 +60,61 @@ public class LowOP extends JavaPlugin {
         // Perform health check
         performStartupHealthCheck();
         
+        // Finish changes interrupted by the last stop once the server is running
+        if (outboxManager != null) {
+            getServer().getScheduler().runTask(this, outboxManager::startReplay);
+        }
+        
+        // Peers' changes are applied once the server is running
+        if (syncManager != null) {
+            syncManager.start();
+        }
+        
+        // Grants that ran out while the server was down are reverted on the first check
+        if (expiryManager != null) {
+            expiryManager.start();
+        }
+        
         getLogger().info("LowOP has been enabled successfully!");
         getLogger().info("Version: " + getDescription().getVersion());
     }
 
     @Override
     public void onDisable() {
+        if (luckPermsListener != null) {
+            luckPermsListener.unregister();
+        }
+        
+        if (reconcileManager != null) {
+            reconcileManager.shutdown();
+        }
+        
+        if (expiryManager != null) {
+            expiryManager.shutdown();
+        }
+        
+        // Let in-flight permission changes finish before the final save
+        if (taskManager != null) {
+            taskManager.shutdown();
+        }
+        
+        if (outboxManager != null) {
+            outboxManager.close();
+        }
+        
+        if (syncManager != null) {
+            syncManager.close();
+        }
+        
         // Save all data before shutdown
         if (stateManager != null) {
             stateManager.saveAllData();
         }
         
+        if (contextManager != null) {
+            contextManager.saveAllData();
+        }
+        
         if (auditManager != null) {
             auditManager.flushLogs();
         }
@@ -57,10 +125,20 @@ public class LowOP extends JavaPlugin {
     private void initializeManagers() {
         try {
             configManager = new ConfigManager(this);
+            taskManager = new TaskManager(this);
+            rateLimitManager = new RateLimitManager(this);
             stateManager = new StateManager(this);
+            contextManager = new ContextManager(this);
+            syncManager = new SyncManager(this);
+            outboxManager = new OutboxManager(this);
             permissionManager = new PermissionManager(this);
+            reconcileManager = new ReconcileManager(this);
+            transferManager = new TransferManager(this);
+            selectorManager = new SelectorManager(this);
+            expiryManager = new ExpiryManager(this);
             auditManager = new AuditManager(this);
             healthManager = new HealthManager(this);
+            notificationManager = new NotificationManager(this);
             
             getLogger().info("All managers initialized successfully");
         } catch (Exception e) {
@@ -85,13 +163,24 @@ public class LowOP extends JavaPlugin {
         try {
             MessageUtils messageUtils = new MessageUtils(configManager);
             getServer().getPluginManager().registerEvents(
-                new PlayerJoinListener(stateManager, permissionManager, auditManager, messageUtils), 
+                new PlayerJoinListener(stateManager, contextManager, permissionManager, auditManager, taskManager, messageUtils), 
                 this
             );
             getLogger().info("Listeners registered successfully");
         } catch (Exception e) {
             getLogger().log(Level.SEVERE, "Failed to register listeners", e);
         }
+        
+        // LuckPerms events keep the detection cache fresh
+        if (permissionManager.isLuckPermsAvailable()) {
+            try {
+                luckPermsListener = new LuckPermsListener(this, permissionManager);
+                luckPermsListener.register();
+            } catch (Exception | LinkageError e) {
+                luckPermsListener = null;
+                getLogger().log(Level.WARNING, "Could not subscribe to LuckPerms events, detection cache relies on TTL only", e);
+            }
+        }
     }
 
     private void performStartupHealthCheck() {
@@ -120,6 +209,10 @@ public class LowOP extends JavaPlugin {
         return stateManager;
     }
 
+    public ContextManager getContextManager() {
+        return contextManager;
+    }
+
     public PermissionManager getPermissionManager() {
         return permissionManager;
     }
@@ -131,4 +224,40 @@ public class LowOP extends JavaPlugin {
     public HealthManager getHealthManager() {
         return healthManager;
     }
+
+    public NotificationManager getNotificationManager() {
+        return notificationManager;
+    }
+
+    public RateLimitManager getRateLimitManager() {
+        return rateLimitManager;
+    }
+
+    public TaskManager getTaskManager() {
+        return taskManager;
+    }
+
+    public OutboxManager getOutboxManager() {
+        return outboxManager;
+    }
+
+    public ReconcileManager getReconcileManager() {
+        return reconcileManager;
+    }
+
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+
+    public SelectorManager getSelectorManager() {
+        return selectorManager;
+    }
+
+    public ExpiryManager getExpiryManager() {
+        return expiryManager;
+    }
+
+    public SyncManager getSyncManager() {
+        return syncManager;
+    }
 }
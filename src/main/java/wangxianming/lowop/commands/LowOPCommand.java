@@ -6,12 +6,23 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.ContextManager;
+import wangxianming.lowop.managers.ExpiryManager;
+import wangxianming.lowop.managers.NotificationManager;
 import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.managers.StateManager;
 import wangxianming.lowop.utils.MessageUtils;
+import wangxianming.lowop.utils.PlayerSelector;
 import wangxianming.lowop.utils.ValidationUtils;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class LowOPCommand implements CommandExecutor {
 
@@ -19,6 +30,9 @@ public class LowOPCommand implements CommandExecutor {
     private final MessageUtils messageUtils;
     private final ValidationUtils validationUtils;
 
+    // Dry runs list at most this many players; the rest are only counted
+    private static final int DRY_RUN_LIST_LIMIT = 10;
+
     public LowOPCommand(LowOP plugin) {
         this.plugin = plugin;
         this.messageUtils = new MessageUtils(plugin.getConfigManager());
@@ -38,6 +52,15 @@ public class LowOPCommand implements CommandExecutor {
             return handleHelp(sender);
         }
 
+        // --dry-run may appear anywhere; batch and selector changes only report their plan
+        boolean dryRun = Arrays.stream(args).anyMatch(arg -> arg.equalsIgnoreCase("--dry-run"));
+        if (dryRun) {
+            args = Arrays.stream(args).filter(arg -> !arg.equalsIgnoreCase("--dry-run")).toArray(String[]::new);
+            if (args.length == 0) {
+                return handleHelp(sender);
+            }
+        }
+
         String subCommand = args[0].toLowerCase();
 
         switch (subCommand) {
@@ -52,30 +75,43 @@ public class LowOPCommand implements CommandExecutor {
             case "audit":
                 return handleAudit(sender, args);
             case "batch":
-                return handleBatch(sender, args);
+                return handleBatch(sender, args, dryRun);
             case "version":
                 return handleVersion(sender);
             case "detect":
                 return handleDetect(sender, args);
+            case "summary":
+                return handleSummary(sender, args);
+            case "import":
+                return handleImport(sender, args);
+            case "export":
+                return handleExport(sender, args);
             default:
                 // Assume it's a player selector for permission management
-                return handlePlayerPermission(sender, args);
+                return handlePlayerPermission(sender, args, dryRun);
         }
     }
 
     private boolean handleHelp(CommandSender sender) {
         List<String> helpMessages = plugin.getConfigManager().getMessageList("help-message", Arrays.asList(
             "§6=== LowOP Help ===",
-            "§e/lowop <player> [player|lowop|op|status] §7- 管理玩家权限级别",
-            "§e/lowop batch <player|lowop|op> <player1,player2,...> §7- 批量设置权限级别",
+            "§e/lowop <player> [<等级>|status] §7- 管理玩家权限级别 (等级见 config.yml 的 levels)",
+            "§e/lowop <player> <等级> <时长> §7- 临时授权，到期自动恢复 (例如 2h, 3d)",
+            "§e/lowop <player> <等级> world=<世界> §7- 只在指定世界设置等级",
+            "§e/lowop batch <等级> <player1,player2,...> §7- 批量设置权限级别",
+            "§e... --dry-run §7- 只预演批量或选择符操作，不实际执行",
             "§e/lowop status [player] §7- 查看权限状态",
             "§e/lowop detect <player> §7- 检测玩家权限级别",
             "§e/lowop reload §7- 重载配置",
             "§e/lowop health §7- 系统健康检查",
             "§e/lowop audit [page] §7- 查看审计日志",
+            "§e/lowop summary [page] §7- 查看上次操作结果汇总",
+            "§e/lowop import <file> §7- 从 CSV/JSONL 文件导入权限级别",
+            "§e/lowop export <file> §7- 导出权限级别到 CSV/JSONL 文件",
             "§e/lowop version §7- 版本信息",
             "§e/lowop help §7- 显示此帮助",
-            "§7玩家选择符: §e@a §7(所有玩家), §e@p §7(最近玩家), §e@s §7(自己)"
+            "§7玩家选择符: §e@a §7(所有玩家), §e@p §7(最近玩家), §e@s §7(自己), §e@stored §7(已存储), §e@world[name=...]",
+            "§7筛选: §e[level=op|lowop] [lastseen<30d] [limit=10]§7，可用逗号组合多个选择符"
         ));
         
         for (String message : helpMessages) {
@@ -86,6 +122,7 @@ public class LowOPCommand implements CommandExecutor {
 
     private boolean handleReload(CommandSender sender) {
         try {
+            // Managers subscribed to the config pick up the new snapshot themselves
             plugin.getConfigManager().reloadConfigs();
             messageUtils.sendMessage(sender, "config-reloaded");
             plugin.getAuditManager().logCommandExecution("reload", getExecutorName(sender), true);
@@ -115,25 +152,81 @@ public class LowOPCommand implements CommandExecutor {
         }
 
         // Show specific player status
-        String playerSelector = args[1];
-        List<UUID> playerUUIDs = validationUtils.parsePlayerSelector(playerSelector, sender);
-        
-        if (playerUUIDs.isEmpty()) {
-            messageUtils.sendMessage(sender, "player-not-found", Map.of("player", playerSelector));
-            return true;
+        withTargets(sender, args[1], "player-not-found", this::readStatuses,
+            (playerUUIDs, statuses) -> sendPlayerStatus(sender, statuses));
+        return true;
+    }
+
+    /** A player's stored levels, read on a worker since offline players come from disk. */
+    private static final class PlayerStatus {
+        private final UUID playerUUID;
+        private final PermissionManager.PermissionLevel level;
+        private final Map<String, PermissionManager.PermissionLevel> worldLevels;
+
+        private PlayerStatus(UUID playerUUID, PermissionManager.PermissionLevel level,
+                             Map<String, PermissionManager.PermissionLevel> worldLevels) {
+            this.playerUUID = playerUUID;
+            this.level = level;
+            this.worldLevels = worldLevels;
         }
+    }
 
+    private List<PlayerStatus> readStatuses(List<UUID> playerUUIDs) {
+        List<PlayerStatus> statuses = new ArrayList<>(playerUUIDs.size());
         for (UUID playerUUID : playerUUIDs) {
-            String playerName = getPlayerName(playerUUID);
-            PermissionManager.PermissionLevel level = plugin.getStateManager().getPlayerPermissionLevel(playerUUID);
-            String status = getPermissionLevelDisplay(level);
+            statuses.add(new PlayerStatus(playerUUID, plugin.getStateManager().getPlayerPermissionLevel(playerUUID),
+                plugin.getContextManager().getWorldLevels(playerUUID)));
+        }
+        return statuses;
+    }
+
+    private void sendPlayerStatus(CommandSender sender, List<PlayerStatus> statuses) {
+        for (PlayerStatus playerStatus : statuses) {
+            String playerName = getPlayerName(playerStatus.playerUUID);
+            String status = getPermissionLevelDisplay(playerStatus.level);
             
             messageUtils.sendMessage(sender, "status-player", Map.of(
                 "player", playerName,
                 "status", status
             ));
+            playerStatus.worldLevels.forEach((world, worldLevel) ->
+                messageUtils.sendMessage(sender, "status-world", Map.of(
+                    "world", world,
+                    "status", getPermissionLevelDisplay(worldLevel)
+                )));
         }
-        return true;
+    }
+
+    /**
+     * Resolves a selector off the main thread, then continues on the main thread with the
+     * matches. Syntax errors and empty results are reported to the sender instead.
+     */
+    private void withTargets(CommandSender sender, String expression, String emptyMessageKey, Consumer<List<UUID>> action) {
+        withTargets(sender, expression, emptyMessageKey, targets -> null, (targets, plan) -> action.accept(targets));
+    }
+
+    /**
+     * Resolves the selector, then runs the planner on a worker: planning reads stored levels,
+     * which for offline players come from the on-disk index. Only the action, which sends
+     * messages and starts the changes, runs on the main thread.
+     */
+    private <P> void withTargets(CommandSender sender, String expression, String emptyMessageKey,
+                                 Function<List<UUID>, P> planner, BiConsumer<List<UUID>, P> action) {
+        plugin.getSelectorManager().resolve(expression, sender)
+            .thenCompose(targets -> plugin.getTaskManager().supplyAsync(() ->
+                new AbstractMap.SimpleImmutableEntry<>(targets, targets.isEmpty() ? null : planner.apply(targets))))
+            .whenComplete((planned, error) -> plugin.getTaskManager().runSync(() -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    messageUtils.sendMessage(sender, "selector-invalid", Map.of("error", String.valueOf(cause.getMessage())));
+                    return;
+                }
+                if (planned.getKey().isEmpty()) {
+                    messageUtils.sendMessage(sender, emptyMessageKey, Map.of("player", expression));
+                    return;
+                }
+                action.accept(planned.getKey(), planned.getValue());
+            }));
     }
 
     private boolean handleHealth(CommandSender sender) {
@@ -175,7 +268,7 @@ public class LowOPCommand implements CommandExecutor {
         return true;
     }
 
-    private boolean handleBatch(CommandSender sender, String[] args) {
+    private boolean handleBatch(CommandSender sender, String[] args, boolean dryRun) {
         if (args.length < 3) {
             messageUtils.sendMessage(sender, "batch-usage");
             return true;
@@ -188,37 +281,200 @@ public class LowOPCommand implements CommandExecutor {
 
         PermissionManager.PermissionLevel level = validationUtils.parsePermissionLevel(levelStr);
         String playerList = args[2];
-        String[] playerSelectors = playerList.split(",");
 
-        if (playerSelectors.length > 10) {
-            messageUtils.sendMessage(sender, "batch-too-many-players");
+        // The cap is on listed terms; a single selector may still match many players
+        try {
+            if (PlayerSelector.parse(playerList).getTerms().size() > 10) {
+                messageUtils.sendMessage(sender, "batch-too-many-players");
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            messageUtils.sendMessage(sender, "selector-invalid", Map.of("error", e.getMessage()));
             return true;
         }
 
-        // Validate all players first
-        List<UUID> validPlayerUUIDs = validationUtils.validatePlayerListWithSelectors(Arrays.asList(playerSelectors), sender);
-        if (validPlayerUUIDs.isEmpty()) {
-            messageUtils.sendMessage(sender, "no-valid-players");
+        // Dry runs change nothing, so they don't spend the command budget
+        if (!dryRun && !validationUtils.checkRateLimit(sender)) {
+            messageUtils.sendMessage(sender, "rate-limit-exceeded");
             return true;
         }
 
+        withTargets(sender, playerList, "no-valid-players",
+            validPlayerUUIDs -> plugin.getPermissionManager().planLevelChanges(validPlayerUUIDs, level),
+            (validPlayerUUIDs, plan) -> applyBatch(sender, level, validPlayerUUIDs, plan, dryRun));
+        return true;
+    }
+
+    private void applyBatch(CommandSender sender, PermissionManager.PermissionLevel level, List<UUID> validPlayerUUIDs,
+                            PermissionManager.ChangePlan plan, boolean dryRun) {
+        if (dryRun) {
+            sendDryRun(sender, plan);
+            return;
+        }
+        // Batch levels are permanent, including for players on a temporary grant; grants are
+        // only dropped once the player's level is settled, so a rejected or failed change keeps them
+        if (plan.getChanges().isEmpty()) {
+            cancelGrants(plan.getUnchanged());
+            messageUtils.sendMessage(sender, "plan-nothing-to-change", Map.of(
+                "count", String.valueOf(plan.getUnchanged().size()),
+                "level", getPermissionLevelDisplay(level)
+            ));
+            return;
+        }
+
+        // Players already at the level cost nothing, so only the changes draw from the budget
+        int total = plan.getChanges().size();
+        if (!validationUtils.checkBatchRateLimit(total)) {
+            messageUtils.sendMessage(sender, "batch-rate-limit-exceeded", Map.of(
+                "count", String.valueOf(total)
+            ));
+            return;
+        }
+        cancelGrants(plan.getUnchanged());
+
         messageUtils.sendMessage(sender, "batch-processing", Map.of(
-            "count", String.valueOf(validPlayerUUIDs.size()),
+            "count", String.valueOf(total),
             "operation", getPermissionLevelDisplay(level)
         ));
 
         // Process batch operation
-        plugin.getStateManager().setMultiplePlayersPermissionLevelAsync(validPlayerUUIDs, level, getExecutorName(sender))
-            .thenAccept(successCount -> {
+        AtomicInteger successCount = new AtomicInteger();
+        plugin.getPermissionManager().applyLevelChanges(plan.getChanges().iterator(), sender, (change, success) -> {
+                if (success) {
+                    plugin.getExpiryManager().cancel(change.getPlayerUUID());
+                    successCount.incrementAndGet();
+                }
+            })
+            .thenRun(() -> {
                 messageUtils.sendMessage(sender, "batch-completed", Map.of(
-                    "success", String.valueOf(successCount),
-                    "total", String.valueOf(validPlayerUUIDs.size())
+                    "success", String.valueOf(successCount.get()),
+                    "total", String.valueOf(total)
                 ));
                 
                 plugin.getAuditManager().logBatchPermissionLevelChange(getExecutorName(sender), 
-                    validPlayerUUIDs.size(), successCount, level);
+                    total, successCount.get(), level);
+                
+                plugin.getTaskManager().runSync(() -> plugin.getNotificationManager().notifyStaff("notify-operation", Map.of(
+                    "executor", getExecutorName(sender),
+                    "operation", "batch " + level.name(),
+                    "success", String.valueOf(successCount.get()),
+                    "total", String.valueOf(total)
+                )));
             });
+    }
+
+    /**
+     * 预演：列出将要变更的玩家，并估算后端命令数与耗时
+     */
+    private void sendDryRun(CommandSender sender, PermissionManager.ChangePlan plan) {
+        messageUtils.sendMessage(sender, "dry-run-header", Map.of(
+            "level", getPermissionLevelDisplay(plan.getTarget()),
+            "changes", String.valueOf(plan.getChanges().size()),
+            "unchanged", String.valueOf(plan.getUnchanged().size())
+        ));
+
+        List<PermissionManager.LevelChange> changes = plan.getChanges();
+        int shown = Math.min(changes.size(), DRY_RUN_LIST_LIMIT);
+        for (int i = 0; i < shown; i++) {
+            PermissionManager.LevelChange change = changes.get(i);
+            messageUtils.sendMessage(sender, "dry-run-change", Map.of(
+                "player", getPlayerName(change.getPlayerUUID()),
+                "from", getPermissionLevelDisplay(change.getFrom()),
+                "to", getPermissionLevelDisplay(change.getTo())
+            ));
+        }
+        if (changes.size() > shown) {
+            messageUtils.sendMessage(sender, "dry-run-more", Map.of("count", String.valueOf(changes.size() - shown)));
+        }
+
+        messageUtils.sendMessage(sender, "dry-run-estimate", Map.of(
+            "calls", String.valueOf(plan.getBackendCalls()),
+            "seconds", String.valueOf((plan.getEstimatedMillis() + 999) / 1000)
+        ));
+    }
+
+    private boolean handleImport(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("lowop.transfer")) {
+            messageUtils.sendMessage(sender, "no-permission");
+            return true;
+        }
+        if (args.length < 2) {
+            messageUtils.sendMessage(sender, "import-usage");
+            return true;
+        }
+
+        File file = plugin.getTransferManager().resolveFile(args[1]);
+        if (file == null) {
+            messageUtils.sendMessage(sender, "transfer-unsafe-path", Map.of("file", args[1]));
+            return true;
+        }
+        if (!file.isFile()) {
+            messageUtils.sendMessage(sender, "transfer-failed", Map.of("file", args[1], "error", "file not found"));
+            return true;
+        }
+
+        if (!validationUtils.checkRateLimit(sender)) {
+            messageUtils.sendMessage(sender, "rate-limit-exceeded");
+            return true;
+        }
 
+        String executorName = getExecutorName(sender);
+        messageUtils.sendMessage(sender, "import-started", Map.of("file", args[1]));
+
+        plugin.getTransferManager().importStates(file, sender).whenComplete((report, error) -> plugin.getTaskManager().runSync(() -> {
+            if (error != null) {
+                messageUtils.sendMessage(sender, "transfer-failed", Map.of("file", args[1], "error", String.valueOf(error.getMessage())));
+                plugin.getAuditManager().logError("import", executorName, error.getMessage());
+                return;
+            }
+
+            messageUtils.sendMessage(sender, "import-completed", Map.of(
+                "read", String.valueOf(report.getRead()),
+                "applied", String.valueOf(report.getApplied()),
+                "unchanged", String.valueOf(report.getUnchanged()),
+                "failed", String.valueOf(report.getFailed()),
+                "invalid", String.valueOf(report.getInvalid()),
+                "unresolved", String.valueOf(report.getUnresolved())
+            ));
+
+            int attempted = report.getApplied() + report.getFailed();
+            plugin.getAuditManager().logBatchOperation("import " + args[1], executorName, attempted, report.getApplied());
+            plugin.getNotificationManager().notifyStaff("notify-operation", Map.of(
+                "executor", executorName,
+                "operation", "import " + args[1],
+                "success", String.valueOf(report.getApplied()),
+                "total", String.valueOf(attempted)
+            ));
+        }));
+        return true;
+    }
+
+    private boolean handleExport(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("lowop.transfer")) {
+            messageUtils.sendMessage(sender, "no-permission");
+            return true;
+        }
+        if (args.length < 2) {
+            messageUtils.sendMessage(sender, "export-usage");
+            return true;
+        }
+
+        File file = plugin.getTransferManager().resolveFile(args[1]);
+        if (file == null) {
+            messageUtils.sendMessage(sender, "transfer-unsafe-path", Map.of("file", args[1]));
+            return true;
+        }
+
+        String executorName = getExecutorName(sender);
+        plugin.getTransferManager().exportStates(file).whenComplete((count, error) -> plugin.getTaskManager().runSync(() -> {
+            if (error != null) {
+                messageUtils.sendMessage(sender, "transfer-failed", Map.of("file", args[1], "error", String.valueOf(error.getMessage())));
+                plugin.getAuditManager().logError("export", executorName, error.getMessage());
+                return;
+            }
+            messageUtils.sendMessage(sender, "export-completed", Map.of("file", args[1], "count", String.valueOf(count)));
+            plugin.getAuditManager().logCommandExecution("export " + args[1], executorName, true);
+        }));
         return true;
     }
 
@@ -241,106 +497,360 @@ public class LowOPCommand implements CommandExecutor {
         }
 
         String playerSelector = args[1];
-        List<UUID> playerUUIDs = validationUtils.parsePlayerSelector(playerSelector, sender);
-        
-        if (playerUUIDs.isEmpty()) {
-            messageUtils.sendMessage(sender, "player-not-found", Map.of("player", playerSelector));
-            return true;
+        withTargets(sender, playerSelector, "player-not-found", playerUUIDs -> detectTargets(sender, playerSelector, playerUUIDs));
+        return true;
+    }
+
+    private void detectTargets(CommandSender sender, String playerSelector, List<UUID> playerUUIDs) {
+        if (!validationUtils.checkRateLimit(sender)) {
+            messageUtils.sendMessage(sender, "rate-limit-exceeded");
+            return;
         }
 
         messageUtils.sendMessage(sender, "detect-processing", Map.of("player", playerSelector));
 
-        for (UUID playerUUID : playerUUIDs) {
-            String playerName = getPlayerName(playerUUID);
-            
+        if (playerUUIDs.size() == 1) {
+            String playerName = getPlayerName(playerUUIDs.get(0));
             plugin.getPermissionManager().detectPlayerPermissionLevel(playerName)
                 .thenAccept(level -> {
-                    String detectedLevel = getPermissionLevelDisplay(level);
                     messageUtils.sendMessage(sender, "detect-result", Map.of(
                         "player", playerName,
-                        "level", detectedLevel
+                        "level", getPermissionLevelDisplay(level)
                     ));
                     
                     plugin.getAuditManager().logPermissionDetection(getExecutorName(sender), playerName, level);
                 });
+            return;
         }
 
+        // Multiple targets: chunked bulk detection, one audit record and one summary
+        plugin.getPermissionManager().detectPermissionLevelsBulk(playerUUIDs).thenAccept(report -> {
+            NotificationManager.OperationSummary summary = plugin.getNotificationManager().createSummary("detect", sender);
+            Set<UUID> mismatched = new HashSet<>();
+            String locale = messageUtils.getLocale(sender);
+            
+            for (PermissionManager.Mismatch mismatch : report.getMismatches()) {
+                mismatched.add(mismatch.getPlayerUUID());
+                summary.recordFailure(getPlayerName(mismatch.getPlayerUUID()), messageUtils.getMessage("detect-mismatch", Map.of(
+                    "level", getPermissionLevelDisplay(mismatch.getDetected()),
+                    "stored", getPermissionLevelDisplay(mismatch.getStored())
+                ), locale));
+            }
+            for (Map.Entry<UUID, PermissionManager.PermissionLevel> entry : report.getDetectedLevels().entrySet()) {
+                if (!mismatched.contains(entry.getKey())) {
+                    summary.recordSuccess(getPlayerName(entry.getKey()), getPermissionLevelDisplay(entry.getValue()));
+                }
+            }
+            
+            messageUtils.sendMessage(sender, "detect-totals", Map.of(
+                "players", String.valueOf(report.getTotal(PermissionManager.PermissionLevel.PLAYER)),
+                "lowops", String.valueOf(report.getTotal(PermissionManager.PermissionLevel.LOWOP)),
+                "ops", String.valueOf(report.getTotal(PermissionManager.PermissionLevel.OP)),
+                "mismatches", String.valueOf(report.getMismatches().size())
+            ));
+            plugin.getNotificationManager().publish(sender, summary);
+            plugin.getAuditManager().logBulkPermissionDetection(getExecutorName(sender), report);
+        });
+    }
+
+    private boolean handleSummary(CommandSender sender, String[] args) {
+        int page = 1;
+        if (args.length > 1) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                messageUtils.sendMessage(sender, "invalid-page");
+                return true;
+            }
+        }
+
+        if (!plugin.getNotificationManager().sendLastSummaryPage(sender, page)) {
+            messageUtils.sendMessage(sender, "summary-none");
+        }
         return true;
     }
 
-    private boolean handlePlayerPermission(CommandSender sender, String[] args) {
+    private boolean handlePlayerPermission(CommandSender sender, String[] args, boolean dryRun) {
         String playerSelector = args[0];
-        List<UUID> playerUUIDs = validationUtils.parsePlayerSelector(playerSelector, sender);
-        
-        if (playerUUIDs.isEmpty()) {
-            messageUtils.sendMessage(sender, "player-not-found", Map.of("player", playerSelector));
+        if (args.length == 1) {
+            // Show current status
+            withTargets(sender, playerSelector, "player-not-found", this::readStatuses,
+                (playerUUIDs, statuses) -> sendPlayerStatus(sender, statuses));
             return true;
         }
 
-        PermissionManager.PermissionLevel targetLevel;
-        if (args.length == 1) {
-            // Show current status
-            for (UUID playerUUID : playerUUIDs) {
-                String playerName = getPlayerName(playerUUID);
-                PermissionManager.PermissionLevel currentLevel = plugin.getStateManager().getPlayerPermissionLevel(playerUUID);
-                String status = getPermissionLevelDisplay(currentLevel);
-                
-                messageUtils.sendMessage(sender, "status-player", Map.of(
-                    "player", playerName,
-                    "status", status
+        String levelStr = args[1].toLowerCase();
+        if (!validationUtils.validatePermissionLevel(levelStr, sender, messageUtils)) {
+            return true;
+        }
+        PermissionManager.PermissionLevel targetLevel = validationUtils.parsePermissionLevel(levelStr);
+
+        // Optional duration makes it a temporary grant, e.g. /lowop Steve lowop 2h;
+        // world=<name> limits the level to one configured world
+        long durationMillis = 0L;
+        String world = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].toLowerCase().startsWith("world=")) {
+                world = args[i].substring("world=".length());
+                continue;
+            }
+            try {
+                durationMillis = PlayerSelector.parseDuration(args[i]);
+            } catch (IllegalArgumentException e) {
+                messageUtils.sendMessage(sender, "invalid-duration", Map.of("duration", args[i]));
+                return true;
+            }
+            if (durationMillis <= 0) {
+                messageUtils.sendMessage(sender, "invalid-duration", Map.of("duration", args[i]));
+                return true;
+            }
+        }
+
+        if (world != null) {
+            ContextManager contexts = plugin.getContextManager();
+            if (contexts.getSlice(world) == null) {
+                messageUtils.sendMessage(sender, "unknown-context-world", Map.of(
+                    "world", world,
+                    "worlds", contexts.getWorlds().isEmpty() ? "-" : String.join(", ", contexts.getWorlds())
                 ));
+                return true;
             }
-            return true;
-        } else {
-            String levelStr = args[1].toLowerCase();
-            if (!validationUtils.validatePermissionLevel(levelStr, sender, messageUtils)) {
+            if (durationMillis > 0) {
+                messageUtils.sendMessage(sender, "world-duration-unsupported");
                 return true;
             }
-            targetLevel = validationUtils.parsePermissionLevel(levelStr);
+            String targetWorld = world;
+            withTargets(sender, playerSelector, "player-not-found",
+                playerUUIDs -> planWorldChanges(playerUUIDs, targetLevel, targetWorld),
+                (playerUUIDs, changes) -> applyWorldPermission(sender, playerSelector, playerUUIDs, changes, targetLevel, targetWorld, dryRun));
+            return true;
+        }
+
+        long duration = durationMillis;
+        withTargets(sender, playerSelector, "player-not-found",
+            playerUUIDs -> plugin.getPermissionManager().planLevelChanges(playerUUIDs, targetLevel),
+            (playerUUIDs, plan) -> applyPlayerPermission(sender, playerSelector, playerUUIDs, plan, targetLevel, duration, dryRun));
+        return true;
+    }
+
+    private void applyPlayerPermission(CommandSender sender, String playerSelector, List<UUID> playerUUIDs,
+                                       PermissionManager.ChangePlan plan, PermissionManager.PermissionLevel targetLevel,
+                                       long durationMillis, boolean dryRun) {
+        long expiresAt = durationMillis > 0 ? System.currentTimeMillis() + durationMillis : 0L;
+        if (dryRun) {
+            sendDryRun(sender, plan);
+            if (expiresAt > 0) {
+                messageUtils.sendMessage(sender, "dry-run-expiry", Map.of("time", formatTime(expiresAt)));
+            }
+            return;
         }
 
         // Apply rate limiting
         if (!validationUtils.checkRateLimit(sender)) {
             messageUtils.sendMessage(sender, "rate-limit-exceeded");
-            return true;
+            return;
+        }
+        
+        // Selectors such as @a also draw from the batch budget, but only for real changes
+        int changeCount = plan.getChanges().size();
+        if (playerUUIDs.size() > 1 && changeCount > 0 && !validationUtils.checkBatchRateLimit(changeCount)) {
+            messageUtils.sendMessage(sender, "batch-rate-limit-exceeded", Map.of(
+                "count", String.valueOf(changeCount)
+            ));
+            return;
+        }
+
+        // A plain change makes the level permanent; a timed one on a player already holding
+        // the same temporary level only moves its expiry. Players being changed keep their
+        // grant until the change succeeds, so a failed revoke never makes a grant permanent.
+        ExpiryManager expiries = plugin.getExpiryManager();
+        List<UUID> extended = new ArrayList<>();
+        if (expiresAt == 0L) {
+            cancelGrants(plan.getUnchanged());
+        } else {
+            for (UUID playerUUID : plan.getUnchanged()) {
+                if (expiries.extend(playerUUID, targetLevel, expiresAt)) {
+                    extended.add(playerUUID);
+                }
+            }
+        }
+
+        if (playerUUIDs.size() == 1 && plan.getChanges().isEmpty()) {
+            UUID playerUUID = playerUUIDs.get(0);
+            if (!extended.isEmpty()) {
+                messageUtils.sendMessage(sender, "grant-expires", Map.of(
+                    "player", getPlayerName(playerUUID),
+                    "time", formatTime(expiresAt)
+                ));
+                return;
+            }
+            messageUtils.sendMessage(sender, "permission-unchanged", Map.of(
+                "player", getPlayerName(playerUUID),
+                "from", getPermissionLevelDisplay(targetLevel)
+            ));
+            return;
         }
 
         // Execute permission change
         messageUtils.sendMessage(sender, "processing-request", Map.of("player", playerSelector));
         
+        if (playerUUIDs.size() > 1) {
+            applyPermissionLevelWithSummary(sender, plan, expiresAt);
+            if (expiresAt > 0L) {
+                messageUtils.sendMessage(sender, "grant-expires", Map.of("player", playerSelector, "time", formatTime(expiresAt)));
+            }
+            return;
+        }
+        
+        PermissionManager.LevelChange change = plan.getChanges().get(0);
+        String playerName = getPlayerName(change.getPlayerUUID());
+        plugin.getPermissionManager().setPlayerPermissionLevel(change.getPlayerUUID(), targetLevel, sender)
+            .thenAccept(success -> {
+                if (success) {
+                    String messageKey = getPermissionChangeMessageKey(change.getFrom(), targetLevel);
+                    messageUtils.sendMessage(sender, messageKey, Map.of(
+                        "player", playerName,
+                        "from", getPermissionLevelDisplay(change.getFrom()),
+                        "to", getPermissionLevelDisplay(targetLevel)
+                    ));
+                    if (expiresAt > 0L) {
+                        expiries.schedule(change.getPlayerUUID(), targetLevel, change.getFrom(), expiresAt);
+                        messageUtils.sendMessage(sender, "grant-expires", Map.of("player", playerName, "time", formatTime(expiresAt)));
+                    } else {
+                        expiries.cancel(change.getPlayerUUID());
+                    }
+                } else {
+                    messageUtils.sendMessage(sender, "operation-failed", Map.of("player", playerName));
+                }
+            });
+    }
+
+    /**
+     * World changes go straight to the world's slice; expiries and the summary pipeline only
+     * cover the server context
+     */
+    /**
+     * The players whose level in the world differs from the target, with their current level.
+     * Runs on a worker, since the slice may read its index from disk.
+     */
+    private Map<UUID, PermissionManager.PermissionLevel> planWorldChanges(List<UUID> playerUUIDs,
+                                                                         PermissionManager.PermissionLevel targetLevel, String world) {
+        StateManager slice = plugin.getContextManager().getSlice(world);
+        Map<UUID, PermissionManager.PermissionLevel> changes = new LinkedHashMap<>();
         for (UUID playerUUID : playerUUIDs) {
-            String playerName = getPlayerName(playerUUID);
-            PermissionManager.PermissionLevel currentLevel = plugin.getStateManager().getPlayerPermissionLevel(playerUUID);
-            
-            plugin.getStateManager().setPlayerPermissionLevelAsync(playerUUID, targetLevel, getExecutorName(sender))
-                .thenAccept(success -> {
+            PermissionManager.PermissionLevel current = slice.getPlayerPermissionLevel(playerUUID);
+            if (current != targetLevel) {
+                changes.put(playerUUID, current);
+            }
+        }
+        return changes;
+    }
+
+    private void applyWorldPermission(CommandSender sender, String playerSelector, List<UUID> playerUUIDs,
+                                      Map<UUID, PermissionManager.PermissionLevel> changes,
+                                      PermissionManager.PermissionLevel targetLevel, String world, boolean dryRun) {
+        String worldName = plugin.getContextManager().getSlice(world).getContext().getWorld();
+        if (dryRun) {
+            messageUtils.sendMessage(sender, "dry-run-header", Map.of(
+                "level", getPermissionLevelDisplay(targetLevel) + " (" + worldName + ")",
+                "changes", String.valueOf(changes.size()),
+                "unchanged", String.valueOf(playerUUIDs.size() - changes.size())
+            ));
+            return;
+        }
+
+        if (!validationUtils.checkRateLimit(sender)) {
+            messageUtils.sendMessage(sender, "rate-limit-exceeded");
+            return;
+        }
+        if (changes.isEmpty()) {
+            UUID playerUUID = playerUUIDs.get(0);
+            messageUtils.sendMessage(sender, "permission-unchanged", Map.of(
+                "player", playerUUIDs.size() == 1 ? getPlayerName(playerUUID) : playerSelector,
+                "from", getPermissionLevelDisplay(targetLevel)
+            ));
+            return;
+        }
+        if (playerUUIDs.size() > 1 && !validationUtils.checkBatchRateLimit(changes.size())) {
+            messageUtils.sendMessage(sender, "batch-rate-limit-exceeded", Map.of(
+                "count", String.valueOf(changes.size())
+            ));
+            return;
+        }
+
+        messageUtils.sendMessage(sender, "processing-request", Map.of("player", playerSelector));
+        AtomicInteger remaining = new AtomicInteger(changes.size());
+        AtomicInteger succeeded = new AtomicInteger();
+        int unchanged = playerUUIDs.size() - changes.size();
+        changes.forEach((playerUUID, from) -> plugin.getPermissionManager()
+            .setPlayerPermissionLevel(playerUUID, targetLevel, sender, worldName)
+            .thenAccept(success -> {
+                if (success) {
+                    succeeded.incrementAndGet();
+                }
+                if (playerUUIDs.size() == 1) {
+                    String playerName = getPlayerName(playerUUID);
                     if (success) {
-                        String messageKey = getPermissionChangeMessageKey(currentLevel, targetLevel);
-                        messageUtils.sendMessage(sender, messageKey, Map.of(
+                        messageUtils.sendMessage(sender, "permission-to-world-level", Map.of(
                             "player", playerName,
-                            "from", getPermissionLevelDisplay(currentLevel),
+                            "world", worldName,
+                            "from", getPermissionLevelDisplay(from),
                             "to", getPermissionLevelDisplay(targetLevel)
                         ));
                     } else {
                         messageUtils.sendMessage(sender, "operation-failed", Map.of("player", playerName));
                     }
-                });
+                } else if (remaining.decrementAndGet() == 0) {
+                    messageUtils.sendMessage(sender, "world-batch-result", Map.of(
+                        "world", worldName,
+                        "success", String.valueOf(succeeded.get() + unchanged),
+                        "total", String.valueOf(playerUUIDs.size())
+                    ));
+                }
+            }));
+    }
+
+    private void applyPermissionLevelWithSummary(CommandSender sender, PermissionManager.ChangePlan plan, long expiresAt) {
+        PermissionManager.PermissionLevel targetLevel = plan.getTarget();
+        NotificationManager.OperationSummary summary = plugin.getNotificationManager()
+            .createSummary("set " + targetLevel.name(), sender);
+        String failedLabel = messageUtils.getMessage("summary-failed", null, messageUtils.getLocale(sender));
+        String unchangedLabel = messageUtils.getMessage("summary-unchanged", null, messageUtils.getLocale(sender));
+        
+        // Already at the level: nothing to send, they count as done
+        for (UUID playerUUID : plan.getUnchanged()) {
+            summary.recordSuccess(getPlayerName(playerUUID), unchangedLabel);
+        }
+        
+        plugin.getPermissionManager().applyLevelChanges(plan.getChanges().iterator(), sender, (change, success) -> {
+                String playerName = getPlayerName(change.getPlayerUUID());
+                if (success) {
+                    if (expiresAt > 0L) {
+                        plugin.getExpiryManager().schedule(change.getPlayerUUID(), targetLevel, change.getFrom(), expiresAt);
+                    } else {
+                        plugin.getExpiryManager().cancel(change.getPlayerUUID());
+                    }
+                    summary.recordSuccess(playerName, getPermissionLevelDisplay(change.getFrom()) + " → " 
+                        + getPermissionLevelDisplay(targetLevel));
+                } else {
+                    summary.recordFailure(playerName, failedLabel);
+                }
+            })
+            .thenRun(() -> plugin.getNotificationManager().publish(sender, summary));
+    }
+
+    private void cancelGrants(List<UUID> playerUUIDs) {
+        for (UUID playerUUID : playerUUIDs) {
+            plugin.getExpiryManager().cancel(playerUUID);
         }
+    }
 
-        return true;
+    private String formatTime(long timestamp) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(timestamp));
     }
 
     private String getPermissionLevelDisplay(PermissionManager.PermissionLevel level) {
-        switch (level) {
-            case PLAYER:
-                return plugin.getConfigManager().getMessage("player-status", "§7普通玩家");
-            case LOWOP:
-                return plugin.getConfigManager().getMessage("lowop-status", "§e低权限OP");
-            case OP:
-                return plugin.getConfigManager().getMessage("op-status", "§a管理员");
-            default:
-                return "§7未知";
-        }
+        return plugin.getPermissionManager().getLevelDisplay(level);
     }
 
     private String getPermissionChangeMessageKey(PermissionManager.PermissionLevel from, PermissionManager.PermissionLevel to) {
@@ -352,8 +862,10 @@ public class LowOPCommand implements CommandExecutor {
             return "permission-to-op";
         } else if (to == PermissionManager.PermissionLevel.LOWOP) {
             return "permission-to-lowop";
-        } else {
+        } else if (to == PermissionManager.PermissionLevel.PLAYER) {
             return "permission-to-player";
+        } else {
+            return "permission-to-level";
         }
     }
 
@@ -6,6 +6,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import wangxianming.lowop.managers.ConfigManager;
+import wangxianming.lowop.managers.PermissionManager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,15 +46,20 @@ public class LowOPTabCompleter implements TabCompleter {
                     // 如果是子命令，根据子命令提供补全
                     completions.addAll(getSubCommandCompletions(firstArg, sender));
                 } else {
-                    // 如果是玩家名，提供状态参数
+                    // 如果是玩家名，提供权限等级与状态参数
+                    completions.addAll(getLevelNames());
                     completions.addAll(Arrays.asList("on", "off", "status"));
                 }
                 break;
                 
             case 3:
-                // 第三参数：批量操作的目标
+                // 第三参数：批量操作的目标，或设置等级时的世界上下文
                 if ("batch".equalsIgnoreCase(args[0]) && "add".equalsIgnoreCase(args[1])) {
                     completions.addAll(getOnlinePlayerNames());
+                } else if (!isSubCommand(args[0].toLowerCase())) {
+                    for (String world : configManager.getContextWorlds()) {
+                        completions.add("world=" + world.trim());
+                    }
                 }
                 break;
                 
@@ -67,6 +73,17 @@ public class LowOPTabCompleter implements TabCompleter {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 等级阶梯中的全部等级，从低到高
+     */
+    private List<String> getLevelNames() {
+        List<String> names = new ArrayList<>();
+        for (PermissionManager.PermissionLevel level : configManager.getLevelLadder().getLevels()) {
+            names.add(level.getKey());
+        }
+        return names;
+    }
+
     /**
      * 获取可用的子命令列表
      */
@@ -78,11 +95,17 @@ public class LowOPTabCompleter implements TabCompleter {
         commands.add("status");
         commands.add("health");
         commands.add("audit");
+        commands.add("summary");
         commands.add("version");
         
         if (sender.hasPermission("lowop.batch")) {
             commands.add("batch");
         }
+
+        if (sender.hasPermission("lowop.transfer")) {
+            commands.add("import");
+            commands.add("export");
+        }
         
         return commands;
     }
@@ -122,7 +145,7 @@ public class LowOPTabCompleter implements TabCompleter {
      * 检查是否为子命令
      */
     private boolean isSubCommand(String arg) {
-        return Arrays.asList("help", "reload", "status", "health", "audit", "batch", "version")
+        return Arrays.asList("help", "reload", "status", "health", "audit", "summary", "batch", "version", "import", "export")
                 .contains(arg.toLowerCase());
     }
     
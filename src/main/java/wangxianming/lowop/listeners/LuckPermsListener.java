@@ -0,0 +1,49 @@
+package wangxianming.lowop.listeners;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.PermissionManager;
+
+/**
+ * LuckPerms 事件监听器，用户权限数据重新计算时使检测缓存失效
+ * 只有在 LuckPerms 已加载时才会实例化，避免缺少 API 类时加载失败
+ */
+public class LuckPermsListener {
+
+    private final LowOP plugin;
+    private final PermissionManager permissionManager;
+    private EventSubscription<UserDataRecalculateEvent> recalculateSubscription;
+
+    public LuckPermsListener(LowOP plugin, PermissionManager permissionManager) {
+        this.plugin = plugin;
+        this.permissionManager = permissionManager;
+    }
+
+    /**
+     * 订阅 LuckPerms 事件
+     */
+    public void register() {
+        LuckPerms luckPerms = LuckPermsProvider.get();
+        recalculateSubscription = luckPerms.getEventBus().subscribe(plugin, UserDataRecalculateEvent.class, this::onUserDataRecalculate);
+    }
+
+    /**
+     * 取消订阅
+     */
+    public void unregister() {
+        if (recalculateSubscription != null) {
+            recalculateSubscription.close();
+            recalculateSubscription = null;
+        }
+    }
+
+    /**
+     * 权限数据重新计算（可能在异步线程触发）
+     */
+    private void onUserDataRecalculate(UserDataRecalculateEvent event) {
+        permissionManager.invalidateDetection(event.getUser().getUniqueId());
+    }
+}
@@ -4,29 +4,35 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import wangxianming.lowop.managers.ContextManager;
 import wangxianming.lowop.managers.StateManager;
 import wangxianming.lowop.managers.PermissionManager;
 import wangxianming.lowop.managers.AuditManager;
+import wangxianming.lowop.managers.TaskManager;
 import wangxianming.lowop.utils.MessageUtils;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.Map;
 
 /**
  * 玩家加入事件监听器，处理玩家登录时的权限状态恢复
- * 支持三级权限系统：PLAYER, LOWOP, OP
+ * 支持配置的权限等级阶梯（内置 PLAYER, LOWOP, OP）
  */
 public class PlayerJoinListener implements Listener {
     
     private final StateManager stateManager;
+    private final ContextManager contextManager;
     private final PermissionManager permissionManager;
     private final AuditManager auditManager;
+    private final TaskManager taskManager;
     private final MessageUtils messageUtils;
     
-    public PlayerJoinListener(StateManager stateManager, PermissionManager permissionManager, 
-                            AuditManager auditManager, MessageUtils messageUtils) {
+    public PlayerJoinListener(StateManager stateManager, ContextManager contextManager, PermissionManager permissionManager, 
+                            AuditManager auditManager, TaskManager taskManager, MessageUtils messageUtils) {
         this.stateManager = stateManager;
+        this.contextManager = contextManager;
         this.permissionManager = permissionManager;
         this.auditManager = auditManager;
+        this.taskManager = taskManager;
         this.messageUtils = messageUtils;
     }
     
@@ -34,10 +40,23 @@ public class PlayerJoinListener implements Listener {
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         
-        // 异步处理权限状态恢复和检测
-        CompletableFuture.runAsync(() -> {
+        // 权限检测需要在主线程进行（事件本身就在主线程）
+        PermissionManager.PermissionLevel currentLevel = permissionManager.detectPermissionLevel(player);
+        String world = player.getWorld() != null ? player.getWorld().getName() : null;
+        
+        // 状态读写涉及磁盘，交给工作线程处理
+        taskManager.runAsync(() -> {
             try {
-                handlePlayerJoin(player);
+                // 在线期间常驻内存，离线后回到按需读取
+                stateManager.loadPlayer(player.getUniqueId());
+                contextManager.loadPlayer(player.getUniqueId());
+                if (!player.isOnline()) {
+                    // 加载期间玩家已经退出
+                    stateManager.unloadPlayer(player.getUniqueId());
+                    contextManager.unloadPlayer(player.getUniqueId());
+                    return;
+                }
+                handlePlayerJoin(player, currentLevel, world);
             } catch (Exception e) {
                 auditManager.logError("PlayerJoinListener", "onPlayerJoin", "处理玩家 " + player.getName() + " 登录时发生错误: " + e.getMessage());
             }
@@ -45,11 +64,22 @@ public class PlayerJoinListener implements Listener {
     }
     
     /**
-     * 处理玩家登录逻辑
+     * 处理玩家登录逻辑（工作线程）
      */
-    private void handlePlayerJoin(Player player) {
-        // 检测玩家当前的权限级别
-        PermissionManager.PermissionLevel currentLevel = permissionManager.detectPlayerPermissionLevel(player.getName()).join();
+    private void handlePlayerJoin(Player player, PermissionManager.PermissionLevel currentLevel, String world) {
+        // 所在世界单独设置了等级时检测到的是该世界的等级，不能据此改写服务器范围的状态
+        StateManager worldSlice = contextManager.getSlice(world);
+        if (worldSlice != null && worldSlice.hasPlayerState(player.getUniqueId())) {
+            PermissionManager.PermissionLevel worldLevel = worldSlice.getPlayerPermissionLevel(player.getUniqueId());
+            if (worldLevel == PermissionManager.PermissionLevel.OP) {
+                messageUtils.sendMessage(player, "admin-welcome");
+            } else {
+                sendLevelWelcome(player, worldLevel);
+            }
+            auditManager.logPlayerJoinWithPermissionLevel(player.getName(), player.getUniqueId(), currentLevel);
+            return;
+        }
+        
         PermissionManager.PermissionLevel storedLevel = stateManager.getPlayerPermissionLevel(player.getUniqueId());
         
         // 如果存储的级别与检测到的级别不一致，更新存储状态
@@ -79,16 +109,10 @@ public class PlayerJoinListener implements Listener {
             // 执行权限修复 - 异步处理
             permissionManager.setPlayerPermissionLevel(player.getUniqueId(), currentLevel, null).thenAccept(success -> {
                 if (success) {
-                    switch (currentLevel) {
-                        case OP:
-                            messageUtils.sendMessage(player, "permission-restored");
-                            break;
-                        case LOWOP:
-                            messageUtils.sendMessage(player, "lowop-welcome");
-                            break;
-                        case PLAYER:
-                            // 普通玩家不需要特殊消息
-                            break;
+                    if (currentLevel == PermissionManager.PermissionLevel.OP) {
+                        messageUtils.sendMessage(player, "permission-restored");
+                    } else {
+                        sendLevelWelcome(player, currentLevel);
                     }
                     auditManager.logPermissionRestore(player.getName(), "登录时自动恢复权限级别: " + currentLevel);
                 } else {
@@ -98,19 +122,24 @@ public class PlayerJoinListener implements Listener {
             });
         } else {
             // 权限状态正确，发送相应的欢迎消息
-            switch (currentLevel) {
-                case OP:
-                    messageUtils.sendMessage(player, "admin-welcome");
-                    break;
-                case LOWOP:
-                    messageUtils.sendMessage(player, "lowop-welcome");
-                    break;
-                case PLAYER:
-                    // 普通玩家不需要特殊欢迎消息
-                    break;
+            if (currentLevel == PermissionManager.PermissionLevel.OP) {
+                messageUtils.sendMessage(player, "admin-welcome");
+            } else {
+                sendLevelWelcome(player, currentLevel);
             }
         }
     }
+
+    /**
+     * 非 OP 等级的欢迎消息，普通玩家不需要特殊欢迎消息
+     */
+    private void sendLevelWelcome(Player player, PermissionManager.PermissionLevel level) {
+        if (level == PermissionManager.PermissionLevel.LOWOP) {
+            messageUtils.sendMessage(player, "lowop-welcome");
+        } else if (level != PermissionManager.PermissionLevel.PLAYER) {
+            messageUtils.sendMessage(player, "level-welcome", Map.of("level", permissionManager.getLevelDisplay(level)));
+        }
+    }
     
     /**
      * 处理玩家退出事件
@@ -123,6 +152,11 @@ public class PlayerJoinListener implements Listener {
         PermissionManager.PermissionLevel level = stateManager.getPlayerPermissionLevel(player.getUniqueId());
         auditManager.logPlayerQuitWithPermissionLevel(player.getName(), player.getUniqueId(), level);
         
+        // 检测缓存只保留在线玩家
+        permissionManager.invalidateDetection(player.getUniqueId());
+        stateManager.unloadPlayer(player.getUniqueId());
+        contextManager.unloadPlayer(player.getUniqueId());
+        
         // 可以在这里执行退出时的清理操作
         // 例如：保存最终状态、清理临时数据等
     }
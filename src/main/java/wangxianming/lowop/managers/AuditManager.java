@@ -1,10 +1,13 @@
 package wangxianming.lowop.managers;
 
 import org.bukkit.Bukkit;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
 import wangxianming.lowop.LowOP;
 import wangxianming.lowop.managers.PermissionManager;
+import wangxianming.lowop.utils.ConfigSnapshot;
+import wangxianming.lowop.utils.DurableFile;
 
 import java.io.File;
 import java.io.IOException;
@@ -15,37 +18,60 @@ import java.util.logging.Level;
 public class AuditManager {
 
     private final LowOP plugin;
+    // Written from the main thread and worker threads; guarded by this, as is dateFormat
     private final List<String> auditLog;
-    private FileConfiguration auditConfig;
+    // Set when the in-memory log changes; the flush task writes it out, guarded by this
+    private boolean dirty;
+    // Serializes flushes so an older copy of the log never lands after a newer one
+    private final Object flushLock = new Object();
     private File auditFile;
     private final SimpleDateFormat dateFormat;
-    private final int maxLogEntries;
+    // settings.max-audit-entries, guarded by this
+    private int maxLogEntries;
+    private BukkitTask flushTask;
 
     public AuditManager(LowOP plugin) {
         this.plugin = plugin;
         this.auditLog = new ArrayList<>();
         this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         this.dateFormat.setTimeZone(TimeZone.getTimeZone("Asia/Shanghai"));
-        this.maxLogEntries = 1000; // Keep last 1000 entries in memory
+        this.maxLogEntries = Math.max(1, plugin.getConfigManager().getMaxAuditEntries());
         
         loadAuditLog();
         startAutoFlushTask();
+        plugin.getConfigManager().subscribe(this::onConfigReload);
+    }
+
+    /**
+     * Resizes the in-memory log and reschedules the flush timer when their settings change
+     */
+    private void onConfigReload(ConfigSnapshot previous, ConfigSnapshot current) {
+        synchronized (this) {
+            maxLogEntries = Math.max(1, current.getMaxAuditEntries());
+            if (auditLog.size() > maxLogEntries) {
+                auditLog.subList(0, auditLog.size() - maxLogEntries).clear();
+                dirty = true;
+            }
+        }
+        if (current.getAutoSaveInterval() != previous.getAutoSaveInterval()) {
+            startAutoFlushTask();
+        }
     }
 
     private void loadAuditLog() {
         auditFile = new File(plugin.getDataFolder(), "audit_log.yml");
-        if (!auditFile.exists()) {
-            try {
-                auditFile.getParentFile().mkdirs();
-                auditFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create audit_log.yml", e);
-                return;
+        YamlConfiguration auditConfig = new YamlConfiguration();
+        
+        try {
+            String content = DurableFile.read(auditFile, plugin.getLogger());
+            if (content != null) {
+                auditConfig.loadFromString(content);
             }
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load audit_log.yml, starting with an empty audit log", e);
+            return;
         }
         
-        auditConfig = YamlConfiguration.loadConfiguration(auditFile);
-        
         // Load recent audit entries
         if (auditConfig.contains("entries")) {
             List<String> entries = auditConfig.getStringList("entries");
@@ -57,7 +83,7 @@ public class AuditManager {
         plugin.getLogger().info("Loaded " + auditLog.size() + " audit log entries");
     }
 
-    public void logStateChange(UUID playerUUID, boolean fromState, boolean toState, String executor) {
+    public synchronized void logStateChange(UUID playerUUID, boolean fromState, boolean toState, String executor) {
         String playerName = getPlayerName(playerUUID);
         String timestamp = dateFormat.format(new Date());
         
@@ -71,7 +97,7 @@ public class AuditManager {
         }
     }
 
-    public void logPermissionLevelChange(UUID playerUUID, PermissionManager.PermissionLevel fromLevel, PermissionManager.PermissionLevel toLevel, String executor) {
+    public synchronized void logPermissionLevelChange(UUID playerUUID, PermissionManager.PermissionLevel fromLevel, PermissionManager.PermissionLevel toLevel, String executor) {
         String playerName = getPlayerName(playerUUID);
         String timestamp = dateFormat.format(new Date());
         
@@ -85,7 +111,7 @@ public class AuditManager {
         }
     }
 
-    public void logBatchPermissionLevelChange(String executor, int total, int success, PermissionManager.PermissionLevel level) {
+    public synchronized void logBatchPermissionLevelChange(String executor, int total, int success, PermissionManager.PermissionLevel level) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s performed batch permission level change to %s - %d/%d successful",
@@ -94,7 +120,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPermissionDetection(String executor, String playerName, PermissionManager.PermissionLevel level) {
+    public synchronized void logPermissionDetection(String executor, String playerName, PermissionManager.PermissionLevel level) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s detected permission level for %s: %s",
@@ -107,7 +133,28 @@ public class AuditManager {
         }
     }
 
-    public void logCommandExecution(String command, String executor, boolean success) {
+    public synchronized void logBulkPermissionDetection(String executor, PermissionManager.DetectionReport report) {
+        String timestamp = dateFormat.format(new Date());
+        
+        StringBuilder totals = new StringBuilder();
+        for (PermissionManager.PermissionLevel level : PermissionManager.PermissionLevel.values()) {
+            if (totals.length() > 0) {
+                totals.append(", ");
+            }
+            totals.append(level.name()).append('=').append(report.getTotal(level));
+        }
+        
+        String logEntry = String.format("[%s] %s detected permission levels for %d players (%s) - %d mismatches",
+            timestamp, executor, report.getPlayerCount(), totals, report.getMismatches().size());
+        
+        addLogEntry(logEntry);
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Audit: " + logEntry);
+        }
+    }
+
+    public synchronized void logCommandExecution(String command, String executor, boolean success) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s executed command: %s (Success: %s)",
@@ -116,7 +163,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logError(String operation, String executor, String error) {
+    public synchronized void logError(String operation, String executor, String error) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] ERROR - %s by %s: %s",
@@ -126,7 +173,7 @@ public class AuditManager {
         plugin.getLogger().warning("Audit Error: " + logEntry);
     }
 
-    public void logBatchOperation(String operation, String executor, int total, int success) {
+    public synchronized void logBatchOperation(String operation, String executor, int total, int success) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s performed batch operation: %s - %d/%d successful",
@@ -135,7 +182,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerJoin(String playerName, UUID playerUUID, boolean hasAdminState) {
+    public synchronized void logPlayerJoin(String playerName, UUID playerUUID, boolean hasAdminState) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s joined (Admin State: %s)",
@@ -144,7 +191,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerJoinWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level) {
+    public synchronized void logPlayerJoinWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s joined (Permission Level: %s)",
@@ -153,7 +200,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPermissionFix(String playerName, String reason) {
+    public synchronized void logPermissionFix(String playerName, String reason) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] Permission fix for %s: %s",
@@ -162,7 +209,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPermissionRestore(String playerName, String context) {
+    public synchronized void logPermissionRestore(String playerName, String context) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] Permission restored for %s: %s",
@@ -171,7 +218,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerQuit(String playerName, UUID playerUUID, boolean hasAdminState) {
+    public synchronized void logPlayerQuit(String playerName, UUID playerUUID, boolean hasAdminState) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s quit (Admin State: %s)",
@@ -180,7 +227,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerQuitWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level) {
+    public synchronized void logPlayerQuitWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s quit (Permission Level: %s)",
@@ -189,7 +236,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerKick(String playerName, UUID playerUUID, boolean hasAdminState, String reason) {
+    public synchronized void logPlayerKick(String playerName, UUID playerUUID, boolean hasAdminState, String reason) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s was kicked (Admin State: %s, Reason: %s)",
@@ -198,7 +245,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    public void logPlayerKickWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level, String reason) {
+    public synchronized void logPlayerKickWithPermissionLevel(String playerName, UUID playerUUID, PermissionManager.PermissionLevel level, String reason) {
         String timestamp = dateFormat.format(new Date());
         
         String logEntry = String.format("[%s] %s was kicked (Permission Level: %s, Reason: %s)",
@@ -207,7 +254,7 @@ public class AuditManager {
         addLogEntry(logEntry);
     }
 
-    private void addLogEntry(String logEntry) {
+    private synchronized void addLogEntry(String logEntry) {
         auditLog.add(logEntry);
         
         // Trim log if it exceeds maximum size
@@ -215,30 +262,49 @@ public class AuditManager {
             auditLog.subList(0, auditLog.size() - maxLogEntries).clear();
         }
         
-        // Auto-save if enabled
-        if (plugin.getConfigManager().getAutoSaveInterval() > 0) {
-            flushLogs();
-        }
+        // Callers include the main thread, so the write is left to the flush task
+        dirty = true;
     }
 
+    /**
+     * Writes the log if it changed since the last flush. Runs on a worker from the flush
+     * task and synchronously on disable; the disk write happens outside the log's monitor.
+     */
     public void flushLogs() {
-        if (!plugin.getConfigManager().isAuditLogEnabled()) {
+        if (!plugin.getConfigManager().getSnapshot().isAuditLogEnabled()) {
             return;
         }
-        
-        try {
-            auditConfig.set("entries", auditLog);
-            auditConfig.save(auditFile);
-            plugin.getLogger().fine("Audit log flushed successfully");
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not save audit log to " + auditFile, e);
+        synchronized (flushLock) {
+            List<String> entries;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                entries = new ArrayList<>(auditLog);
+                dirty = false;
+            }
+            try {
+                YamlConfiguration auditConfig = new YamlConfiguration();
+                auditConfig.set("entries", entries);
+                DurableFile.write(auditFile, auditConfig.saveToString());
+                plugin.getLogger().fine("Audit log flushed successfully");
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                plugin.getLogger().log(Level.SEVERE, "Could not save audit log to " + auditFile, e);
+            }
         }
     }
 
     private void startAutoFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
         int interval = plugin.getConfigManager().getAutoSaveInterval();
         if (interval > 0) {
-            plugin.getServer().getScheduler().runTaskTimer(plugin, this::flushLogs, 
+            flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> plugin.getTaskManager().runAsync(this::flushLogs), 
                 interval * 20L, interval * 20L); // Convert seconds to ticks
         }
     }
@@ -256,12 +322,12 @@ public class AuditManager {
     }
 
     // Query methods for audit log
-    public List<String> getRecentEntries(int count) {
+    public synchronized List<String> getRecentEntries(int count) {
         int startIndex = Math.max(0, auditLog.size() - count);
         return new ArrayList<>(auditLog.subList(startIndex, auditLog.size()));
     }
 
-    public List<String> getEntriesByExecutor(String executor, int maxResults) {
+    public synchronized List<String> getEntriesByExecutor(String executor, int maxResults) {
         List<String> result = new ArrayList<>();
         for (int i = auditLog.size() - 1; i >= 0 && result.size() < maxResults; i--) {
             String entry = auditLog.get(i);
@@ -273,7 +339,7 @@ public class AuditManager {
         return result;
     }
 
-    public List<String> getEntriesByPlayer(String playerName, int maxResults) {
+    public synchronized List<String> getEntriesByPlayer(String playerName, int maxResults) {
         List<String> result = new ArrayList<>();
         for (int i = auditLog.size() - 1; i >= 0 && result.size() < maxResults; i--) {
             String entry = auditLog.get(i);
@@ -285,7 +351,7 @@ public class AuditManager {
         return result;
     }
 
-    public List<String> searchEntries(String keyword, int maxResults) {
+    public synchronized List<String> searchEntries(String keyword, int maxResults) {
         List<String> result = new ArrayList<>();
         for (int i = auditLog.size() - 1; i >= 0 && result.size() < maxResults; i--) {
             String entry = auditLog.get(i);
@@ -297,7 +363,7 @@ public class AuditManager {
         return result;
     }
 
-    public Map<String, Integer> getExecutorStats() {
+    public synchronized Map<String, Integer> getExecutorStats() {
         Map<String, Integer> stats = new HashMap<>();
         for (String entry : auditLog) {
             // Extract executor from log entry
@@ -312,7 +378,7 @@ public class AuditManager {
         return stats;
     }
 
-    public Map<String, Integer> getOperationStats() {
+    public synchronized Map<String, Integer> getOperationStats() {
         Map<String, Integer> stats = new HashMap<>();
         for (String entry : auditLog) {
             if (entry.contains("changed")) {
@@ -328,7 +394,7 @@ public class AuditManager {
         return stats;
     }
 
-    public void cleanupOldEntries(int daysToKeep) {
+    public synchronized void cleanupOldEntries(int daysToKeep) {
         if (daysToKeep <= 0) {
             return;
         }
@@ -358,16 +424,16 @@ public class AuditManager {
         }
         
         if (removed > 0) {
-            flushLogs();
+            dirty = true;
             plugin.getLogger().info("Cleaned up " + removed + " old audit entries");
         }
     }
 
-    public int getTotalEntries() {
+    public synchronized int getTotalEntries() {
         return auditLog.size();
     }
 
-    public String getOldestEntryDate() {
+    public synchronized String getOldestEntryDate() {
         if (auditLog.isEmpty()) {
             return "No entries";
         }
@@ -382,7 +448,7 @@ public class AuditManager {
         }
     }
 
-    public String getNewestEntryDate() {
+    public synchronized String getNewestEntryDate() {
         if (auditLog.isEmpty()) {
             return "No entries";
         }
@@ -3,21 +3,44 @@ package wangxianming.lowop.managers;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.ConfigSnapshot;
+import wangxianming.lowop.utils.DurableFile;
+import wangxianming.lowop.utils.LevelContext;
+import wangxianming.lowop.utils.LevelLadder;
+import wangxianming.lowop.utils.MessageTemplate;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 public class ConfigManager {
 
+    /**
+     * Told after a reload has swapped in a new snapshot, on the thread that ran the reload
+     */
+    public interface ReloadListener {
+        void onConfigReload(ConfigSnapshot previous, ConfigSnapshot current);
+    }
+
     private final LowOP plugin;
     private FileConfiguration config;
     private File configFile;
     
     private FileConfiguration messages;
     private File messagesFile;
+    private volatile Map<String, MessageTemplate> messageTemplates = Collections.emptyMap();
+    private volatile Map<String, Map<String, MessageTemplate>> localeMessageTemplates = Collections.emptyMap();
+    private volatile LevelLadder levelLadder;
+    // Every value getter reads this; replaced as a whole on reload
+    private volatile ConfigSnapshot snapshot;
+    private final List<ReloadListener> listeners = new CopyOnWriteArrayList<>();
 
     public ConfigManager(LowOP plugin) {
         this.plugin = plugin;
@@ -28,6 +51,8 @@ public class ConfigManager {
         // Load main config
         plugin.saveDefaultConfig();
         config = plugin.getConfig();
+        snapshot = ConfigSnapshot.read(config);
+        reportProblems(snapshot);
         
         // Load messages config
         messagesFile = new File(plugin.getDataFolder(), "messages.yml");
@@ -35,23 +60,27 @@ public class ConfigManager {
             plugin.saveResource("messages.yml", false);
         }
         messages = YamlConfiguration.loadConfiguration(messagesFile);
+        compileMessageTemplates();
         
         // Validate configuration
         validateConfig();
+        compileLevelLadder();
         
         plugin.getLogger().info("Configuration loaded successfully");
     }
 
     private void validateConfig() {
-        // Set defaults if missing
-        if (!config.contains("permission-groups.player-group")) {
-            config.set("permission-groups.player-group", "default");
-        }
-        if (!config.contains("permission-groups.lowop-group")) {
-            config.set("permission-groups.lowop-group", "otherop");
-        }
-        if (!config.contains("permission-groups.op-group")) {
-            config.set("permission-groups.op-group", "op");
+        // Set defaults if missing; the single-group keys only matter without a level ladder
+        if (!config.isSet("permission-groups.levels")) {
+            if (!config.contains("permission-groups.player-group")) {
+                config.set("permission-groups.player-group", "default");
+            }
+            if (!config.contains("permission-groups.lowop-group")) {
+                config.set("permission-groups.lowop-group", "otherop");
+            }
+            if (!config.contains("permission-groups.op-group")) {
+                config.set("permission-groups.op-group", "op");
+            }
         }
         if (!config.contains("settings.audit-log-enabled")) {
             config.set("settings.audit-log-enabled", true);
@@ -69,48 +98,304 @@ public class ConfigManager {
     public void reloadConfigs() {
         plugin.reloadConfig();
         config = plugin.getConfig();
+        ConfigSnapshot previous = snapshot;
+        ConfigSnapshot current = ConfigSnapshot.read(config);
+        snapshot = current;
+        reportProblems(current);
         
         messages = YamlConfiguration.loadConfiguration(messagesFile);
+        compileMessageTemplates();
         
         validateConfig();
+        compileLevelLadder();
+        if (current.needsRestart(previous)) {
+            plugin.getLogger().warning("Context and sync settings changed; restart the server to apply them");
+        }
+        for (ReloadListener listener : listeners) {
+            try {
+                listener.onConfigReload(previous, current);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not apply reloaded configuration to " + listener, e);
+            }
+        }
         plugin.getLogger().info("Configuration reloaded successfully");
     }
 
+    private void reportProblems(ConfigSnapshot loaded) {
+        for (String problem : loaded.getProblems()) {
+            plugin.getLogger().warning("config.yml: " + problem);
+        }
+    }
+
+    /**
+     * Registers a listener for reloads; managers use it to resize and reschedule in place
+     */
+    public void subscribe(ReloadListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * The current validated config; hot paths read it once per operation instead of
+     * going through the individual getters
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Compiles permission-groups.levels into the lookup tables used for group changes and
+     * detection. Configs without a ladder get the three built-in levels on the old
+     * player-group/lowop-group/op-group keys. Stored states refer to levels by ordinal, so
+     * a reload only picks up groups and display names when the levels themselves are unchanged;
+     * any other ladder edit needs a restart.
+     */
+    private void compileLevelLadder() {
+        LevelLadder compiled;
+        try {
+            if (config.isSet("permission-groups.levels")) {
+                List<LevelLadder.Tier> tiers = new ArrayList<>();
+                for (Map<?, ?> entry : config.getMapList("permission-groups.levels")) {
+                    tiers.add(new LevelLadder.Tier(stringValue(entry.get("name")), stringValue(entry.get("group")),
+                        stringValue(entry.get("display"))));
+                }
+                compiled = LevelLadder.compile(tiers);
+            } else {
+                compiled = LevelLadder.builtIn(config.getString("permission-groups.player-group", "default"),
+                    config.getString("permission-groups.lowop-group", "otherop"),
+                    config.getString("permission-groups.op-group", "op"));
+            }
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().severe("Invalid level ladder in config.yml: " + e.getMessage()
+                + (levelLadder != null ? ", keeping the current levels" : ", using the built-in levels"));
+            if (levelLadder != null) {
+                return;
+            }
+            compiled = LevelLadder.current();
+        }
+
+        if (levelLadder != null && !levelLadder.hasSameLevels(compiled)) {
+            plugin.getLogger().warning("The levels in config.yml changed; restart the server to apply them");
+            return;
+        }
+        levelLadder = compiled;
+        LevelLadder.install(compiled);
+        if (isDebugEnabled()) {
+            plugin.getLogger().info("Level ladder: " + compiled.getLevels());
+        }
+    }
+
+    private static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private void compileMessageTemplates() {
+        // Pre-compile every string message so sends skip regex and color translation
+        Map<String, MessageTemplate> compiled = compileTemplates(messages);
+        
+        // Optional per-locale overrides: messages_<locale>.yml (e.g. messages_en_us.yml)
+        Map<String, Map<String, MessageTemplate>> compiledLocales = new HashMap<>();
+        File[] localeFiles = plugin.getDataFolder().listFiles(
+            (dir, name) -> name.startsWith("messages_") && name.endsWith(".yml"));
+        if (localeFiles != null) {
+            for (File localeFile : localeFiles) {
+                String name = localeFile.getName();
+                String locale = name.substring("messages_".length(), name.length() - ".yml".length()).toLowerCase();
+                compiledLocales.put(locale, compileTemplates(YamlConfiguration.loadConfiguration(localeFile)));
+            }
+        }
+        
+        messageTemplates = compiled;
+        localeMessageTemplates = Collections.unmodifiableMap(compiledLocales);
+        
+        if (isDebugEnabled()) {
+            plugin.getLogger().info("Compiled " + compiled.size() + " message templates, "
+                + compiledLocales.size() + " locale overrides");
+        }
+    }
+
+    private Map<String, MessageTemplate> compileTemplates(FileConfiguration source) {
+        Map<String, MessageTemplate> compiled = new HashMap<>();
+        for (String key : source.getKeys(true)) {
+            if (source.isString(key)) {
+                compiled.put(key, MessageTemplate.compile(source.getString(key)));
+            }
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
     private void saveConfig() {
         try {
-            config.save(new File(plugin.getDataFolder(), "config.yml"));
+            // config.yml is edited by hand, so it gets the atomic write without a checksum footer
+            DurableFile.write(new File(plugin.getDataFolder(), "config.yml"), config.saveToString(), false);
         } catch (IOException e) {
             plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, e);
         }
     }
 
     // Getters for config values
+    public LevelLadder getLevelLadder() {
+        return levelLadder;
+    }
+
     public String getPlayerGroup() {
-        return config.getString("permission-groups.player-group", "default");
+        return levelLadder.getGroup(PermissionManager.PermissionLevel.PLAYER);
     }
 
     public String getLowOPGroup() {
-        return config.getString("permission-groups.lowop-group", "otherop");
+        return levelLadder.getGroup(PermissionManager.PermissionLevel.LOWOP);
     }
 
     public String getOPGroup() {
-        return config.getString("permission-groups.op-group", "op");
+        return levelLadder.getGroup(PermissionManager.PermissionLevel.OP);
+    }
+
+    /**
+     * The context this server's level changes are written in; global when context.server is
+     * blank. An invalid name falls back to global rather than splitting LuckPerms arguments.
+     */
+    public LevelContext getServerContext() {
+        String server = snapshot.getContextServer();
+        try {
+            return LevelContext.of(server, null);
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Invalid context.server '" + server + "' in config.yml, using the global context");
+            return LevelContext.GLOBAL;
+        }
+    }
+
+    /**
+     * Worlds that keep their own levels, as configured
+     */
+    public List<String> getContextWorlds() {
+        return snapshot.getContextWorlds();
     }
 
     public boolean isAuditLogEnabled() {
-        return config.getBoolean("settings.audit-log-enabled", true);
+        return snapshot.isAuditLogEnabled();
+    }
+
+    public int getMaxAuditEntries() {
+        return snapshot.getMaxAuditEntries();
     }
 
     public int getAutoSaveInterval() {
-        return config.getInt("settings.auto-save-interval", 300);
+        return snapshot.getAutoSaveInterval();
     }
 
     public int getRateLimit() {
-        return config.getInt("settings.rate-limit", 3);
+        return snapshot.getRateLimit();
+    }
+
+    public double getCommandCooldown() {
+        return snapshot.getCommandCooldown();
+    }
+
+    public int getBackendRateBurst() {
+        return snapshot.getBackendRateBurst();
+    }
+
+    public double getBackendRateRefill() {
+        return snapshot.getBackendRateRefill();
+    }
+
+    public long getBackendRateMaxWait() {
+        return snapshot.getBackendRateMaxWait();
+    }
+
+    public boolean isReconcileEnabled() {
+        return snapshot.isReconcileEnabled();
+    }
+
+    public int getReconcileIntervalMinutes() {
+        return snapshot.getReconcileIntervalMinutes();
+    }
+
+    public int getReconcileSliceMillis() {
+        return snapshot.getReconcileSliceMillis();
+    }
+
+    public int getReconcileMaxLookups() {
+        return snapshot.getReconcileMaxLookups();
+    }
+
+    public int getReconcileRepairsPerMinute() {
+        return snapshot.getReconcileRepairsPerMinute();
+    }
+
+    public boolean isSyncEnabled() {
+        return snapshot.isSyncEnabled();
+    }
+
+    public String getSyncTransport() {
+        return snapshot.getSyncTransport();
+    }
+
+    public String getSyncFile() {
+        return snapshot.getSyncFile();
+    }
+
+    public int getSyncPollInterval() {
+        return snapshot.getSyncPollInterval();
+    }
+
+    public int getBatchRateBurst() {
+        return snapshot.getBatchRateBurst();
+    }
+
+    public double getBatchRateRefill() {
+        return snapshot.getBatchRateRefill();
+    }
+
+    public int getDetectionCacheTtl() {
+        return snapshot.getDetectionCacheTtl();
+    }
+
+    public int getDetectChunkSize() {
+        return snapshot.getDetectChunkSize();
+    }
+
+    public int getSummaryPageSize() {
+        return snapshot.getSummaryPageSize();
+    }
+
+    public int getStateCacheSize() {
+        return snapshot.getStateCacheSize();
+    }
+
+    public int getStateRetentionDays() {
+        return snapshot.getStateRetentionDays();
+    }
+
+    public int getStateSweepSlice() {
+        return snapshot.getStateSweepSlice();
+    }
+
+    public int getMaxRetries() {
+        return snapshot.getMaxRetries();
+    }
+
+    public long getRetryDelay() {
+        return snapshot.getRetryDelay();
+    }
+
+    public int getBulkConcurrency() {
+        return snapshot.getBulkConcurrency();
+    }
+
+    public int getOutboxReplayConcurrency() {
+        return snapshot.getOutboxReplayConcurrency();
+    }
+
+    public int getBreakerFailureThreshold() {
+        return snapshot.getBreakerFailureThreshold();
+    }
+
+    public long getBreakerOpenMillis() {
+        return snapshot.getBreakerOpenMillis();
     }
 
     public boolean isDebugEnabled() {
-        return config.getBoolean("settings.debug", false);
+        return snapshot.isDebugEnabled();
     }
 
     // Message getters
@@ -118,6 +403,34 @@ public class ConfigManager {
         return messages.getString(path, defaultValue).replace('&', '§');
     }
 
+    public MessageTemplate getMessageTemplate(String path) {
+        return messageTemplates.get(path);
+    }
+
+    public MessageTemplate getMessageTemplate(String path, String locale) {
+        if (locale != null && !locale.isEmpty()) {
+            Map<String, MessageTemplate> overrides = localeMessageTemplates.get(locale);
+            if (overrides != null) {
+                MessageTemplate template = overrides.get(path);
+                if (template != null) {
+                    return template;
+                }
+            }
+        }
+        return messageTemplates.get(path);
+    }
+
+    /**
+     * Maps a client locale to the message catalog that serves it; "" is the default messages.yml
+     */
+    public String resolveMessageLocale(String locale) {
+        if (locale == null) {
+            return "";
+        }
+        String normalized = locale.toLowerCase();
+        return localeMessageTemplates.containsKey(normalized) ? normalized : "";
+    }
+
     public List<String> getMessageList(String path, List<String> defaultValue) {
         List<String> list = messages.getStringList(path);
         if (list.isEmpty()) {
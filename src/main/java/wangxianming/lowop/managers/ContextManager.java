@@ -0,0 +1,116 @@
+package wangxianming.lowop.managers;
+
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.LevelContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Context slices of the state store. The server's own context lives in the plugin's
+ * StateManager; every world listed under context.worlds gets a StateManager of its own,
+ * keyed by (UUID, server + world) through its index file. Only the slices of this server's
+ * contexts are ever opened, so other servers' assignments cost nothing here.
+ */
+public class ContextManager {
+
+    private final LowOP plugin;
+    private final LevelContext serverContext;
+    // Lower-cased world name -> slice, in config order
+    private final Map<String, StateManager> worldSlices = new LinkedHashMap<>();
+
+    public ContextManager(LowOP plugin) {
+        this.plugin = plugin;
+        this.serverContext = plugin.getStateManager().getContext();
+        for (String world : plugin.getConfigManager().getContextWorlds()) {
+            String key = world.trim().toLowerCase(Locale.ROOT);
+            if (key.isEmpty() || worldSlices.containsKey(key)) {
+                continue;
+            }
+            try {
+                worldSlices.put(key, new StateManager(plugin, serverContext.withWorld(world.trim())));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Ignored context world '" + world + "': " + e.getMessage());
+            }
+        }
+        if (!serverContext.isGlobal() || !worldSlices.isEmpty()) {
+            plugin.getLogger().info("Level context " + serverContext + ", " + worldSlices.size() + " world slices");
+        }
+    }
+
+    /**
+     * The context level changes without a world are written in; fixed until restart,
+     * since the state slice was opened for it
+     */
+    public LevelContext getServerContext() {
+        return serverContext;
+    }
+
+    /**
+     * The slice for a configured world, case-insensitive; null for any other world
+     */
+    public StateManager getSlice(String world) {
+        return world == null ? null : worldSlices.get(world.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Configured world names as they appear in their contexts
+     */
+    public List<String> getWorlds() {
+        List<String> worlds = new ArrayList<>(worldSlices.size());
+        for (StateManager slice : worldSlices.values()) {
+            worlds.add(slice.getContext().getWorld());
+        }
+        return Collections.unmodifiableList(worlds);
+    }
+
+    /**
+     * The player's stored level in each configured world that has one, in config order
+     */
+    public Map<String, PermissionManager.PermissionLevel> getWorldLevels(UUID playerUUID) {
+        Map<String, PermissionManager.PermissionLevel> levels = new LinkedHashMap<>();
+        for (StateManager slice : worldSlices.values()) {
+            if (slice.hasPlayerState(playerUUID)) {
+                levels.put(slice.getContext().getWorld(), slice.getPlayerPermissionLevel(playerUUID));
+            }
+        }
+        return levels;
+    }
+
+    // Online players stay resident in every slice, which also keeps their last-seen fresh
+    public void loadPlayer(UUID playerUUID) {
+        for (StateManager slice : worldSlices.values()) {
+            slice.loadPlayer(playerUUID);
+        }
+    }
+
+    public void unloadPlayer(UUID playerUUID) {
+        for (StateManager slice : worldSlices.values()) {
+            slice.unloadPlayer(playerUUID);
+        }
+    }
+
+    public void saveAllData() {
+        for (StateManager slice : worldSlices.values()) {
+            slice.saveAllData();
+        }
+    }
+
+    // Metrics
+    public int getWorldSliceCount() {
+        return worldSlices.size();
+    }
+
+    public int getWorldStateCount() {
+        int total = 0;
+        for (StateManager slice : worldSlices.values()) {
+            total += slice.getTotalPlayers();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,326 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.DurableFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Time-limited grants. Expiries sit in a min-heap keyed by due time, so the once-a-second
+ * check only looks at the head and pops what is due. Due grants are reverted through
+ * PermissionManager's bulk pipeline and stay active, and persisted, until their revert
+ * succeeds. The grants are persisted to expiries.yml, so grants that ran out, or were
+ * being reverted, while the server was down are reverted on the first check after startup.
+ */
+public class ExpiryManager {
+
+    private static final String FILE_NAME = "expiries.yml";
+    private static final long CHECK_PERIOD_TICKS = 20L;
+    // A revert that did not reach the backend is tried again this much later
+    private static final long RETRY_MILLIS = 60_000L;
+
+    private static final class Grant {
+        private final UUID playerUUID;
+        private final PermissionManager.PermissionLevel granted;
+        private final PermissionManager.PermissionLevel revertTo;
+        private final long expiresAt;
+        // Popped from the heap and handed to the pipeline; guarded by the manager
+        private boolean reverting;
+
+        private Grant(UUID playerUUID, PermissionManager.PermissionLevel granted,
+                      PermissionManager.PermissionLevel revertTo, long expiresAt) {
+            this.playerUUID = playerUUID;
+            this.granted = granted;
+            this.revertTo = revertTo;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final LowOP plugin;
+    private final File expiryFile;
+    // Both guarded by this. Cancelled or replaced grants stay in the heap until popped
+    // and are recognised by no longer being the player's active grant.
+    private final PriorityQueue<Grant> heap = new PriorityQueue<>(Comparator.comparingLong(grant -> grant.expiresAt));
+    private final Map<UUID, Grant> active = new HashMap<>();
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+    private BukkitTask task;
+
+    private final LongAdder reverted = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+
+    public ExpiryManager(LowOP plugin) {
+        this.plugin = plugin;
+        this.expiryFile = new File(plugin.getDataFolder(), FILE_NAME);
+        load();
+    }
+
+    private synchronized void load() {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            String content = DurableFile.read(expiryFile, plugin.getLogger());
+            if (content == null) {
+                return;
+            }
+            config.loadFromString(content);
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load " + FILE_NAME + ", temporary grants will not expire", e);
+            return;
+        }
+
+        ConfigurationSection grants = config.getConfigurationSection("grants");
+        if (grants == null) {
+            return;
+        }
+        for (String key : grants.getKeys(false)) {
+            ConfigurationSection section = grants.getConfigurationSection(key);
+            try {
+                Grant grant = new Grant(UUID.fromString(key),
+                    PermissionManager.PermissionLevel.valueOf(section.getString("level")),
+                    PermissionManager.PermissionLevel.valueOf(section.getString("revert-to")),
+                    section.getLong("expires"));
+                active.put(grant.playerUUID, grant);
+                heap.add(grant);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                plugin.getLogger().warning("Ignored invalid temporary grant in " + FILE_NAME + ": " + key);
+            }
+        }
+        if (!active.isEmpty()) {
+            plugin.getLogger().info("Loaded " + active.size() + " temporary grants");
+        }
+    }
+
+    /**
+     * Starts the expiry check; the first run reverts anything that expired while stopped
+     */
+    public void start() {
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::revertDue, CHECK_PERIOD_TICKS, CHECK_PERIOD_TICKS);
+    }
+
+    /**
+     * Records that the player was moved from revertTo to granted until expiresAt. Replaces
+     * any earlier grant for the player but keeps its original level to return to.
+     */
+    public synchronized void schedule(UUID playerUUID, PermissionManager.PermissionLevel granted,
+                                      PermissionManager.PermissionLevel revertTo, long expiresAt) {
+        Grant previous = active.get(playerUUID);
+        if (previous != null) {
+            revertTo = previous.revertTo;
+        }
+        Grant grant = new Grant(playerUUID, granted, revertTo, expiresAt);
+        active.put(playerUUID, grant);
+        heap.add(grant);
+        queueSave();
+    }
+
+    /**
+     * Moves the expiry of an active grant of this level; false when there is none
+     */
+    public synchronized boolean extend(UUID playerUUID, PermissionManager.PermissionLevel granted, long expiresAt) {
+        Grant previous = active.get(playerUUID);
+        if (previous == null || previous.granted != granted) {
+            return false;
+        }
+        schedule(playerUUID, granted, previous.revertTo, expiresAt);
+        return true;
+    }
+
+    /**
+     * Makes the player's current level permanent
+     */
+    public synchronized void cancel(UUID playerUUID) {
+        if (active.remove(playerUUID) == null) {
+            return;
+        }
+        // Dropped grants are skipped when popped; rebuild once they dominate the heap
+        if (heap.size() > active.size() * 2 + 64) {
+            heap.clear();
+            for (Grant grant : active.values()) {
+                if (!grant.reverting) {
+                    heap.add(grant);
+                }
+            }
+        }
+        queueSave();
+    }
+
+    /**
+     * Expiry timestamp of the player's active grant, or 0 when the level is permanent
+     */
+    public synchronized long getExpiry(UUID playerUUID) {
+        Grant grant = active.get(playerUUID);
+        return grant != null ? grant.expiresAt : 0L;
+    }
+
+    private void revertDue() {
+        List<Grant> due = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            while (!heap.isEmpty() && heap.peek().expiresAt <= now) {
+                Grant grant = heap.poll();
+                // The grant stays active and on disk while the revert runs, so a crash
+                // before it lands leaves it due again rather than making it permanent
+                if (active.get(grant.playerUUID) == grant && !grant.reverting) {
+                    grant.reverting = true;
+                    due.add(grant);
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, Grant> byPlayer = new HashMap<>();
+        for (Grant grant : due) {
+            byPlayer.put(grant.playerUUID, grant);
+        }
+        plugin.getPermissionManager().applyLevelChanges(new RevertCursor(due.iterator()),
+            plugin.getServer().getConsoleSender(), (change, success) -> {
+                Grant grant = byPlayer.get(change.getPlayerUUID());
+                if (success) {
+                    reverted.increment();
+                    plugin.getLogger().info("Temporary " + change.getFrom() + " grant for " + change.getPlayerUUID()
+                        + " expired, reverted to " + change.getTo());
+                    finish(grant);
+                    return;
+                }
+                synchronized (this) {
+                    // Unless the grant was replaced or cancelled meanwhile, try again later
+                    if (active.get(grant.playerUUID) == grant) {
+                        retried.increment();
+                        schedule(grant.playerUUID, grant.granted, grant.revertTo, System.currentTimeMillis() + RETRY_MILLIS);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Drops a grant whose revert landed or is no longer needed, unless it was replaced
+     */
+    private synchronized void finish(Grant grant) {
+        if (active.get(grant.playerUUID) == grant) {
+            active.remove(grant.playerUUID);
+            queueSave();
+        }
+    }
+
+    /**
+     * Turns due grants into changes as the pipeline asks for them (on a worker, so the
+     * stored level may be read from disk). A player whose level changed since the grant
+     * is left alone: someone has decided their level in the meantime.
+     */
+    private final class RevertCursor implements Iterator<PermissionManager.LevelChange> {
+        private final Iterator<Grant> grants;
+        private PermissionManager.LevelChange next;
+
+        private RevertCursor(Iterator<Grant> grants) {
+            this.grants = grants;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && grants.hasNext()) {
+                Grant grant = grants.next();
+                PermissionManager.PermissionLevel current = plugin.getStateManager().getPlayerPermissionLevel(grant.playerUUID);
+                if (current == grant.granted && current != grant.revertTo) {
+                    next = new PermissionManager.LevelChange(grant.playerUUID, current, grant.revertTo);
+                } else {
+                    superseded.increment();
+                    finish(grant);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public PermissionManager.LevelChange next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PermissionManager.LevelChange change = next;
+            next = null;
+            return change;
+        }
+    }
+
+    private void queueSave() {
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getTaskManager().runAsync(() -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    private void save() {
+        YamlConfiguration config = new YamlConfiguration();
+        synchronized (this) {
+            for (Grant grant : active.values()) {
+                String key = "grants." + grant.playerUUID;
+                config.set(key + ".level", grant.granted.name());
+                config.set(key + ".revert-to", grant.revertTo.name());
+                config.set(key + ".expires", grant.expiresAt);
+            }
+        }
+        try {
+            DurableFile.write(expiryFile, config.saveToString());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not save " + FILE_NAME, e);
+        }
+    }
+
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        save();
+    }
+
+    // Metrics
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * Milliseconds until the next grant expires, or -1 when none is active
+     */
+    public synchronized long getNextExpiryMillis() {
+        // Drop cancelled grants sitting at the head; they would be skipped when popped anyway
+        Grant head = heap.peek();
+        while (head != null && active.get(head.playerUUID) != head) {
+            heap.poll();
+            head = heap.peek();
+        }
+        return head != null ? Math.max(0L, head.expiresAt - System.currentTimeMillis()) : -1L;
+    }
+
+    public long getReverted() {
+        return reverted.sum();
+    }
+
+    public long getSuperseded() {
+        return superseded.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+}
@@ -2,6 +2,7 @@ package wangxianming.lowop.managers;
 
 import org.bukkit.Bukkit;
 import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.CircuitBreaker;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
@@ -52,6 +53,11 @@ public class HealthManager {
             healthMetrics.put("command_execution_healthy", commandExecutionHealthy);
             overallHealth &= commandExecutionHealthy;
 
+            // Check backend circuit breaker
+            boolean backendCircuitHealthy = checkBackendCircuit();
+            healthMetrics.put("backend_circuit_healthy", backendCircuitHealthy);
+            overallHealth &= backendCircuitHealthy;
+
             // Update overall health
             healthMetrics.put("overall_healthy", overallHealth);
             healthMetrics.put("last_check_timestamp", lastHealthCheck);
@@ -71,6 +77,19 @@ public class HealthManager {
         }
     }
 
+    private boolean checkBackendCircuit() {
+        PermissionManager permissionManager = plugin.getPermissionManager();
+        if (permissionManager == null) {
+            return true;
+        }
+        if (permissionManager.getBackendBreakerState() == CircuitBreaker.State.OPEN) {
+            plugin.getLogger().warning("Backend circuit health: open, " + permissionManager.getParkedChangeCount()
+                + " permission changes parked until LuckPerms recovers");
+            return false;
+        }
+        return true;
+    }
+
     private boolean checkLuckPermsHealth() {
         try {
             org.bukkit.plugin.Plugin luckPerms = Bukkit.getPluginManager().getPlugin("LuckPerms");
@@ -193,13 +212,110 @@ public class HealthManager {
             }
 
             // Check player state count
-            int playerStateCount = plugin.getStateManager().getTotalPlayers();
+            StateManager stateManager = plugin.getStateManager();
+            int playerStateCount = stateManager.getTotalPlayers();
             healthMetrics.put("player_state_count", playerStateCount);
+            healthMetrics.put("state_resident", stateManager.getResidentCount());
+            healthMetrics.put("state_cached", stateManager.getOfflineCacheSize());
+            healthMetrics.put("state_pending", stateManager.getPendingCount());
+            healthMetrics.put("state_index_reads", stateManager.getIndexReads());
+            healthMetrics.put("state_cache_hits", stateManager.getOfflineCacheHits());
 
             // Check audit log entries
             int auditEntryCount = plugin.getAuditManager().getTotalEntries();
             healthMetrics.put("audit_entry_count", auditEntryCount);
 
+            // Detection cache
+            PermissionManager permissionManager = plugin.getPermissionManager();
+            healthMetrics.put("detection_cache_size", permissionManager.getDetectionCacheSize());
+            healthMetrics.put("detection_cache_hits", permissionManager.getDetectionCacheHits());
+            healthMetrics.put("detection_cache_misses", permissionManager.getDetectionCacheMisses());
+
+            // Per-player operation queues
+            healthMetrics.put("operation_queues", permissionManager.getQueuedOperationPlayers());
+            healthMetrics.put("operations_merged", permissionManager.getOperationsMerged());
+            healthMetrics.put("operations_superseded", permissionManager.getOperationsSuperseded());
+            healthMetrics.put("operations_skipped", permissionManager.getOperationsSkipped());
+
+            // Backend resilience
+            healthMetrics.put("backend_breaker_state", permissionManager.getBackendBreakerState().name());
+            healthMetrics.put("backend_breaker_trips", permissionManager.getBackendBreakerTrips());
+            healthMetrics.put("backend_breaker_rejections", permissionManager.getBackendBreakerRejections());
+            healthMetrics.put("backend_retries", permissionManager.getBackendRetries());
+            healthMetrics.put("backend_parked_changes", permissionManager.getParkedChangeCount());
+
+            // Drift between stored levels and LuckPerms
+            ReconcileManager reconcileManager = plugin.getReconcileManager();
+            if (reconcileManager != null && reconcileManager.isAvailable()) {
+                healthMetrics.put("reconcile_running", reconcileManager.isPassRunning());
+                healthMetrics.put("reconcile_passes", reconcileManager.getPasses());
+                healthMetrics.put("reconcile_scanned", reconcileManager.getScanned());
+                healthMetrics.put("reconcile_drift", reconcileManager.getDrift());
+                healthMetrics.put("reconcile_last_pass_drift", reconcileManager.getLastPassDrift());
+                healthMetrics.put("reconcile_last_pass_millis", reconcileManager.getLastPassMillis());
+                healthMetrics.put("reconcile_repaired", reconcileManager.getRepaired());
+                healthMetrics.put("reconcile_repair_failed", reconcileManager.getRepairFailed());
+                healthMetrics.put("reconcile_repairs_queued", reconcileManager.getQueuedRepairs());
+                healthMetrics.put("reconcile_unverifiable", reconcileManager.getUnverifiable());
+            }
+
+            // Outbox of changes not yet confirmed by the backend
+            OutboxManager outboxManager = plugin.getOutboxManager();
+            if (outboxManager != null) {
+                healthMetrics.put("outbox_open", outboxManager.getOpenCount());
+                healthMetrics.put("outbox_replay_remaining", outboxManager.getReplayRemaining());
+                healthMetrics.put("outbox_replayed", outboxManager.getReplayed());
+                healthMetrics.put("outbox_replay_dropped", outboxManager.getReplayDropped());
+            }
+
+            // Context slices of the state store
+            ContextManager contextManager = plugin.getContextManager();
+            if (contextManager != null) {
+                healthMetrics.put("context_server", contextManager.getServerContext().toString());
+                healthMetrics.put("context_world_slices", contextManager.getWorldSliceCount());
+                healthMetrics.put("context_world_states", contextManager.getWorldStateCount());
+            }
+
+            // Cross-server change propagation
+            SyncManager syncManager = plugin.getSyncManager();
+            if (syncManager != null && syncManager.isEnabled()) {
+                healthMetrics.put("sync_published", syncManager.getPublished());
+                healthMetrics.put("sync_received", syncManager.getReceived());
+                healthMetrics.put("sync_applied", syncManager.getApplied());
+                healthMetrics.put("sync_ignored", syncManager.getIgnored());
+                healthMetrics.put("sync_malformed", syncManager.getMalformed());
+            }
+
+            // Temporary grants waiting to expire
+            ExpiryManager expiryManager = plugin.getExpiryManager();
+            if (expiryManager != null) {
+                healthMetrics.put("grants_active", expiryManager.getActiveCount());
+                healthMetrics.put("grants_next_expiry_millis", expiryManager.getNextExpiryMillis());
+                healthMetrics.put("grants_reverted", expiryManager.getReverted());
+                healthMetrics.put("grants_superseded", expiryManager.getSuperseded());
+                healthMetrics.put("grants_retried", expiryManager.getRetried());
+            }
+
+            // Rate limiter rejections
+            RateLimitManager rateLimitManager = plugin.getRateLimitManager();
+            if (rateLimitManager != null) {
+                healthMetrics.put("rate_limit_sender_rejections", rateLimitManager.getSenderRejections());
+                healthMetrics.put("rate_limit_backend_rejections", rateLimitManager.getBackendRejections());
+                healthMetrics.put("rate_limit_backend_throttled", rateLimitManager.getBackendThrottled());
+                healthMetrics.put("rate_limit_batch_rejections", rateLimitManager.getBatchRejections());
+            }
+
+            // Worker threads and main thread dispatcher
+            TaskManager taskManager = plugin.getTaskManager();
+            if (taskManager != null) {
+                healthMetrics.put("executor_active", taskManager.getActiveWorkers());
+                healthMetrics.put("executor_peak_active", taskManager.getPeakActiveWorkers());
+                healthMetrics.put("executor_completed", taskManager.getCompletedWorkerTasks());
+                healthMetrics.put("main_thread_queue_depth", taskManager.getMainThreadQueueDepth());
+                healthMetrics.put("main_thread_peak_queue_depth", taskManager.getPeakMainThreadQueueDepth());
+                healthMetrics.put("task_failures", taskManager.getFailedTasks());
+            }
+
             healthMetrics.put("managers_initialized", true);
             return true;
 
@@ -251,6 +367,93 @@ public class HealthManager {
         summary.append("Player States: ").append(healthMetrics.getOrDefault("player_state_count", 0)).append("\n");
         summary.append("Audit Entries: ").append(healthMetrics.getOrDefault("audit_entry_count", 0)).append("\n");
         
+        if (healthMetrics.containsKey("executor_queue_depth")) {
+            summary.append("Executor: active=").append(healthMetrics.get("executor_active"))
+                .append(", queued=").append(healthMetrics.get("executor_queue_depth"))
+                .append(" (peak ").append(healthMetrics.get("executor_peak_queue_depth")).append(")")
+                .append(", completed=").append(healthMetrics.get("executor_completed"))
+                .append(", main thread queued=").append(healthMetrics.get("main_thread_queue_depth"))
+                .append(" (peak ").append(healthMetrics.get("main_thread_peak_queue_depth")).append(")")
+                .append(", failures=").append(healthMetrics.get("task_failures")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("state_resident")) {
+            summary.append("State Store: resident=").append(healthMetrics.get("state_resident"))
+                .append(", cached=").append(healthMetrics.get("state_cached"))
+                .append(", pending=").append(healthMetrics.get("state_pending"))
+                .append(", index reads=").append(healthMetrics.get("state_index_reads"))
+                .append(", cache hits=").append(healthMetrics.get("state_cache_hits")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("detection_cache_size")) {
+            summary.append("Detection Cache: ").append(healthMetrics.get("detection_cache_size"))
+                .append(" entries, hits=").append(healthMetrics.get("detection_cache_hits"))
+                .append(", misses=").append(healthMetrics.get("detection_cache_misses")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("operation_queues")) {
+            summary.append("Operation Queues: ").append(healthMetrics.get("operation_queues"))
+                .append(" players, merged=").append(healthMetrics.get("operations_merged"))
+                .append(", superseded=").append(healthMetrics.get("operations_superseded"))
+                .append(", skipped writes=").append(healthMetrics.get("operations_skipped")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("backend_breaker_state")) {
+            summary.append("Backend Circuit: ").append(healthMetrics.get("backend_breaker_state"))
+                .append(", trips=").append(healthMetrics.get("backend_breaker_trips"))
+                .append(", fast-failed=").append(healthMetrics.get("backend_breaker_rejections"))
+                .append(", retries=").append(healthMetrics.get("backend_retries"))
+                .append(", parked=").append(healthMetrics.get("backend_parked_changes")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("reconcile_passes")) {
+            summary.append("Reconcile: ").append(Boolean.TRUE.equals(healthMetrics.get("reconcile_running")) ? "running" : "idle")
+                .append(", passes=").append(healthMetrics.get("reconcile_passes"))
+                .append(", last drift=").append(healthMetrics.get("reconcile_last_pass_drift"))
+                .append(" (").append(healthMetrics.get("reconcile_last_pass_millis")).append("ms)")
+                .append(", repaired=").append(healthMetrics.get("reconcile_repaired"))
+                .append(", failed=").append(healthMetrics.get("reconcile_repair_failed"))
+                .append(", queued=").append(healthMetrics.get("reconcile_repairs_queued"))
+                .append(", unverifiable=").append(healthMetrics.get("reconcile_unverifiable")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("outbox_open")) {
+            summary.append("Outbox: open=").append(healthMetrics.get("outbox_open"))
+                .append(", replaying=").append(healthMetrics.get("outbox_replay_remaining"))
+                .append(", replayed=").append(healthMetrics.get("outbox_replayed"))
+                .append(", dropped=").append(healthMetrics.get("outbox_replay_dropped")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("context_server")) {
+            summary.append("Contexts: server=").append(healthMetrics.get("context_server"))
+                .append(", worlds=").append(healthMetrics.get("context_world_slices"))
+                .append(", world states=").append(healthMetrics.get("context_world_states")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("sync_published")) {
+            summary.append("Sync: published=").append(healthMetrics.get("sync_published"))
+                .append(", received=").append(healthMetrics.get("sync_received"))
+                .append(", applied=").append(healthMetrics.get("sync_applied"))
+                .append(", ignored=").append(healthMetrics.get("sync_ignored"))
+                .append(", malformed=").append(healthMetrics.get("sync_malformed")).append("\n");
+        }
+
+        if (healthMetrics.containsKey("grants_active")) {
+            long nextExpiry = (Long) healthMetrics.get("grants_next_expiry_millis");
+            summary.append("Temporary Grants: active=").append(healthMetrics.get("grants_active"))
+                .append(", next=").append(nextExpiry < 0 ? "none" : (nextExpiry / 1000) + "s")
+                .append(", reverted=").append(healthMetrics.get("grants_reverted"))
+                .append(", superseded=").append(healthMetrics.get("grants_superseded"))
+                .append(", retried=").append(healthMetrics.get("grants_retried")).append("\n");
+        }
+        
+        if (healthMetrics.containsKey("rate_limit_sender_rejections")) {
+            summary.append("Rate Limited: sender=").append(healthMetrics.get("rate_limit_sender_rejections"))
+                .append(", backend=").append(healthMetrics.get("rate_limit_backend_rejections"))
+                .append(" (throttled ").append(healthMetrics.get("rate_limit_backend_throttled")).append(")")
+                .append(", batch=").append(healthMetrics.get("rate_limit_batch_rejections")).append("\n");
+        }
+        
         if (healthMetrics.containsKey("heap_usage_percent")) {
             summary.append("Heap Usage: ").append(healthMetrics.get("heap_usage_percent")).append("%\n");
         }
@@ -0,0 +1,188 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.MessageUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NotificationManager {
+
+    public static final String NOTIFY_PERMISSION = "lowop.notify";
+    private static final int NAMES_PER_LINE = 10;
+
+    private final LowOP plugin;
+    private final MessageUtils messageUtils;
+    private final Map<String, OperationSummary> lastSummaries;
+
+    public NotificationManager(LowOP plugin) {
+        this.plugin = plugin;
+        this.messageUtils = new MessageUtils(plugin.getConfigManager());
+        this.lastSummaries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Collects per-player results of one operation so they can be sent as a single summary
+     */
+    public static class OperationSummary {
+        private final String operation;
+        private final String executor;
+        private final Map<String, List<String>> playersByOutcome = new LinkedHashMap<>();
+        private int total;
+        private int success;
+
+        public OperationSummary(String operation, String executor) {
+            this.operation = operation;
+            this.executor = executor;
+        }
+
+        public synchronized void recordSuccess(String playerName, String outcome) {
+            playersByOutcome.computeIfAbsent(outcome, key -> new ArrayList<>()).add(playerName);
+            total++;
+            success++;
+        }
+
+        public synchronized void recordFailure(String playerName, String outcome) {
+            playersByOutcome.computeIfAbsent(outcome, key -> new ArrayList<>()).add(playerName);
+            total++;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getExecutor() {
+            return executor;
+        }
+
+        public synchronized int getTotal() {
+            return total;
+        }
+
+        public synchronized int getSuccess() {
+            return success;
+        }
+
+        synchronized Map<String, List<String>> snapshot() {
+            Map<String, List<String>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : playersByOutcome.entrySet()) {
+                copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return copy;
+        }
+    }
+
+    public OperationSummary createSummary(String operation, CommandSender executor) {
+        return new OperationSummary(operation, executor instanceof Player ? executor.getName() : "CONSOLE");
+    }
+
+    /**
+     * Sends the first page of the summary to the executor and a one-line notice to other staff
+     */
+    public void publish(CommandSender executor, OperationSummary summary) {
+        if (!Bukkit.isPrimaryThread()) {
+            plugin.getTaskManager().runSync(() -> publish(executor, summary));
+            return;
+        }
+        
+        lastSummaries.put(executor.getName(), summary);
+        sendSummaryPage(executor, summary, 1);
+
+        Map<String, String> placeholders = Map.of(
+            "executor", summary.getExecutor(),
+            "operation", summary.getOperation(),
+            "success", String.valueOf(summary.getSuccess()),
+            "total", String.valueOf(summary.getTotal())
+        );
+        broadcast(NOTIFY_PERMISSION, "notify-operation", placeholders, executor);
+    }
+
+    public boolean sendLastSummaryPage(CommandSender sender, int page) {
+        OperationSummary summary = lastSummaries.get(sender.getName());
+        if (summary == null) {
+            return false;
+        }
+        sendSummaryPage(sender, summary, page);
+        return true;
+    }
+
+    public void sendSummaryPage(CommandSender sender, OperationSummary summary, int page) {
+        String locale = messageUtils.getLocale(sender);
+        List<String> lines = renderLines(summary, locale);
+        int pageSize = Math.max(1, plugin.getConfigManager().getSummaryPageSize());
+        int pages = Math.max(1, (lines.size() + pageSize - 1) / pageSize);
+        int currentPage = Math.min(Math.max(1, page), pages);
+
+        List<String> output = new ArrayList<>();
+        output.add(messageUtils.getMessage("summary-header", Map.of(
+            "operation", summary.getOperation(),
+            "success", String.valueOf(summary.getSuccess()),
+            "total", String.valueOf(summary.getTotal())
+        ), locale));
+
+        int from = (currentPage - 1) * pageSize;
+        int to = Math.min(lines.size(), from + pageSize);
+        output.addAll(lines.subList(from, to));
+
+        if (pages > 1) {
+            output.add(messageUtils.getMessage("summary-page", Map.of(
+                "page", String.valueOf(currentPage),
+                "pages", String.valueOf(pages)
+            ), locale));
+        }
+
+        sender.sendMessage(output.toArray(new String[0]));
+    }
+
+    private List<String> renderLines(OperationSummary summary, String locale) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : summary.snapshot().entrySet()) {
+            List<String> players = entry.getValue();
+            for (int i = 0; i < players.size(); i += NAMES_PER_LINE) {
+                List<String> chunk = players.subList(i, Math.min(players.size(), i + NAMES_PER_LINE));
+                lines.add(messageUtils.getMessage("summary-line", Map.of(
+                    "outcome", entry.getKey(),
+                    "count", String.valueOf(players.size()),
+                    "players", String.join(", ", chunk)
+                ), locale));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Sends a message to every online holder of the permission, rendering once per message locale
+     */
+    public int broadcast(String permission, String key, Map<String, String> placeholders) {
+        return broadcast(permission, key, placeholders, null);
+    }
+
+    private int broadcast(String permission, String key, Map<String, String> placeholders, CommandSender exclude) {
+        Map<String, String> renderedByLocale = new HashMap<>();
+        int recipients = 0;
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (player == exclude || !player.hasPermission(permission)) {
+                continue;
+            }
+            String locale = messageUtils.getLocale(player);
+            String message = renderedByLocale.computeIfAbsent(locale,
+                target -> messageUtils.getMessage(key, placeholders, target));
+            player.sendMessage(message);
+            recipients++;
+        }
+
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Broadcast " + key + " to " + recipients + " recipients with "
+                + renderedByLocale.size() + " renders");
+        }
+        return recipients;
+    }
+
+    public void notifyStaff(String key, Map<String, String> placeholders) {
+        broadcast(NOTIFY_PERMISSION, key, placeholders);
+    }
+}
@@ -0,0 +1,312 @@
+package wangxianming.lowop.managers;
+
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.DurableFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of backend permission changes. A change is appended and fsynced
+ * before its LuckPerms commands run and acknowledged once they succeed, so anything still
+ * open at startup was interrupted by a stop or crash and is replayed in the background.
+ */
+public class OutboxManager {
+
+    private static final String FILE_NAME = "outbox.log";
+    // Rewrite the journal once it holds this many records and mostly acknowledged ones
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    private static final class Entry {
+        private final long sequence;
+        private final PermissionManager.PermissionLevel level;
+
+        private Entry(long sequence, PermissionManager.PermissionLevel level) {
+            this.sequence = sequence;
+            this.level = level;
+        }
+    }
+
+    private final LowOP plugin;
+    private final File outboxFile;
+    // Latest open change per player, in journal order; guarded by this
+    private final Map<UUID, Entry> openEntries = new LinkedHashMap<>();
+    private FileChannel channel;
+    private long nextSequence = 1;
+    private int journalRecords;
+
+    private final AtomicInteger replayRemaining = new AtomicInteger();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder replayDropped = new LongAdder();
+
+    public OutboxManager(LowOP plugin) {
+        this.plugin = plugin;
+        this.outboxFile = new File(plugin.getDataFolder(), FILE_NAME);
+        load();
+    }
+
+    private synchronized void load() {
+        int corrupt = 0;
+        if (outboxFile.exists()) {
+            try {
+                for (String line : Files.readAllLines(outboxFile.toPath(), StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (!apply(line)) {
+                        // A torn append can only be the tail; anything after it is not trusted
+                        corrupt++;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not read " + FILE_NAME + ", interrupted changes will not be replayed", e);
+            }
+        }
+        if (corrupt > 0) {
+            plugin.getLogger().warning("Ignored a damaged record at the end of " + FILE_NAME);
+        }
+
+        try {
+            compact();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not open " + FILE_NAME + ", permission changes will not be journaled", e);
+        }
+        if (!openEntries.isEmpty()) {
+            plugin.getLogger().info("Found " + openEntries.size() + " interrupted permission changes in " + FILE_NAME);
+        }
+    }
+
+    /**
+     * Parses one journal line: "+ seq uuid LEVEL crc" opens a change, "- seq uuid crc"
+     * acknowledges it. Returns false when the line is malformed or fails its checksum.
+     */
+    private boolean apply(String line) {
+        int lastSpace = line.lastIndexOf(' ');
+        if (lastSpace < 0) {
+            return false;
+        }
+        String body = line.substring(0, lastSpace);
+        if (!checksum(body).equals(line.substring(lastSpace + 1))) {
+            return false;
+        }
+
+        String[] parts = body.split(" ");
+        try {
+            long sequence = Long.parseLong(parts[1]);
+            UUID playerUUID = UUID.fromString(parts[2]);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (parts[0].equals("+") && parts.length == 4) {
+                openEntries.remove(playerUUID);
+                openEntries.put(playerUUID, new Entry(sequence, PermissionManager.PermissionLevel.valueOf(parts[3])));
+                return true;
+            }
+            if (parts[0].equals("-") && parts.length == 3) {
+                Entry entry = openEntries.get(playerUUID);
+                if (entry != null && entry.sequence == sequence) {
+                    openEntries.remove(playerUUID);
+                }
+                return true;
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Journals a change before it is sent to the backend and returns its sequence number.
+     * A newer change for the same player replaces the older open one.
+     */
+    public synchronized long record(UUID playerUUID, PermissionManager.PermissionLevel level) {
+        long sequence = nextSequence++;
+        openEntries.remove(playerUUID);
+        openEntries.put(playerUUID, new Entry(sequence, level));
+        append("+ " + sequence + " " + playerUUID + " " + level.name(), true);
+        return sequence;
+    }
+
+    /**
+     * Closes a change once the backend applied it, or once it failed for good. Not forced
+     * to disk: losing an acknowledgement only means an idempotent replay after a crash.
+     */
+    public synchronized void acknowledge(UUID playerUUID, long sequence) {
+        Entry entry = openEntries.get(playerUUID);
+        if (entry == null || entry.sequence != sequence) {
+            return;
+        }
+        openEntries.remove(playerUUID);
+        append("- " + sequence + " " + playerUUID, false);
+
+        try {
+            if (openEntries.isEmpty() && channel != null) {
+                // Nothing left to replay: start the journal over
+                channel.truncate(0L);
+                journalRecords = 0;
+            } else if (journalRecords >= COMPACT_MIN_RECORDS && journalRecords > openEntries.size() * 4) {
+                compact();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not compact " + FILE_NAME, e);
+        }
+    }
+
+    public synchronized boolean isOpen(UUID playerUUID, long sequence) {
+        Entry entry = openEntries.get(playerUUID);
+        return entry != null && entry.sequence == sequence;
+    }
+
+    private void append(String body, boolean force) {
+        if (channel == null) {
+            return;
+        }
+        byte[] bytes = (body + " " + checksum(body) + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            journalRecords++;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not write to " + FILE_NAME
+                + ", this change will not be replayed if the server stops", e);
+        }
+    }
+
+    /**
+     * Atomically rewrites the journal with only the open changes and reopens it for appending
+     */
+    private void compact() throws IOException {
+        closeChannel();
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<UUID, Entry> open : openEntries.entrySet()) {
+            String body = "+ " + open.getValue().sequence + " " + open.getKey() + " " + open.getValue().level.name();
+            content.append(body).append(' ').append(checksum(body)).append('\n');
+        }
+        // Each record carries its own checksum, so no footer: appends must stay valid lines
+        DurableFile.write(outboxFile, content.toString(), false);
+        journalRecords = openEntries.size();
+        channel = FileChannel.open(outboxFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Replays changes left open by the previous run, at most advanced.outbox-replay-concurrency
+     * at a time. Each goes through PermissionManager, so it journals itself again and a change
+     * made by staff in the meantime wins over the stale one.
+     */
+    public void startReplay() {
+        List<Map.Entry<UUID, Entry>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(openEntries.entrySet());
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        plugin.getLogger().info("Replaying " + pending.size() + " interrupted permission changes");
+        replayRemaining.set(pending.size());
+        Iterator<Map.Entry<UUID, Entry>> iterator = pending.iterator();
+        int lanes = Math.max(1, plugin.getConfigManager().getOutboxReplayConcurrency());
+        for (int i = 0; i < lanes; i++) {
+            replayNext(iterator);
+        }
+    }
+
+    private void replayNext(Iterator<Map.Entry<UUID, Entry>> iterator) {
+        while (true) {
+            Map.Entry<UUID, Entry> next;
+            synchronized (iterator) {
+                if (!iterator.hasNext()) {
+                    return;
+                }
+                next = iterator.next();
+            }
+
+            UUID playerUUID = next.getKey();
+            Entry entry = next.getValue();
+            if (!isOpen(playerUUID, entry.sequence)) {
+                // Superseded or applied since startup
+                finishReplay();
+                continue;
+            }
+
+            plugin.getPermissionManager().setPlayerPermissionLevel(playerUUID, entry.level, null).whenComplete((success, error) -> {
+                if (Boolean.TRUE.equals(success)) {
+                    replayed.increment();
+                } else if (isOpen(playerUUID, entry.sequence)) {
+                    // Never reached the backend (e.g. unknown player); drop it rather than retry forever
+                    replayDropped.increment();
+                    acknowledge(playerUUID, entry.sequence);
+                    plugin.getLogger().warning("Dropped interrupted permission change for " + playerUUID + " -> " + entry.level);
+                }
+                finishReplay();
+                replayNext(iterator);
+            });
+            return;
+        }
+    }
+
+    private void finishReplay() {
+        if (replayRemaining.decrementAndGet() == 0) {
+            plugin.getLogger().info("Finished replaying interrupted permission changes: " + replayed.sum()
+                + " applied, " + replayDropped.sum() + " dropped");
+        }
+    }
+
+    public synchronized void close() {
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close " + FILE_NAME, e);
+        }
+        channel = null;
+    }
+
+    // Metrics
+    public synchronized int getOpenCount() {
+        return openEntries.size();
+    }
+
+    public int getReplayRemaining() {
+        return replayRemaining.get();
+    }
+
+    public long getReplayed() {
+        return replayed.sum();
+    }
+
+    public long getReplayDropped() {
+        return replayDropped.sum();
+    }
+}
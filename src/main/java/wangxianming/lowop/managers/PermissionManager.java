@@ -3,69 +3,436 @@ package wangxianming.lowop.managers;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.CircuitBreaker;
+import wangxianming.lowop.utils.ConfigSnapshot;
+import wangxianming.lowop.utils.LevelContext;
+import wangxianming.lowop.utils.LevelLadder;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class PermissionManager {
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000L;
+    // parent clear, parent add and sync
+    public static final int COMMANDS_PER_CHANGE = 3;
+    // Pacing sleeps in executePermissionCommands plus the settle delay after each command
+    private static final long CHANGE_PACING_MILLIS = 700L + COMMANDS_PER_CHANGE * 50L;
     
-    public enum PermissionLevel {
-        PLAYER,
-        LOWOP,
-        OP
+    /**
+     * A tier of the level ladder. PLAYER, LOWOP and OP are built in with ordinals 0-2; the
+     * other tiers are defined by the ladder in config.yml (see LevelLadder). Instances are
+     * shared through the installed ladder, so levels compare with ==.
+     */
+    public static final class PermissionLevel {
+        public static final PermissionLevel PLAYER = new PermissionLevel("PLAYER", 0);
+        public static final PermissionLevel LOWOP = new PermissionLevel("LOWOP", 1);
+        public static final PermissionLevel OP = new PermissionLevel("OP", 2);
+
+        private final String name;
+        private final int ordinal;
+
+        private PermissionLevel(String name, int ordinal) {
+            this.name = name;
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * Creates a configured tier; only LevelLadder calls this
+         */
+        public static PermissionLevel define(String name, int ordinal) {
+            return new PermissionLevel(canonicalName(name), ordinal);
+        }
+
+        /**
+         * "senior-mod", "Senior_Mod" and "SENIOR_MOD" all name the same tier
+         */
+        public static String canonicalName(String name) {
+            return name.toUpperCase(Locale.ROOT).replace('-', '_');
+        }
+
+        // Levels of the installed ladder, ordered by ordinal
+        public static PermissionLevel[] values() {
+            LevelLadder ladder = LevelLadder.current();
+            PermissionLevel[] levels = new PermissionLevel[ladder.size()];
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = ladder.get(i);
+            }
+            return levels;
+        }
+
+        public static PermissionLevel valueOf(String name) {
+            PermissionLevel level = LevelLadder.current().find(name);
+            if (level == null) {
+                throw new IllegalArgumentException("No permission level " + name);
+            }
+            return level;
+        }
+
+        public static PermissionLevel fromOrdinal(int ordinal) {
+            PermissionLevel level = LevelLadder.current().get(ordinal);
+            if (level == null) {
+                throw new IllegalArgumentException("No permission level with ordinal " + ordinal);
+            }
+            return level;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int ordinal() {
+            return ordinal;
+        }
+
+        /**
+         * Lower-case form used in commands, config and message keys, e.g. "senior-mod"
+         */
+        public String getKey() {
+            return name.toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class CachedDetection {
+        private final PermissionLevel level;
+        private final long detectedAt;
+
+        private CachedDetection(PermissionLevel level, long detectedAt) {
+            this.level = level;
+            this.detectedAt = detectedAt;
+        }
+    }
+
+    /**
+     * Per-player mailbox: at most one operation running and one waiting, guarded by itself
+     */
+    private static final class OperationQueue {
+        private boolean running;
+        private boolean closed;
+        private PendingOperation pending;
+        private Object lastApplied;
+    }
+
+    private static final class PendingOperation {
+        private final Object target;
+        private final Supplier<Boolean> action;
+        // When the change was requested; peer changes carry the time they were made
+        private final long requestedAt;
+        private final List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+
+        private PendingOperation(Object target, Supplier<Boolean> action, long requestedAt, CompletableFuture<Boolean> waiter) {
+            this.target = target;
+            this.action = action;
+            this.requestedAt = requestedAt;
+            this.waiters.add(waiter);
+        }
+
+        private void complete(boolean result) {
+            for (CompletableFuture<Boolean> waiter : waiters) {
+                waiter.complete(result);
+            }
+        }
     }
 
     private final LowOP plugin;
+    private final Map<UUID, CachedDetection> detectionCache;
+    private final LongAdder detectionCacheHits = new LongAdder();
+    private final LongAdder detectionCacheMisses = new LongAdder();
+    // Keyed by player UUID for the server context, by (UUID, context) for world contexts
+    private final Map<Object, OperationQueue> operationQueues = new ConcurrentHashMap<>();
+    private final LongAdder operationsMerged = new LongAdder();
+    private final LongAdder operationsSuperseded = new LongAdder();
+    private final LongAdder operationsSkipped = new LongAdder();
+    private final CircuitBreaker backendBreaker;
+    private final LongAdder backendRetries = new LongAdder();
+    // Players whose stored level is ahead of LuckPerms until the backend recovers
+    private final Set<UUID> parkedChanges = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
 
     public PermissionManager(LowOP plugin) {
         this.plugin = plugin;
+        this.detectionCache = new ConcurrentHashMap<>();
+        this.backendBreaker = new CircuitBreaker(plugin.getConfigManager().getBreakerFailureThreshold(),
+            plugin.getConfigManager().getBreakerOpenMillis());
+        plugin.getConfigManager().subscribe((previous, current) -> reload());
+    }
+
+    /**
+     * Re-reads breaker settings from config; an open breaker keeps its current state
+     */
+    public void reload() {
+        backendBreaker.configure(plugin.getConfigManager().getBreakerFailureThreshold(),
+            plugin.getConfigManager().getBreakerOpenMillis());
     }
 
     // New methods for three-level permission system
     public CompletableFuture<Boolean> setPlayerPermissionLevel(UUID playerUUID, PermissionLevel level, CommandSender executor) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        
         String playerName = getPlayerName(playerUUID);
         if (playerName == null) {
-            future.complete(false);
-            return future;
+            return CompletableFuture.completedFuture(false);
         }
 
-        // Run permission changes asynchronously to avoid blocking the main thread
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                boolean success = executePermissionCommands(playerName, level, executor);
+        return submitOperation(playerUUID, level, () -> {
+            OutboxManager outbox = plugin.getOutboxManager();
+            long outboxSequence = outbox.record(playerUUID, level);
+            boolean success = executePermissionCommands(playerName, level, plugin.getStateManager().getContext(), executor);
+            String executorName = executor instanceof Player ? ((Player) executor).getName() : "CONSOLE";
+            if (success) {
+                // State is saved to disk, so update it before switching threads
+                plugin.getStateManager().setPlayerPermissionLevel(playerUUID, level, executorName);
+                plugin.getSyncManager().publish(playerUUID, level, plugin.getStateManager().getContext());
+            }
+            boolean parked = !success && parkChange(playerUUID, level, executorName);
+            if (!parked) {
+                // Parked changes stay open so a restart still replays them
+                outbox.acknowledge(playerUUID, outboxSequence);
+            }
+            
+            // Switch back to main thread for follow-up
+            plugin.getTaskManager().runSync(() -> {
+                invalidateDetection(playerUUID);
                 
-                // Switch back to main thread for completion
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    future.complete(success);
+                if (success) {
+                    // Send message to player if online
+                    sendPlayerLevelMessage(playerUUID, level);
                     
-                    if (success) {
-                        // Update state in main thread
-                        plugin.getStateManager().setPlayerPermissionLevel(playerUUID, level, 
-                            executor instanceof Player ? ((Player) executor).getName() : "CONSOLE");
-                        
-                        // Send message to player if online
-                        sendPlayerLevelMessage(playerUUID, level);
-                        
-                        // Log successful operation
-                        plugin.getLogger().info("Successfully set " + playerName + " to " + level + " permissions");
-                    } else {
-                        plugin.getLogger().warning("Failed to set " + playerName + " to " + level + " permissions");
+                    // Log successful operation
+                    plugin.getLogger().info("Successfully set " + playerName + " to " + level + " permissions");
+                } else if (parked) {
+                    plugin.getLogger().warning("LuckPerms unavailable; parked " + playerName + " -> " + level
+                        + " until the backend recovers");
+                } else {
+                    plugin.getLogger().warning("Failed to set " + playerName + " to " + level + " permissions");
+                }
+            });
+            return success;
+        });
+    }
+
+    /**
+     * Sets a player's level in one of the configured worlds: the parent is written in that
+     * world's context and the level kept in the world's slice. World changes are not recorded
+     * in the outbox or parked while the backend is down; a failure is reported and stored
+     * state is left as it was. Completes with false for a world without a slice.
+     */
+    public CompletableFuture<Boolean> setPlayerPermissionLevel(UUID playerUUID, PermissionLevel level, CommandSender executor, String world) {
+        StateManager slice = plugin.getContextManager().getSlice(world);
+        String playerName = getPlayerName(playerUUID);
+        if (slice == null || playerName == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        LevelContext context = slice.getContext();
+        // World changes queue apart from the player's server-level changes so neither supersedes the other
+        return submitOperation(Arrays.asList(playerUUID, context), level, () -> {
+            boolean success = executePermissionCommands(playerName, level, context, executor);
+            if (success) {
+                String executorName = executor instanceof Player ? ((Player) executor).getName() : "CONSOLE";
+                slice.setPlayerPermissionLevel(playerUUID, level, executorName);
+                plugin.getSyncManager().publish(playerUUID, level, context);
+            }
+            plugin.getTaskManager().runSync(() -> {
+                invalidateDetection(playerUUID);
+                if (success) {
+                    plugin.getLogger().info("Successfully set " + playerName + " to " + level + " permissions in " + context);
+                } else {
+                    plugin.getLogger().warning("Failed to set " + playerName + " to " + level + " permissions in " + context);
+                }
+            });
+            return success;
+        });
+    }
+
+    /**
+     * Applies a level change made on a peer server to the slice that holds its context. It
+     * goes through the player's operation queue, so it lands after any local change already
+     * running, and it is dropped (completing with false) when the slice's entry changed after
+     * the peer made the change. Only stored state is updated; the peer wrote LuckPerms itself.
+     */
+    public CompletableFuture<Boolean> applyPeerChange(UUID playerUUID, PermissionLevel level, StateManager slice, long changedAt) {
+        Object playerKey = slice == plugin.getStateManager() ? playerUUID : Arrays.asList(playerUUID, slice.getContext());
+        // Never equal to a local target, so local requests neither join nor get skipped after it
+        Object target = Arrays.asList("peer", level);
+        return submitOperation(playerKey, target, changedAt, () -> {
+            if (slice.getLastChanged(playerUUID) > changedAt) {
+                return false;
+            }
+            if (slice.getPlayerPermissionLevel(playerUUID) != level) {
+                slice.setPlayerPermissionLevel(playerUUID, level, "sync", changedAt);
+            }
+            plugin.getTaskManager().runSync(() -> invalidateDetection(playerUUID));
+            return true;
+        });
+    }
+
+    private CompletableFuture<Boolean> submitOperation(Object playerKey, Object target, Supplier<Boolean> action) {
+        return submitOperation(playerKey, target, System.currentTimeMillis(), action);
+    }
+
+    /**
+     * Queues a backend operation for a player. Operations for the same UUID run one at a
+     * time on a worker; while one runs, only the latest request is kept. A request for the
+     * same target as the queued one joins it, a different target supersedes it (its callers
+     * get false) unless it was requested earlier than the queued one, in which case it is
+     * the one dropped, and a queued target equal to the one just applied completes without
+     * touching the backend again. Futures complete on the main thread.
+     */
+    private CompletableFuture<Boolean> submitOperation(Object playerKey, Object target, long requestedAt, Supplier<Boolean> action) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        while (true) {
+            OperationQueue queue = operationQueues.computeIfAbsent(playerKey, key -> new OperationQueue());
+            boolean start = false;
+            List<CompletableFuture<Boolean>> superseded = null;
+            synchronized (queue) {
+                if (queue.closed) {
+                    // Raced with the queue being retired; fetch a fresh one
+                    continue;
+                }
+                PendingOperation pending = queue.pending;
+                if (pending != null && pending.target.equals(target)) {
+                    pending.waiters.add(future);
+                    operationsMerged.increment();
+                } else if (pending != null && requestedAt < pending.requestedAt) {
+                    // A late peer change older than the queued request
+                    plugin.getTaskManager().runSync(() -> future.complete(false));
+                    operationsSuperseded.increment();
+                } else {
+                    if (pending != null) {
+                        superseded = pending.waiters;
+                        operationsSuperseded.increment();
                     }
-                });
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, "Error executing permission commands for " + playerName, e);
-                Bukkit.getScheduler().runTask(plugin, () -> future.complete(false));
+                    queue.pending = new PendingOperation(target, action, requestedAt, future);
+                }
+                if (!queue.running) {
+                    queue.running = true;
+                    start = true;
+                }
+            }
+
+            if (superseded != null) {
+                List<CompletableFuture<Boolean>> waiters = superseded;
+                plugin.getLogger().info("Superseded queued permission change for " + playerKey + " with " + target);
+                plugin.getTaskManager().runSync(() -> waiters.forEach(waiter -> waiter.complete(false)));
+            }
+            if (start) {
+                runNextOperation(playerKey, queue);
+            }
+            return future;
+        }
+    }
+
+    private void runNextOperation(Object playerKey, OperationQueue queue) {
+        PendingOperation operation;
+        synchronized (queue) {
+            operation = queue.pending;
+            queue.pending = null;
+            if (operation == null) {
+                queue.running = false;
+                queue.closed = true;
+                operationQueues.remove(playerKey, queue);
+                return;
+            }
+            if (operation.target.equals(queue.lastApplied)) {
+                operationsSkipped.increment();
             }
+        }
+
+        TaskManager tasks = plugin.getTaskManager();
+        if (operation.target.equals(queue.lastApplied)) {
+            tasks.runSync(() -> operation.complete(true));
+            runNextOperation(playerKey, queue);
+            return;
+        }
+
+        tasks.supplyAsync(operation.action).whenComplete((success, error) -> {
+            boolean result = error == null && Boolean.TRUE.equals(success);
+            if (error != null) {
+                plugin.getLogger().log(Level.SEVERE, "Error executing permission commands for " + playerKey, error);
+            }
+            synchronized (queue) {
+                queue.lastApplied = result ? operation.target : null;
+            }
+            tasks.runSync(() -> operation.complete(result));
+            runNextOperation(playerKey, queue);
         });
+    }
 
-        return future;
+    /**
+     * Called on a worker after a failed change. While the breaker is not closed the failure
+     * is the backend's, so the level is written ahead to StateManager and replayed once
+     * LuckPerms answers again. Returns whether the change was parked.
+     */
+    private boolean parkChange(UUID playerUUID, PermissionLevel level, String executorName) {
+        if (backendBreaker.getState() == CircuitBreaker.State.CLOSED) {
+            return false;
+        }
+        plugin.getStateManager().setPlayerPermissionLevel(playerUUID, level, executorName);
+        parkedChanges.add(playerUUID);
+        scheduleReplay(backendBreaker.getRemainingOpenMillis());
+        return true;
+    }
+
+    private void scheduleReplay(long delayMillis) {
+        if (!replayScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long ticks = Math.max(1L, delayMillis / 50L);
+        plugin.getServer().getScheduler().runTaskLater(plugin,
+            () -> plugin.getTaskManager().runAsync(this::replayParkedChanges), ticks);
     }
 
-    private boolean executePermissionCommands(String playerName, PermissionLevel level, CommandSender executor) {
+    /**
+     * Re-submits parked players at their stored level. While the breaker is half open only
+     * one of them goes through as the probe; the rest fail fast and park again, and the
+     * probe's success schedules the next replay.
+     */
+    private void replayParkedChanges() {
+        replayScheduled.set(false);
+        if (parkedChanges.isEmpty()) {
+            return;
+        }
+        if (backendBreaker.getState() == CircuitBreaker.State.OPEN) {
+            scheduleReplay(backendBreaker.getRemainingOpenMillis());
+            return;
+        }
+
+        List<UUID> players = new ArrayList<>(parkedChanges);
+        plugin.getLogger().info("Replaying " + players.size() + " parked permission changes");
+        for (UUID playerUUID : players) {
+            parkedChanges.remove(playerUUID);
+            PermissionLevel level = plugin.getStateManager().getPlayerPermissionLevel(playerUUID);
+            setPlayerPermissionLevel(playerUUID, level, null);
+        }
+    }
+
+    private boolean executePermissionCommands(String playerName, PermissionLevel level, LevelContext context, CommandSender executor) {
         try {
             // Validate that LuckPerms is available
             if (!isLuckPermsAvailable()) {
@@ -82,8 +449,8 @@ public class PermissionManager {
             // Add a small delay between commands to ensure proper execution
             Thread.sleep(100);
             
-            // Clear existing permissions first
-            String clearCommand = "lp user " + playerName + " parent clear";
+            // Clear existing permissions first; only parents in this context, other servers' and worlds' stay
+            String clearCommand = "lp user " + playerName + " parent clear" + context.toCommandArgs();
             if (!dispatchCommand(clearCommand, executor)) {
                 plugin.getLogger().warning("Failed to clear permissions for " + playerName);
                 // Continue anyway, as the clear command might fail if player has no permissions
@@ -94,10 +461,11 @@ public class PermissionManager {
             // Add a small delay between commands to ensure proper execution
             Thread.sleep(100);
             
-            // Add the appropriate group based on level
+            // Add the appropriate group based on level. Player in a world means no world
+            // parent at all, so the server-level one applies there again
             String groupToAdd = getGroupForLevel(level);
-            String addCommand = "lp user " + playerName + " parent add " + groupToAdd;
-            if (!dispatchCommand(addCommand, executor)) {
+            String addCommand = "lp user " + playerName + " parent add " + groupToAdd + context.toCommandArgs();
+            if ((context.getWorld() == null || level != PermissionLevel.PLAYER) && !dispatchCommand(addCommand, executor)) {
                 plugin.getLogger().warning("Failed to add group " + groupToAdd + " for " + playerName);
                 return false;
             }
@@ -128,72 +496,233 @@ public class PermissionManager {
     }
 
     private String getGroupForLevel(PermissionLevel level) {
-        switch (level) {
-            case OP:
-                return plugin.getConfigManager().getOPGroup();
-            case LOWOP:
-                return plugin.getConfigManager().getLowOPGroup();
-            case PLAYER:
-            default:
-                return plugin.getConfigManager().getPlayerGroup();
-        }
+        return plugin.getConfigManager().getLevelLadder().getGroup(level);
     }
 
     // Detect player's permission level from LuckPerms
     public CompletableFuture<PermissionLevel> detectPlayerPermissionLevel(String playerName) {
-        CompletableFuture<PermissionLevel> future = new CompletableFuture<>();
-        
         if (!isLuckPermsAvailable()) {
-            future.complete(PermissionLevel.PLAYER);
-            return future;
+            return CompletableFuture.completedFuture(PermissionLevel.PLAYER);
         }
 
-        // Run detection asynchronously
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                PermissionLevel level = executePermissionDetection(playerName);
-                
-                // Switch back to main thread for completion
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    future.complete(level);
-                });
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.WARNING, "Error detecting permission level for " + playerName, e);
-                Bukkit.getScheduler().runTask(plugin, () -> future.complete(PermissionLevel.PLAYER));
+        // Permission checks on online players are in-memory; answer on the main thread
+        return plugin.getTaskManager().supplySync(() -> executePermissionDetection(playerName));
+    }
+
+    /**
+     * Detects levels for many players in a single main-thread pass, answering from the
+     * detection cache where possible. Offline players fall back to the stored state.
+     */
+    public Map<UUID, PermissionLevel> detectPermissionLevels(Collection<UUID> playerUUIDs) {
+        Map<UUID, PermissionLevel> result = new LinkedHashMap<>();
+        boolean luckPermsAvailable = isLuckPermsAvailable();
+        
+        for (UUID playerUUID : playerUUIDs) {
+            Player player = Bukkit.getPlayer(playerUUID);
+            if (luckPermsAvailable && player != null && player.isOnline()) {
+                result.put(playerUUID, detectPermissionLevel(player));
+            } else if (luckPermsAvailable) {
+                result.put(playerUUID, plugin.getStateManager().getPlayerPermissionLevel(playerUUID));
+            } else {
+                result.put(playerUUID, PermissionLevel.PLAYER);
             }
-        });
+        }
+        return result;
+    }
 
+    /**
+     * Result of a bulk detection: per-level totals and players whose detected level differs from StateManager
+     */
+    public static class DetectionReport {
+        private final Map<UUID, PermissionLevel> detectedLevels = new LinkedHashMap<>();
+        private final Map<PermissionLevel, Integer> levelTotals = new HashMap<>();
+        private final List<Mismatch> mismatches = new ArrayList<>();
+
+        private void record(UUID playerUUID, PermissionLevel detected, PermissionLevel stored) {
+            detectedLevels.put(playerUUID, detected);
+            levelTotals.merge(detected, 1, Integer::sum);
+            if (detected != stored) {
+                mismatches.add(new Mismatch(playerUUID, detected, stored));
+            }
+        }
+
+        public Map<UUID, PermissionLevel> getDetectedLevels() {
+            return Collections.unmodifiableMap(detectedLevels);
+        }
+
+        public int getTotal(PermissionLevel level) {
+            return levelTotals.getOrDefault(level, 0);
+        }
+
+        public Map<PermissionLevel, Integer> getLevelTotals() {
+            return Collections.unmodifiableMap(levelTotals);
+        }
+
+        public List<Mismatch> getMismatches() {
+            return Collections.unmodifiableList(mismatches);
+        }
+
+        public int getPlayerCount() {
+            return detectedLevels.size();
+        }
+    }
+
+    public static class Mismatch {
+        private final UUID playerUUID;
+        private final PermissionLevel detected;
+        private final PermissionLevel stored;
+
+        private Mismatch(UUID playerUUID, PermissionLevel detected, PermissionLevel stored) {
+            this.playerUUID = playerUUID;
+            this.detected = detected;
+            this.stored = stored;
+        }
+
+        public UUID getPlayerUUID() {
+            return playerUUID;
+        }
+
+        public PermissionLevel getDetected() {
+            return detected;
+        }
+
+        public PermissionLevel getStored() {
+            return stored;
+        }
+    }
+
+    /**
+     * Detects many players in chunks of settings.detect-chunk-size per tick using one
+     * repeating task, so large selectors never stall a single tick or flood the scheduler.
+     */
+    public CompletableFuture<DetectionReport> detectPermissionLevelsBulk(Collection<UUID> playerUUIDs) {
+        CompletableFuture<DetectionReport> future = new CompletableFuture<>();
+        DetectionReport report = new DetectionReport();
+        Iterator<UUID> remaining = new ArrayList<>(playerUUIDs).iterator();
+        int chunkSize = Math.max(1, plugin.getConfigManager().getDetectChunkSize());
+
+        BukkitRunnable chunkTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    List<UUID> chunk = new ArrayList<>(chunkSize);
+                    while (remaining.hasNext() && chunk.size() < chunkSize) {
+                        chunk.add(remaining.next());
+                    }
+                    
+                    StateManager stateManager = plugin.getStateManager();
+                    for (Map.Entry<UUID, PermissionLevel> entry : detectPermissionLevels(chunk).entrySet()) {
+                        report.record(entry.getKey(), entry.getValue(), stateManager.getPlayerPermissionLevel(entry.getKey()));
+                    }
+                    
+                    if (!remaining.hasNext()) {
+                        cancel();
+                        future.complete(report);
+                    }
+                } catch (Exception e) {
+                    cancel();
+                    plugin.getLogger().log(Level.WARNING, "Bulk permission detection failed", e);
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+
+        if (playerUUIDs.isEmpty()) {
+            future.complete(report);
+        } else {
+            chunkTask.runTaskTimer(plugin, 0L, 1L);
+        }
         return future;
     }
 
+    /**
+     * Cached detection for an online player; call from the main thread
+     */
+    public PermissionLevel detectPermissionLevel(Player player) {
+        long now = System.currentTimeMillis();
+        CachedDetection cached = detectionCache.get(player.getUniqueId());
+        if (cached != null && now - cached.detectedAt < getDetectionCacheTtlMillis()) {
+            detectionCacheHits.increment();
+            return cached.level;
+        }
+        
+        detectionCacheMisses.increment();
+        PermissionLevel level = probePermissionLevel(player);
+        detectionCache.put(player.getUniqueId(), new CachedDetection(level, now));
+        return level;
+    }
+
+    /**
+     * Drops the cached detection result, e.g. after a LuckPerms recalculation or our own write
+     */
+    public void invalidateDetection(UUID playerUUID) {
+        detectionCache.remove(playerUUID);
+    }
+
+    public int getDetectionCacheSize() {
+        return detectionCache.size();
+    }
+
+    public long getDetectionCacheHits() {
+        return detectionCacheHits.sum();
+    }
+
+    public long getDetectionCacheMisses() {
+        return detectionCacheMisses.sum();
+    }
+
+    /**
+     * Whether a change for the player is queued, running or parked until the backend recovers
+     */
+    public boolean hasPendingOperation(UUID playerUUID) {
+        return operationQueues.containsKey(playerUUID) || parkedChanges.contains(playerUUID);
+    }
+
+    public int getQueuedOperationPlayers() {
+        return operationQueues.size();
+    }
+
+    public long getOperationsMerged() {
+        return operationsMerged.sum();
+    }
+
+    public long getOperationsSuperseded() {
+        return operationsSuperseded.sum();
+    }
+
+    public long getOperationsSkipped() {
+        return operationsSkipped.sum();
+    }
+
+    public CircuitBreaker.State getBackendBreakerState() {
+        return backendBreaker.getState();
+    }
+
+    public long getBackendBreakerTrips() {
+        return backendBreaker.getTrips();
+    }
+
+    public long getBackendBreakerRejections() {
+        return backendBreaker.getRejections();
+    }
+
+    public long getBackendRetries() {
+        return backendRetries.sum();
+    }
+
+    public int getParkedChangeCount() {
+        return parkedChanges.size();
+    }
+
+    private long getDetectionCacheTtlMillis() {
+        return plugin.getConfigManager().getDetectionCacheTtl() * 1000L;
+    }
+
     private PermissionLevel executePermissionDetection(String playerName) {
         try {
-            // Use a simpler approach - check if player has specific permissions
-            // This method uses the Bukkit permission system which integrates with LuckPerms
-            
             Player player = Bukkit.getPlayerExact(playerName);
             if (player != null && player.isOnline()) {
-                // Check for OP permissions first
-                if (player.isOp()) {
-                    return PermissionLevel.OP;
-                }
-                
-                // Check for specific permission nodes that indicate OP status
-                if (player.hasPermission("*") || player.hasPermission("minecraft.command.op")) {
-                    return PermissionLevel.OP;
-                }
-                
-                // Check for LOWOP permissions
-                String lowopGroup = plugin.getConfigManager().getLowOPGroup();
-                if (player.hasPermission("group." + lowopGroup) || player.hasPermission("luckperms.group." + lowopGroup)) {
-                    return PermissionLevel.LOWOP;
-                }
-                
-                // Check for OP group permissions
-                String opGroup = plugin.getConfigManager().getOPGroup();
-                if (player.hasPermission("group." + opGroup) || player.hasPermission("luckperms.group." + opGroup)) {
-                    return PermissionLevel.OP;
-                }
+                return detectPermissionLevel(player);
             }
             
             // Fallback: check the state manager's stored state
@@ -210,50 +739,74 @@ public class PermissionManager {
         }
     }
 
-    public CompletableFuture<Boolean> setPlayerPermissions(UUID playerUUID, boolean enableAdmin, CommandSender executor) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
+    private PermissionLevel probePermissionLevel(Player player) {
+        // Uses the Bukkit permission system which integrates with LuckPerms
+        
+        // Check for OP permissions first
+        if (player.isOp()) {
+            return PermissionLevel.OP;
+        }
+        
+        // Check for specific permission nodes that indicate OP status
+        if (player.hasPermission("*") || player.hasPermission("minecraft.command.op")) {
+            return PermissionLevel.OP;
+        }
+        
+        // Highest tier first, one lookup of the precomputed group node per tier; the player
+        // tier's group is everyone's fallback and says nothing
+        LevelLadder ladder = plugin.getConfigManager().getLevelLadder();
+        List<PermissionLevel> levels = ladder.getLevels();
+        for (int i = levels.size() - 1; i > 0; i--) {
+            if (player.hasPermission(ladder.getGroupNode(levels.get(i)))) {
+                return levels.get(i);
+            }
+        }
         
+        return plugin.getStateManager().getPlayerPermissionLevel(player.getUniqueId());
+    }
+
+    public CompletableFuture<Boolean> setPlayerPermissions(UUID playerUUID, boolean enableAdmin, CommandSender executor) {
         String playerName = getPlayerName(playerUUID);
         if (playerName == null) {
-            future.complete(false);
-            return future;
+            return CompletableFuture.completedFuture(false);
         }
 
         String adminGroup = plugin.getConfigManager().getOPGroup();
         String defaultGroup = plugin.getConfigManager().getPlayerGroup();
 
-        // Run permission changes asynchronously to avoid blocking the main thread
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                boolean success = executePermissionCommands(playerName, enableAdmin, adminGroup, defaultGroup, executor);
+        return submitOperation(playerUUID, enableAdmin, () -> {
+            OutboxManager outbox = plugin.getOutboxManager();
+            PermissionLevel level = enableAdmin ? PermissionLevel.OP : PermissionLevel.PLAYER;
+            long outboxSequence = outbox.record(playerUUID, level);
+            boolean success = executePermissionCommands(playerName, enableAdmin, adminGroup, defaultGroup, executor);
+            String executorName = executor instanceof Player ? ((Player) executor).getName() : "CONSOLE";
+            if (success) {
+                // State is saved to disk, so update it before switching threads
+                plugin.getStateManager().setPlayerAdminState(playerUUID, enableAdmin, executorName);
+                plugin.getSyncManager().publish(playerUUID, level, plugin.getStateManager().getContext());
+            }
+            if (success || !parkChange(playerUUID, level, executorName)) {
+                outbox.acknowledge(playerUUID, outboxSequence);
+            }
+            
+            // Switch back to main thread for follow-up
+            plugin.getTaskManager().runSync(() -> {
+                invalidateDetection(playerUUID);
                 
-                // Switch back to main thread for completion
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    future.complete(success);
+                if (success) {
+                    // Send message to player if online
+                    sendPlayerMessage(playerUUID, enableAdmin);
                     
-                    if (success) {
-                        // Update state in main thread
-                        plugin.getStateManager().setPlayerAdminState(playerUUID, enableAdmin, 
-                            executor instanceof Player ? ((Player) executor).getName() : "CONSOLE");
-                        
-                        // Send message to player if online
-                        sendPlayerMessage(playerUUID, enableAdmin);
-                        
-                        // Log successful operation
-                        plugin.getLogger().info("Successfully " + (enableAdmin ? "enabled" : "disabled") + 
-                            " admin permissions for " + playerName);
-                    } else {
-                        plugin.getLogger().warning("Failed to " + (enableAdmin ? "enable" : "disable") + 
-                            " admin permissions for " + playerName);
-                    }
-                });
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, "Error executing permission commands for " + playerName, e);
-                Bukkit.getScheduler().runTask(plugin, () -> future.complete(false));
-            }
+                    // Log successful operation
+                    plugin.getLogger().info("Successfully " + (enableAdmin ? "enabled" : "disabled") + 
+                        " admin permissions for " + playerName);
+                } else {
+                    plugin.getLogger().warning("Failed to " + (enableAdmin ? "enable" : "disable") + 
+                        " admin permissions for " + playerName);
+                }
+            });
+            return success;
         });
-
-        return future;
     }
 
     private boolean executePermissionCommands(String playerName, boolean enableAdmin, 
@@ -263,7 +816,8 @@ public class PermissionManager {
             Thread.sleep(100);
             
             // Clear existing permissions first
-            String clearCommand = "lp user " + playerName + " parent clear";
+            String contextArgs = plugin.getStateManager().getContext().toCommandArgs();
+            String clearCommand = "lp user " + playerName + " parent clear" + contextArgs;
             if (!dispatchCommand(clearCommand, executor)) {
                 plugin.getLogger().warning("Failed to clear permissions for " + playerName);
                 return false;
@@ -274,7 +828,7 @@ public class PermissionManager {
             
             // Add the appropriate group
             String groupToAdd = enableAdmin ? adminGroup : defaultGroup;
-            String addCommand = "lp user " + playerName + " parent add " + groupToAdd;
+            String addCommand = "lp user " + playerName + " parent add " + groupToAdd + contextArgs;
             if (!dispatchCommand(addCommand, executor)) {
                 plugin.getLogger().warning("Failed to add group " + groupToAdd + " for " + playerName);
                 return false;
@@ -301,11 +855,49 @@ public class PermissionManager {
     }
 
     private boolean dispatchCommand(String command, CommandSender executor) {
+        if (!plugin.getRateLimitManager().acquireBackendWrite()) {
+            plugin.getLogger().warning("Skipped command due to backend rate limit: " + command);
+            return false;
+        }
+        ConfigSnapshot settings = plugin.getConfigManager().getSnapshot();
+        if (!backendBreaker.tryAcquire()) {
+            if (settings.isDebugEnabled()) {
+                plugin.getLogger().info("Backend circuit open, skipped command: " + command);
+            }
+            return false;
+        }
+
+        int maxRetries = settings.getMaxRetries();
+        long retryDelay = settings.getRetryDelay();
+        for (int attempt = 0; ; attempt++) {
+            if (executeCommand(command, settings.isDebugEnabled())) {
+                if (backendBreaker.recordSuccess()) {
+                    plugin.getLogger().info("LuckPerms commands are succeeding again; backend circuit closed");
+                    scheduleReplay(0L);
+                }
+                return true;
+            }
+            if (attempt >= maxRetries || !sleepBeforeRetry(attempt, retryDelay)) {
+                break;
+            }
+            backendRetries.increment();
+        }
+
+        if (backendBreaker.recordFailure()) {
+            plugin.getLogger().warning("LuckPerms commands keep failing; failing fast for "
+                + settings.getBreakerOpenMillis() / 1000 + "s");
+        }
+        return false;
+    }
+
+    private boolean executeCommand(String command, boolean debug) {
         try {
-            // Use the server to dispatch the command
-            boolean success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            // Commands must be dispatched on the main thread; workers wait for the result
+            boolean success = plugin.getTaskManager()
+                .supplySync(() -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command))
+                .join();
             
-            if (plugin.getConfigManager().isDebugEnabled()) {
+            if (debug) {
                 plugin.getLogger().info("Executed command: " + command + " - Success: " + success);
             }
             
@@ -323,6 +915,22 @@ public class PermissionManager {
         }
     }
 
+    /**
+     * Equal-jitter exponential backoff: half of retry-delay * 2^attempt plus a random share
+     * of the other half, so players failing together don't retry in lockstep
+     */
+    private boolean sleepBeforeRetry(int attempt, long retryDelay) {
+        long ceiling = Math.min(retryDelay << Math.min(attempt, 16), MAX_RETRY_DELAY_MILLIS);
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     private String getPlayerName(UUID playerUUID) {
         Player player = Bukkit.getPlayer(playerUUID);
         if (player != null) {
@@ -391,34 +999,16 @@ public class PermissionManager {
     private void sendPlayerLevelMessage(UUID playerUUID, PermissionLevel level) {
         Player player = Bukkit.getPlayer(playerUUID);
         if (player != null && player.isOnline()) {
-            String messageKey;
-            switch (level) {
-                case OP:
-                    messageKey = "op-status";
-                    break;
-                case LOWOP:
-                    messageKey = "lowop-status";
-                    break;
-                case PLAYER:
-                default:
-                    messageKey = "player-status";
-                    break;
-            }
-            String message = plugin.getConfigManager().getMessage(messageKey, getDefaultLevelMessage(level));
-            player.sendMessage(message);
+            player.sendMessage(getLevelDisplay(level));
         }
     }
 
-    private String getDefaultLevelMessage(PermissionLevel level) {
-        switch (level) {
-            case OP:
-                return "§6你的权限等级已设置为OP";
-            case LOWOP:
-                return "§e你的权限等级已设置为LOWOP";
-            case PLAYER:
-            default:
-                return "§a你的权限等级已设置为PLAYER";
-        }
+    /**
+     * Display name of a level: the "<level>-status" message, else the ladder's display name
+     */
+    public String getLevelDisplay(PermissionLevel level) {
+        String display = plugin.getConfigManager().getLevelLadder().getDisplay(level);
+        return plugin.getConfigManager().getMessage(level.getKey() + "-status", display != null ? display : "&7" + level.getKey());
     }
 
     // Utility methods for checking LuckPerms availability
@@ -580,6 +1170,183 @@ public class PermissionManager {
         return setMultiplePlayersPermissionLevels(playerUUIDs, level, executor);
     }
 
+    public static class LevelChange {
+        private final UUID playerUUID;
+        private final PermissionLevel from;
+        private final PermissionLevel to;
+
+        public LevelChange(UUID playerUUID, PermissionLevel from, PermissionLevel to) {
+            this.playerUUID = playerUUID;
+            this.from = from;
+            this.to = to;
+        }
+
+        public UUID getPlayerUUID() {
+            return playerUUID;
+        }
+
+        public PermissionLevel getFrom() {
+            return from;
+        }
+
+        public PermissionLevel getTo() {
+            return to;
+        }
+    }
+
+    public static class ChangePlan {
+        private final PermissionLevel target;
+        private final List<LevelChange> changes;
+        private final List<UUID> unchanged;
+        private final long estimatedMillis;
+
+        private ChangePlan(PermissionLevel target, List<LevelChange> changes, List<UUID> unchanged, long estimatedMillis) {
+            this.target = target;
+            this.changes = changes;
+            this.unchanged = unchanged;
+            this.estimatedMillis = estimatedMillis;
+        }
+
+        public PermissionLevel getTarget() {
+            return target;
+        }
+
+        public List<LevelChange> getChanges() {
+            return changes;
+        }
+
+        public List<UUID> getUnchanged() {
+            return unchanged;
+        }
+
+        public int getBackendCalls() {
+            return changes.size() * COMMANDS_PER_CHANGE;
+        }
+
+        public long getEstimatedMillis() {
+            return estimatedMillis;
+        }
+    }
+
+    /**
+     * Diffs the targets against stored levels. Both dry runs and real runs go through this,
+     * so players already at the target level never reach LuckPerms.
+     */
+    public ChangePlan planLevelChanges(Collection<UUID> playerUUIDs, PermissionLevel target) {
+        List<LevelChange> changes = new ArrayList<>();
+        List<UUID> unchanged = new ArrayList<>();
+        StateManager stateManager = plugin.getStateManager();
+        for (UUID playerUUID : new LinkedHashSet<>(playerUUIDs)) {
+            PermissionLevel current = stateManager.getPlayerPermissionLevel(playerUUID);
+            if (current == target) {
+                unchanged.add(playerUUID);
+            } else {
+                changes.add(new LevelChange(playerUUID, current, target));
+            }
+        }
+        return new ChangePlan(target, Collections.unmodifiableList(changes), Collections.unmodifiableList(unchanged),
+            estimateApplyMillis(changes.size()));
+    }
+
+    /**
+     * Rough wall time for applyLevelChanges: the slower of the pacing delays spread over the
+     * bulk lanes and the backend write budget. Ignores LuckPerms latency and retries.
+     */
+    public long estimateApplyMillis(int changeCount) {
+        if (changeCount <= 0) {
+            return 0L;
+        }
+        ConfigManager config = plugin.getConfigManager();
+        int lanes = Math.max(1, config.getBulkConcurrency());
+        long paced = ((changeCount + lanes - 1L) / lanes) * CHANGE_PACING_MILLIS;
+        long calls = (long) changeCount * COMMANDS_PER_CHANGE;
+        double refill = config.getBackendRateRefill();
+        long budgeted = refill > 0 ? (long) (Math.max(0L, calls - config.getBackendRateBurst()) * 1000 / refill) : 0L;
+        return Math.max(paced, budgeted);
+    }
+
+    /**
+     * Applies a stream of changes with at most advanced.bulk-concurrency in flight. The next
+     * change is pulled only when one finishes, so a lazy iterator (e.g. a file being parsed)
+     * is never read ahead of the backend. The iterator is always advanced on a worker.
+     */
+    public CompletableFuture<Void> applyLevelChanges(Iterator<LevelChange> changes, CommandSender executor,
+                                                     BiConsumer<LevelChange, Boolean> onResult) {
+        BulkApply bulk = new BulkApply(changes, executor, onResult,
+            Math.max(1, plugin.getConfigManager().getBulkConcurrency()));
+        plugin.getTaskManager().runAsync(bulk::pump);
+        return bulk.done;
+    }
+
+    private final class BulkApply {
+        private final Iterator<LevelChange> changes;
+        private final CommandSender executor;
+        private final BiConsumer<LevelChange, Boolean> onResult;
+        private final int maxInFlight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean pumping = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile boolean exhausted;
+        private volatile RuntimeException failure;
+
+        private BulkApply(Iterator<LevelChange> changes, CommandSender executor,
+                          BiConsumer<LevelChange, Boolean> onResult, int maxInFlight) {
+            this.changes = changes;
+            this.executor = executor;
+            this.onResult = onResult;
+            this.maxInFlight = maxInFlight;
+        }
+
+        private void pump() {
+            // Whoever holds the flag fills the window; re-check after releasing it so a
+            // completion that arrived meanwhile is not lost
+            while (pumping.compareAndSet(false, true)) {
+                try {
+                    fill();
+                } finally {
+                    pumping.set(false);
+                }
+                if (exhausted || inFlight.get() >= maxInFlight) {
+                    break;
+                }
+            }
+            if (exhausted && inFlight.get() == 0) {
+                if (failure != null) {
+                    done.completeExceptionally(failure);
+                } else {
+                    done.complete(null);
+                }
+            }
+        }
+
+        private void fill() {
+            while (!exhausted && inFlight.get() < maxInFlight) {
+                LevelChange change;
+                try {
+                    if (!changes.hasNext()) {
+                        exhausted = true;
+                        return;
+                    }
+                    change = changes.next();
+                } catch (RuntimeException e) {
+                    failure = e;
+                    exhausted = true;
+                    return;
+                }
+
+                inFlight.incrementAndGet();
+                setPlayerPermissionLevel(change.getPlayerUUID(), change.getTo(), executor).whenComplete((success, error) -> {
+                    try {
+                        onResult.accept(change, error == null && Boolean.TRUE.equals(success));
+                    } finally {
+                        inFlight.decrementAndGet();
+                        plugin.getTaskManager().runAsync(this::pump);
+                    }
+                });
+            }
+        }
+    }
+
     // Batch operations for permission levels
     public CompletableFuture<Integer> setMultiplePlayersPermissionLevels(java.util.List<UUID> playerUUIDs, 
                                                                         PermissionLevel level, CommandSender executor) {
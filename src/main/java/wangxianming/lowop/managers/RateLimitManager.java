@@ -0,0 +1,128 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.TokenBucket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class RateLimitManager {
+
+    private static final int SENDER_BUCKET_PRUNE_THRESHOLD = 256;
+
+    private final LowOP plugin;
+    private final Map<String, TokenBucket> senderBuckets;
+    private final TokenBucket backendBucket;
+    private final TokenBucket batchBucket;
+
+    private final LongAdder senderRejections = new LongAdder();
+    private final LongAdder backendRejections = new LongAdder();
+    private final LongAdder backendThrottled = new LongAdder();
+    private final LongAdder batchRejections = new LongAdder();
+
+    private volatile int senderBurst;
+    private volatile int batchBurst;
+    private volatile double senderRefillPerSecond;
+    private volatile long backendMaxWaitNanos;
+
+    public RateLimitManager(LowOP plugin) {
+        this.plugin = plugin;
+        this.senderBuckets = new ConcurrentHashMap<>();
+        this.backendBucket = new TokenBucket(1, 1);
+        this.batchBucket = new TokenBucket(1, 1);
+        reload();
+        plugin.getConfigManager().subscribe((previous, current) -> reload());
+    }
+
+    /**
+     * Re-reads limits from config; existing buckets keep their consumed tokens
+     */
+    public void reload() {
+        ConfigManager config = plugin.getConfigManager();
+
+        senderBurst = Math.max(1, config.getRateLimit());
+        senderRefillPerSecond = 1.0 / Math.max(0.1, config.getCommandCooldown());
+        for (TokenBucket bucket : senderBuckets.values()) {
+            bucket.configure(senderBurst, senderRefillPerSecond);
+        }
+
+        backendBucket.configure(config.getBackendRateBurst(), config.getBackendRateRefill());
+        batchBurst = Math.max(1, config.getBatchRateBurst());
+        batchBucket.configure(batchBurst, config.getBatchRateRefill());
+        backendMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getBackendRateMaxWait());
+    }
+
+    /**
+     * Per-sender command budget (burst = settings.rate-limit, one token per command-cooldown seconds)
+     */
+    public boolean tryAcquireCommand(CommandSender sender) {
+        String key = sender instanceof Player ? ((Player) sender).getUniqueId().toString() : sender.getName();
+        if (senderBuckets.size() > SENDER_BUCKET_PRUNE_THRESHOLD) {
+            senderBuckets.values().removeIf(TokenBucket::isFull);
+        }
+
+        TokenBucket bucket = senderBuckets.computeIfAbsent(key, k -> new TokenBucket(senderBurst, senderRefillPerSecond));
+        if (bucket.tryAcquire(1)) {
+            return true;
+        }
+
+        senderRejections.increment();
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Rate limit: rejected command from " + sender.getName());
+        }
+        return false;
+    }
+
+    /**
+     * Budget for the number of players a batch may touch. Batches larger than the burst
+     * need a full bucket and drain it, so they are still possible but never back to back.
+     */
+    public boolean tryAcquireBatchItems(int items) {
+        if (batchBucket.tryAcquire(Math.min(items, batchBurst))) {
+            return true;
+        }
+        batchRejections.increment();
+        return false;
+    }
+
+    /**
+     * Global budget for LuckPerms writes. Off the main thread the caller waits for its
+     * reserved slot (up to rate-limit.backend-max-wait); on the main thread it never blocks.
+     */
+    public boolean acquireBackendWrite() {
+        long maxWait = Bukkit.isPrimaryThread() ? 0L : backendMaxWaitNanos;
+        long wait = backendBucket.reserve(1, maxWait);
+        if (wait < 0) {
+            backendRejections.increment();
+            plugin.getLogger().warning("Rate limit: backend write rejected, LuckPerms write budget exhausted");
+            return false;
+        }
+        if (wait > 0) {
+            backendThrottled.increment();
+            LockSupport.parkNanos(wait);
+        }
+        return true;
+    }
+
+    public long getSenderRejections() {
+        return senderRejections.sum();
+    }
+
+    public long getBackendRejections() {
+        return backendRejections.sum();
+    }
+
+    public long getBackendThrottled() {
+        return backendThrottled.sum();
+    }
+
+    public long getBatchRejections() {
+        return batchRejections.sum();
+    }
+}
@@ -0,0 +1,370 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.scheduler.BukkitTask;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.LevelLadder;
+import wangxianming.lowop.utils.LuckPermsGroupLookup;
+import wangxianming.lowop.utils.TokenBucket;
+import wangxianming.lowop.utils.UuidLevelMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Periodically walks the stored population and compares each level with the player's
+ * LuckPerms groups, repairing drift at a bounded rate. The walk advances in short time
+ * slices on a worker, one slice per tick, so even a large store never stalls a tick.
+ */
+public class ReconcileManager {
+
+    /**
+     * Reads group membership from the permission backend, including offline players
+     */
+    public interface GroupLookup {
+        CompletableFuture<Set<String>> getGroups(UUID playerUUID);
+
+        CompletableFuture<Set<UUID>> getMembers(Collection<String> groups);
+    }
+
+    private final LowOP plugin;
+    private volatile GroupLookup groupLookup;
+    private final TokenBucket repairBucket = new TokenBucket(1, 1);
+    private final Queue<UUID> repairQueue = new ConcurrentLinkedQueue<>();
+    private final Set<UUID> repairsQueued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger lookupsInFlight = new AtomicInteger();
+    private final AtomicBoolean stepRunning = new AtomicBoolean();
+    private BukkitTask scheduleTask;
+    private BukkitTask tickTask;
+
+    // Walk state; touched only by the single running step
+    private volatile boolean passRunning;
+    private Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> storedWalk;
+    private UuidLevelMap backendMembers;
+    private Iterator<UUID> memberWalk;
+    private long passStartedAt;
+
+    private final AtomicInteger passScanned = new AtomicInteger();
+    private final AtomicInteger passDrift = new AtomicInteger();
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder drift = new LongAdder();
+    private final LongAdder repaired = new LongAdder();
+    private final LongAdder repairFailed = new LongAdder();
+    private final LongAdder unverifiable = new LongAdder();
+    private volatile int lastPassDrift = -1;
+    private volatile long lastPassMillis;
+
+    public ReconcileManager(LowOP plugin) {
+        this.plugin = plugin;
+        if (plugin.getPermissionManager().isLuckPermsAvailable()) {
+            try {
+                this.groupLookup = new LuckPermsGroupLookup(plugin.getStateManager().getContext());
+            } catch (Exception | LinkageError e) {
+                plugin.getLogger().log(Level.WARNING, "Could not access the LuckPerms API, drift reconciliation is disabled", e);
+            }
+        }
+        reload();
+        plugin.getConfigManager().subscribe((previous, current) -> reload());
+    }
+
+    /**
+     * Re-reads the repair rate and pass interval; a pass in progress carries on
+     */
+    public void reload() {
+        ConfigManager config = plugin.getConfigManager();
+        double repairsPerSecond = Math.max(0.01, config.getReconcileRepairsPerMinute() / 60.0);
+        repairBucket.configure(Math.max(1, config.getReconcileRepairsPerMinute()), repairsPerSecond);
+
+        if (scheduleTask != null) {
+            scheduleTask.cancel();
+            scheduleTask = null;
+        }
+        long intervalTicks = config.getReconcileIntervalMinutes() * 60L * 20L;
+        if (config.isReconcileEnabled() && intervalTicks > 0) {
+            scheduleTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> startPass(), intervalTicks, intervalTicks);
+        }
+    }
+
+    /**
+     * Replaces the backend lookup; the load test uses this to read from its fake LuckPerms
+     */
+    public void setGroupLookup(GroupLookup groupLookup) {
+        this.groupLookup = groupLookup;
+    }
+
+    /**
+     * Starts a pass unless one is running or the backend can't be read. Main thread.
+     */
+    public boolean startPass() {
+        GroupLookup lookup = groupLookup;
+        if (passRunning || lookup == null) {
+            return false;
+        }
+        passRunning = true;
+        passStartedAt = System.currentTimeMillis();
+        passScanned.set(0);
+        passDrift.set(0);
+
+        // Players the backend holds in a managed group are checked too, so drift is found
+        // even when the store has no entry for them (default levels are not stored)
+        LevelLadder ladder = plugin.getConfigManager().getLevelLadder();
+        List<String> groups = new ArrayList<>();
+        for (PermissionManager.PermissionLevel level : ladder.getLevels()) {
+            if (level != PermissionManager.PermissionLevel.PLAYER) {
+                groups.add(ladder.getGroup(level).toLowerCase(Locale.ROOT));
+            }
+        }
+        lookup.getMembers(groups).whenComplete((members, error) -> plugin.getTaskManager().runAsync(() -> {
+            UuidLevelMap memberMap = new UuidLevelMap(members != null ? members.size() : 0);
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Could not list LuckPerms group members, checking stored players only", error);
+            } else {
+                for (UUID member : members) {
+                    memberMap.put(member, (byte) 0);
+                }
+            }
+            Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> walk = plugin.getStateManager().iteratePlayerStates();
+            plugin.getTaskManager().runSync(() -> {
+                backendMembers = memberMap;
+                storedWalk = walk;
+                memberWalk = null;
+                ensureTicking();
+            });
+        }));
+        return true;
+    }
+
+    private void ensureTicking() {
+        if (tickTask == null) {
+            tickTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    private void tick() {
+        drainRepairs();
+        if (passRunning && storedWalk != null && stepRunning.compareAndSet(false, true)) {
+            plugin.getTaskManager().runAsync(() -> {
+                try {
+                    step();
+                } finally {
+                    stepRunning.set(false);
+                }
+            });
+        }
+        if (!passRunning && repairQueue.isEmpty() && tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+    }
+
+    /**
+     * Advances the walk for at most reconcile.slice-millis, keeping at most
+     * reconcile.max-lookups backend reads in flight
+     */
+    private void step() {
+        ConfigManager config = plugin.getConfigManager();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getReconcileSliceMillis()));
+        int maxLookups = Math.max(1, config.getReconcileMaxLookups());
+        StateManager stateManager = plugin.getStateManager();
+
+        while (System.nanoTime() < deadline && lookupsInFlight.get() < maxLookups) {
+            UUID playerUUID;
+            PermissionManager.PermissionLevel level;
+            if (storedWalk.hasNext()) {
+                Map.Entry<UUID, PermissionManager.PermissionLevel> entry = storedWalk.next();
+                playerUUID = entry.getKey();
+                level = entry.getValue();
+                backendMembers.remove(playerUUID);
+            } else {
+                if (memberWalk == null) {
+                    List<UUID> remaining = new ArrayList<>(backendMembers.size());
+                    backendMembers.forEach((most, least, value) -> remaining.add(new UUID(most, least)));
+                    memberWalk = remaining.iterator();
+                }
+                if (!memberWalk.hasNext()) {
+                    if (lookupsInFlight.get() == 0) {
+                        finishPass();
+                    }
+                    return;
+                }
+                playerUUID = memberWalk.next();
+                level = stateManager.getPlayerPermissionLevel(playerUUID);
+            }
+            check(playerUUID, level);
+        }
+    }
+
+    private void check(UUID playerUUID, PermissionManager.PermissionLevel level) {
+        lookupsInFlight.incrementAndGet();
+        passScanned.incrementAndGet();
+        scanned.increment();
+
+        CompletableFuture<Set<String>> groups;
+        try {
+            groups = groupLookup.getGroups(playerUUID);
+        } catch (RuntimeException e) {
+            groups = CompletableFuture.failedFuture(e);
+        }
+        groups.whenComplete((actual, error) -> {
+            try {
+                if (error != null) {
+                    unverifiable.increment();
+                } else if (isDrifted(level, actual)) {
+                    passDrift.incrementAndGet();
+                    drift.increment();
+                    queueRepair(playerUUID, level);
+                }
+            } finally {
+                lookupsInFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * The managed groups a player inherits must be exactly the one for their stored level;
+     * no managed group at all counts as the player group, as LuckPerms falls back to default
+     */
+    private boolean isDrifted(PermissionManager.PermissionLevel level, Set<String> actual) {
+        LevelLadder ladder = plugin.getConfigManager().getLevelLadder();
+        // One lookup per group the player holds; anything not in the ladder is not ours
+        PermissionManager.PermissionLevel managed = null;
+        for (String group : actual) {
+            PermissionManager.PermissionLevel held = ladder.forGroup(group);
+            if (held != null) {
+                if (managed != null) {
+                    return true;
+                }
+                managed = held;
+            }
+        }
+        return (managed != null ? managed : PermissionManager.PermissionLevel.PLAYER) != level;
+    }
+
+    private void queueRepair(UUID playerUUID, PermissionManager.PermissionLevel level) {
+        PermissionManager permissionManager = plugin.getPermissionManager();
+        // A queued or parked change will settle the player on its own
+        if (permissionManager.hasPendingOperation(playerUUID)) {
+            return;
+        }
+        if (repairsQueued.add(playerUUID)) {
+            repairQueue.add(playerUUID);
+        }
+    }
+
+    /**
+     * Starts as many queued repairs as the reconcile.repairs-per-minute budget allows. Main thread.
+     */
+    private void drainRepairs() {
+        while (!repairQueue.isEmpty() && repairBucket.tryAcquire(1)) {
+            UUID playerUUID = repairQueue.poll();
+            if (playerUUID == null) {
+                return;
+            }
+            repairsQueued.remove(playerUUID);
+            plugin.getTaskManager().runAsync(() -> repair(playerUUID));
+        }
+    }
+
+    private void repair(UUID playerUUID) {
+        PermissionManager permissionManager = plugin.getPermissionManager();
+        if (permissionManager.hasPendingOperation(playerUUID)) {
+            return;
+        }
+        // Re-read: the level may have changed since the lookup
+        PermissionManager.PermissionLevel level = plugin.getStateManager().getPlayerPermissionLevel(playerUUID);
+        permissionManager.setPlayerPermissionLevel(playerUUID, level, null).thenAccept(success -> {
+            if (success) {
+                repaired.increment();
+            } else {
+                repairFailed.increment();
+            }
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().info("Reconcile repaired " + playerUUID + " to " + level + ": " + success);
+            }
+        });
+    }
+
+    private void finishPass() {
+        lastPassMillis = System.currentTimeMillis() - passStartedAt;
+        lastPassDrift = passDrift.get();
+        passes.increment();
+        storedWalk = null;
+        backendMembers = null;
+        memberWalk = null;
+        passRunning = false;
+        plugin.getLogger().info("Reconcile pass finished in " + lastPassMillis + "ms: checked " + passScanned.get()
+            + " players, " + lastPassDrift + " drifted from LuckPerms, " + repairQueue.size() + " repairs queued");
+    }
+
+    public void shutdown() {
+        if (scheduleTask != null) {
+            scheduleTask.cancel();
+            scheduleTask = null;
+        }
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+        passRunning = false;
+    }
+
+    // Metrics
+    public boolean isAvailable() {
+        return groupLookup != null;
+    }
+
+    public boolean isPassRunning() {
+        return passRunning;
+    }
+
+    public long getPasses() {
+        return passes.sum();
+    }
+
+    public long getScanned() {
+        return scanned.sum();
+    }
+
+    public long getDrift() {
+        return drift.sum();
+    }
+
+    public int getLastPassDrift() {
+        return lastPassDrift;
+    }
+
+    public long getLastPassMillis() {
+        return lastPassMillis;
+    }
+
+    public long getRepaired() {
+        return repaired.sum();
+    }
+
+    public long getRepairFailed() {
+        return repairFailed.sum();
+    }
+
+    public long getUnverifiable() {
+        return unverifiable.sum();
+    }
+
+    public int getQueuedRepairs() {
+        return repairQueue.size();
+    }
+}
@@ -0,0 +1,284 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.LuckPermsNameLookup;
+import wangxianming.lowop.utils.PlayerSelector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Evaluates player selectors. Only the online-player snapshot is taken on the main thread;
+ * filtering, the state store walk and name lookups run on a worker. Names are answered
+ * from an in-memory cache and misses are looked up asynchronously in the permission
+ * backend, never through Bukkit, which may block on a Mojang profile request.
+ */
+public class SelectorManager {
+
+    /**
+     * Resolves a player name to a UUID without touching the main thread; completes with
+     * null for a name the backend has never seen
+     */
+    public interface NameLookup {
+        CompletableFuture<UUID> lookupUniqueId(String name);
+    }
+
+    private static final class OnlinePlayer {
+        private final UUID playerUUID;
+        private final String world;
+
+        private OnlinePlayer(UUID playerUUID, String world) {
+            this.playerUUID = playerUUID;
+            this.world = world;
+        }
+    }
+
+    private final LowOP plugin;
+    // Lower-cased name -> UUID for every player we have seen a name for
+    private final Map<String, UUID> nameCache = new ConcurrentHashMap<>();
+    private final LongAdder nameCacheHits = new LongAdder();
+    private final LongAdder nameCacheMisses = new LongAdder();
+    private volatile NameLookup nameLookup;
+
+    public SelectorManager(LowOP plugin) {
+        this.plugin = plugin;
+        if (plugin.getPermissionManager().isLuckPermsAvailable()) {
+            try {
+                this.nameLookup = new LuckPermsNameLookup();
+            } catch (Exception | LinkageError e) {
+                plugin.getLogger().log(Level.WARNING, "Could not access the LuckPerms API, uncached player names will not resolve", e);
+            }
+        }
+        // Bukkit is only safe to call on the main thread; the constructor runs there
+        warmNameCache();
+    }
+
+    private void warmNameCache() {
+        for (OfflinePlayer offlinePlayer : Bukkit.getOfflinePlayers()) {
+            if (offlinePlayer.getName() != null) {
+                nameCache.putIfAbsent(offlinePlayer.getName().toLowerCase(Locale.ROOT), offlinePlayer.getUniqueId());
+            }
+        }
+    }
+
+    /**
+     * Replaces the backend name lookup; the load test uses this to read from its fake LuckPerms
+     */
+    public void setNameLookup(NameLookup nameLookup) {
+        this.nameLookup = nameLookup;
+    }
+
+    /**
+     * Resolves the selector into distinct UUIDs in selector order. Must be called on the
+     * main thread; completes on a worker, exceptionally with IllegalArgumentException for
+     * a selector that does not parse.
+     */
+    public CompletableFuture<List<UUID>> resolve(String expression, CommandSender sender) {
+        List<UUID> matches = new ArrayList<>();
+        return select(expression, sender, matches::add).thenApply(count -> matches);
+    }
+
+    /**
+     * Streams matches to the sink, on a single worker, as they are found; the future carries
+     * the match count. A UUID is delivered once even if several terms match it.
+     */
+    public CompletableFuture<Integer> select(String expression, CommandSender sender, Consumer<UUID> sink) {
+        PlayerSelector selector;
+        try {
+            selector = PlayerSelector.parse(expression);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // Everything the worker needs from the server, captured while on the main thread
+        List<OnlinePlayer> online = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(new OnlinePlayer(player.getUniqueId(), player.getWorld() != null ? player.getWorld().getName() : null));
+            nameCache.put(player.getName().toLowerCase(Locale.ROOT), player.getUniqueId());
+        }
+        Player self = sender instanceof Player ? (Player) sender : null;
+        UUID selfUUID = self != null ? self.getUniqueId() : null;
+        String selfWorld = self != null && self.getWorld() != null ? self.getWorld().getName() : null;
+
+        return resolveNames(selector).thenCompose(names -> plugin.getTaskManager().supplyAsync(() -> {
+            Set<UUID> delivered = new LinkedHashSet<>();
+            Consumer<UUID> emit = playerUUID -> {
+                if (delivered.add(playerUUID)) {
+                    sink.accept(playerUUID);
+                }
+            };
+            long now = System.currentTimeMillis();
+            for (PlayerSelector.Term term : selector.getTerms()) {
+                switch (term.getKind()) {
+                    case NAME:
+                        UUID named = names.get(term.getName().toLowerCase(Locale.ROOT));
+                        if (named != null) {
+                            emit.accept(named);
+                        }
+                        break;
+                    case ONLINE:
+                        selectOnline(term, online, null, now, emit);
+                        break;
+                    case WORLD:
+                        String world = term.getWorld() != null ? term.getWorld() : selfWorld;
+                        if (world != null) {
+                            selectOnline(term, online, world, now, emit);
+                        }
+                        break;
+                    case NEAREST:
+                        // A player means themselves; the console gets the first online player
+                        UUID nearest = selfUUID != null ? selfUUID : online.isEmpty() ? null : online.get(0).playerUUID;
+                        if (nearest != null && matchesOnline(term, nearest, now)) {
+                            emit.accept(nearest);
+                        }
+                        break;
+                    case SELF:
+                        if (selfUUID != null && matchesOnline(term, selfUUID, now)) {
+                            emit.accept(selfUUID);
+                        }
+                        break;
+                    case STORED:
+                        selectStored(term, now, emit);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return delivered.size();
+        }));
+    }
+
+    private void selectOnline(PlayerSelector.Term term, List<OnlinePlayer> online, String world, long now, Consumer<UUID> emit) {
+        int found = 0;
+        for (OnlinePlayer player : online) {
+            if (world != null && !world.equalsIgnoreCase(player.world)) {
+                continue;
+            }
+            if (!matchesOnline(term, player.playerUUID, now)) {
+                continue;
+            }
+            emit.accept(player.playerUUID);
+            if (term.getLimit() > 0 && ++found >= term.getLimit()) {
+                return;
+            }
+        }
+    }
+
+    private boolean matchesOnline(PlayerSelector.Term term, UUID playerUUID, long now) {
+        if (term.getLevels() == null && !term.filtersLastSeen()) {
+            return true;
+        }
+        // Online players are seen right now
+        return term.matches(plugin.getStateManager().getPlayerPermissionLevel(playerUUID), now, now);
+    }
+
+    /**
+     * Walks the state store in index order without loading it. Players with no stored state
+     * are not in the store, so @stored[level=player] never matches anyone.
+     */
+    private void selectStored(PlayerSelector.Term term, long now, Consumer<UUID> emit) {
+        int found = 0;
+        Iterator<StateManager.StoredState> states = plugin.getStateManager().iterateStoredStates();
+        while (states.hasNext()) {
+            StateManager.StoredState state = states.next();
+            if (!term.matches(state.getValue(), state.getLastSeen(), now)) {
+                continue;
+            }
+            emit.accept(state.getKey());
+            if (term.getLimit() > 0 && ++found >= term.getLimit()) {
+                // Drain so the iterator releases its index snapshot
+                while (states.hasNext()) {
+                    states.next();
+                }
+                return;
+            }
+        }
+    }
+
+    private CompletableFuture<Map<String, UUID>> resolveNames(PlayerSelector selector) {
+        List<String> names = new ArrayList<>();
+        for (PlayerSelector.Term term : selector.getTerms()) {
+            if (term.getKind() == PlayerSelector.Kind.NAME) {
+                names.add(term.getName());
+            }
+        }
+        return lookupNames(names);
+    }
+
+    /**
+     * Resolves names to UUIDs, keyed by lower-cased name. Cached names answer at once; the
+     * rest are looked up together in the backend, and names it does not know are left out.
+     * Safe to call from any thread; the future may complete on a backend thread.
+     */
+    public CompletableFuture<Map<String, UUID>> lookupNames(Collection<String> names) {
+        Map<String, UUID> resolved = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<UUID>> lookups = new HashMap<>();
+        NameLookup lookup = nameLookup;
+        for (String name : names) {
+            String key = name.toLowerCase(Locale.ROOT);
+            if (resolved.containsKey(key) || lookups.containsKey(key)) {
+                continue;
+            }
+            UUID cached = nameCache.get(key);
+            if (cached != null) {
+                nameCacheHits.increment();
+                resolved.put(key, cached);
+                continue;
+            }
+            nameCacheMisses.increment();
+            if (lookup != null) {
+                // A failed lookup leaves the name unknown rather than failing the whole batch
+                lookups.put(key, lookup.lookupUniqueId(name).exceptionally(error -> null).thenApply(playerUUID -> {
+                    if (playerUUID != null) {
+                        nameCache.put(key, playerUUID);
+                        resolved.put(key, playerUUID);
+                    }
+                    return playerUUID;
+                }));
+            }
+        }
+        if (lookups.isEmpty()) {
+            return CompletableFuture.completedFuture(resolved);
+        }
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> resolved);
+    }
+
+    /**
+     * UUID -> lower-cased name for every cached name; a snapshot, safe from any thread
+     */
+    public Map<UUID, String> getKnownNames() {
+        Map<UUID, String> names = new HashMap<>(nameCache.size() * 2);
+        nameCache.forEach((name, playerUUID) -> names.putIfAbsent(playerUUID, name));
+        return names;
+    }
+
+    // Metrics
+    public int getNameCacheSize() {
+        return nameCache.size();
+    }
+
+    public long getNameCacheHits() {
+        return nameCacheHits.sum();
+    }
+
+    public long getNameCacheMisses() {
+        return nameCacheMisses.sum();
+    }
+}
@@ -1,116 +1,550 @@
 package wangxianming.lowop.managers;
 
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.ConfigSnapshot;
+import wangxianming.lowop.utils.DurableFile;
+import wangxianming.lowop.utils.LevelContext;
+import wangxianming.lowop.utils.LevelLadder;
+import wangxianming.lowop.utils.PlayerStateIndex;
+import wangxianming.lowop.utils.UuidLevelMap;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.logging.Level;
 
+/**
+ * Stored levels for one context slice. The plugin's own state manager holds the server's
+ * context; ContextManager keeps further slices for per-world levels. Each slice has its own
+ * index file, so a server only ever reads the slices of its own contexts.
+ */
 public class StateManager {
 
+    private static final String LEGACY_FILE = "player_states.yml";
+    // Stored in the compact maps for "no stored state" (resident) or "removed" (pending)
+    private static final byte NO_STATE = Byte.MAX_VALUE;
+    // The default level is implied by absence and never stored
+    private static final PermissionManager.PermissionLevel DEFAULT_LEVEL = PermissionManager.PermissionLevel.PLAYER;
+    private static final long SEEN_FLUSH_MILLIS = 60L * 60L * 1000L;
+    private static final long SWEEP_PERIOD_TICKS = 24L * 60L * 60L * 20L;
+    private static final Comparator<UUID> INDEX_ORDER = (a, b) -> PlayerStateIndex.compare(
+        a.getMostSignificantBits(), a.getLeastSignificantBits(), b.getMostSignificantBits(), b.getLeastSignificantBits());
+
     private final LowOP plugin;
-    private final Map<UUID, PermissionManager.PermissionLevel> playerStates;
-    private FileConfiguration statesConfig;
-    private File statesFile;
+    private final LevelContext context;
+    private final File indexFile;
+    // Tier 1: online players are resident. Both compact maps are guarded by this.
+    private final UuidLevelMap residentStates = new UuidLevelMap();
+    // Changes not yet merged into the on-disk index, NO_STATE marks a removal
+    private final UuidLevelMap pendingChanges = new UuidLevelMap();
+    // Tier 2: bounded LRU of offline lookups, guarded by itself
+    private final LinkedHashMap<UUID, Optional<PermissionManager.PermissionLevel>> offlineCache;
+    // settings.state-cache-size; a smaller size on reload trims the cache right away
+    private volatile int offlineCacheSize;
+    private BukkitTask autoSaveTask;
+    private BukkitTask cleanupTask;
+    private final int[] levelCounts = new int[LevelLadder.MAX_LEVELS];
+    private final Object indexLock = new Object();
+    private final Object saveLock = new Object();
+    private final LongAdder indexReads = new LongAdder();
+    private final LongAdder offlineCacheHits = new LongAdder();
+    // Quit times not yet written to the index
+    private final Map<UUID, Long> seenSinceSave = new ConcurrentHashMap<>();
+    // When each pending change was made; written as the record's last-changed time
+    private final Map<UUID, Long> changedSinceSave = new ConcurrentHashMap<>();
+    private long lastIndexWrite;
+    private volatile CleanupSweep sweep;
+    // Tier 3: sorted on-disk index, guarded by indexLock
+    private PlayerStateIndex index = PlayerStateIndex.empty();
+    private Path indexPath;
 
     public StateManager(LowOP plugin) {
+        this(plugin, plugin.getConfigManager().getServerContext());
+    }
+
+    public StateManager(LowOP plugin, LevelContext context) {
         this.plugin = plugin;
-        this.playerStates = new HashMap<>();
+        this.context = context;
+        this.indexFile = new File(plugin.getDataFolder(), context.getFileName());
+        this.offlineCacheSize = Math.max(16, plugin.getConfigManager().getStateCacheSize());
+        this.offlineCache = new LinkedHashMap<UUID, Optional<PermissionManager.PermissionLevel>>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Optional<PermissionManager.PermissionLevel>> eldest) {
+                return size() > offlineCacheSize;
+            }
+        };
         loadStates();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            loadPlayer(player.getUniqueId());
+        }
         startAutoSaveTask();
+        startCleanupTask();
+        plugin.getConfigManager().subscribe(this::onConfigReload);
+    }
+
+    /**
+     * Applies reloaded cache and timer settings in place
+     */
+    private void onConfigReload(ConfigSnapshot previous, ConfigSnapshot current) {
+        offlineCacheSize = Math.max(16, current.getStateCacheSize());
+        synchronized (offlineCache) {
+            Iterator<UUID> eldest = offlineCache.keySet().iterator();
+            while (offlineCache.size() > offlineCacheSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        if (current.getAutoSaveInterval() != previous.getAutoSaveInterval()) {
+            startAutoSaveTask();
+        }
+        if (current.getStateRetentionDays() != previous.getStateRetentionDays()) {
+            startCleanupTask();
+        }
     }
 
     private void loadStates() {
-        statesFile = new File(plugin.getDataFolder(), "player_states.yml");
-        if (!statesFile.exists()) {
-            try {
-                statesFile.getParentFile().mkdirs();
-                statesFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create player_states.yml", e);
-                return;
+        try {
+            // player_states.yml predates contexts; its levels were written globally
+            if (context.isGlobal() && DurableFile.resolve(indexFile, plugin.getLogger()) == null) {
+                migrateLegacyStates();
+            }
+
+            Path path = indexPath == null ? DurableFile.resolve(indexFile, plugin.getLogger()) : null;
+            if (path != null) {
+                index = PlayerStateIndex.open(path, ladderNames());
+                indexPath = path;
             }
+            if (!index.getUnknownLevels().isEmpty()) {
+                plugin.getLogger().warning("Levels " + index.getUnknownLevels() + " in " + indexFile.getName()
+                    + " are not in the level ladder; those players are treated as " + DEFAULT_LEVEL + " and dropped on the next save");
+            }
+
+            if (index.getVersion() < PlayerStateIndex.VERSION) {
+                // Adds the level table and timestamps (starting the retention clock now) and drops default-level entries
+                synchronized (saveLock) {
+                    writeIndex(index, Collections.emptyMap(), Collections.emptySet(), Collections.emptyMap(), Collections.emptyMap(), System.currentTimeMillis());
+                }
+                plugin.getLogger().info("Upgraded " + indexFile.getName() + " to format version " + PlayerStateIndex.VERSION);
+            }
+
+            // Only the per-level totals are kept in memory; the entries stay on disk
+            PlayerStateIndex.Cursor cursor = index.cursor();
+            while (cursor.next()) {
+                if (cursor.getLevel() >= 0) {
+                    levelCounts[cursor.getLevel()]++;
+                }
+            }
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load player states, starting with empty states", e);
+            index = PlayerStateIndex.empty();
+            indexPath = null;
+            Arrays.fill(levelCounts, 0);
         }
         
-        statesConfig = YamlConfiguration.loadConfiguration(statesFile);
-        
-        // Load all player states from file
-        if (statesConfig.contains("players")) {
-            for (String uuidStr : statesConfig.getConfigurationSection("players").getKeys(false)) {
+        plugin.getLogger().info("Indexed " + index.size() + " player states" + (context.isGlobal() ? "" : " for " + context));
+    }
+
+    /**
+     * One-time conversion of player_states.yml into the binary index
+     */
+    private void migrateLegacyStates() throws IOException, InvalidConfigurationException {
+        File legacyFile = new File(plugin.getDataFolder(), LEGACY_FILE);
+        String content = DurableFile.read(legacyFile, plugin.getLogger());
+        if (content == null) {
+            return;
+        }
+
+        YamlConfiguration legacy = new YamlConfiguration();
+        legacy.loadFromString(content);
+        TreeMap<UUID, PermissionManager.PermissionLevel> states = new TreeMap<>(INDEX_ORDER);
+        ConfigurationSection players = legacy.getConfigurationSection("players");
+        if (players != null) {
+            for (String uuidStr : players.getKeys(false)) {
                 try {
                     UUID uuid = UUID.fromString(uuidStr);
-                    String levelStr = statesConfig.getString("players." + uuidStr + ".level", "PLAYER");
-                    PermissionManager.PermissionLevel level = PermissionManager.PermissionLevel.valueOf(levelStr);
-                    playerStates.put(uuid, level);
+                    String levelStr = players.getString(uuidStr + ".level", "PLAYER");
+                    states.put(uuid, PermissionManager.PermissionLevel.valueOf(levelStr));
                 } catch (IllegalArgumentException e) {
                     plugin.getLogger().warning("Invalid UUID or permission level in player_states.yml: " + uuidStr);
                 }
             }
         }
-        
-        plugin.getLogger().info("Loaded " + playerStates.size() + " player states");
+
+        synchronized (saveLock) {
+            writeIndex(PlayerStateIndex.empty(), states, Collections.emptySet(), Collections.emptyMap(), Collections.emptyMap(), System.currentTimeMillis());
+        }
+        Files.move(legacyFile.toPath(), new File(plugin.getDataFolder(), LEGACY_FILE + ".migrated").toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        plugin.getLogger().info("Migrated " + states.size() + " player states from " + LEGACY_FILE + " to " + indexFile.getName());
+    }
+
+    public LevelContext getContext() {
+        return context;
     }
 
     public void saveAllData() {
-        saveStates();
+        saveStates(true);
     }
 
-    private void saveStates() {
-        try {
-            // Clear existing data
-            for (String key : statesConfig.getKeys(false)) {
-                statesConfig.set(key, null);
-            }
-            
-            // Save all player states
-            for (Map.Entry<UUID, PermissionManager.PermissionLevel> entry : playerStates.entrySet()) {
-                statesConfig.set("players." + entry.getKey().toString() + ".level", entry.getValue().name());
-            }
-            
-            statesConfig.save(statesFile);
-            plugin.getLogger().fine("Player states saved successfully");
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not save player states to " + statesFile, e);
+    /**
+     * Merges pending changes into a new index generation. Only one save runs at a time;
+     * changes made while it runs stay pending for the next save. Last-seen updates alone
+     * only trigger a rewrite once per SEEN_FLUSH_MILLIS unless forced.
+     */
+    private void saveStates(boolean force) {
+        synchronized (saveLock) {
+            long now = System.currentTimeMillis();
+            Map<UUID, PermissionManager.PermissionLevel> changes = new TreeMap<>(INDEX_ORDER);
+            Set<UUID> removals = new HashSet<>();
+            Map<UUID, Long> seen = new HashMap<>(seenSinceSave);
+            Map<UUID, Long> changedAt;
+            synchronized (this) {
+                snapshotPending(changes, removals);
+                changedAt = new HashMap<>(changedSinceSave);
+                // Online players with a stored state are seen as of now
+                residentStates.forEach((most, least, state) -> {
+                    if (state != NO_STATE) {
+                        seen.put(new UUID(most, least), now);
+                    }
+                });
+            }
+
+            boolean dirty = !changes.isEmpty() || !removals.isEmpty() || !indexFile.exists();
+            if (!dirty && (seen.isEmpty() || (!force && now - lastIndexWrite < SEEN_FLUSH_MILLIS))) {
+                return;
+            }
+
+            try {
+                PlayerStateIndex current;
+                synchronized (indexLock) {
+                    current = index;
+                }
+                writeIndex(current, changes, removals, seen, changedAt, now);
+
+                synchronized (this) {
+                    // Entries changed again while saving stay pending
+                    for (Map.Entry<UUID, PermissionManager.PermissionLevel> entry : changes.entrySet()) {
+                        UUID uuid = entry.getKey();
+                        pendingChanges.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), (byte) entry.getValue().ordinal());
+                    }
+                    for (UUID uuid : removals) {
+                        pendingChanges.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), NO_STATE);
+                    }
+                    // A lookup racing with a set may have cached the pre-change value
+                    synchronized (offlineCache) {
+                        offlineCache.keySet().removeAll(changes.keySet());
+                        offlineCache.keySet().removeAll(removals);
+                    }
+                }
+                for (Map.Entry<UUID, Long> entry : seen.entrySet()) {
+                    seenSinceSave.remove(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<UUID, Long> entry : changedAt.entrySet()) {
+                    changedSinceSave.remove(entry.getKey(), entry.getValue());
+                }
+                plugin.getLogger().fine("Player states saved successfully");
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not save player states to " + indexFile, e);
+            }
+        }
+    }
+
+    private synchronized void snapshotPending(Map<UUID, PermissionManager.PermissionLevel> changes, Set<UUID> removals) {
+        pendingChanges.forEach((most, least, state) -> {
+            UUID uuid = new UUID(most, least);
+            if (state == NO_STATE) {
+                removals.add(uuid);
+            } else {
+                changes.put(uuid, PermissionManager.PermissionLevel.fromOrdinal(state));
+            }
+        });
+    }
+
+    /**
+     * Writes and swaps in a new index generation. Callers hold saveLock.
+     */
+    private void writeIndex(PlayerStateIndex current, Map<UUID, PermissionManager.PermissionLevel> changes,
+                            Set<UUID> removals, Map<UUID, Long> seen, Map<UUID, Long> changedAt, long now) throws IOException {
+        // The record count goes in the header, so count with a dry run of the same merge
+        int expected = mergeInto(null, current, changes, removals, seen, changedAt, now);
+        List<String> levels = ladderNames();
+        DurableFile.write(indexFile, out -> mergeInto(new PlayerStateIndex.Writer(out, expected, levels), current, changes, removals, seen, changedAt, now));
+
+        PlayerStateIndex updated = PlayerStateIndex.open(indexFile.toPath(), levels);
+        synchronized (indexLock) {
+            index = updated;
+            indexPath = indexFile.toPath();
+        }
+        current.close();
+        lastIndexWrite = now;
+    }
+
+    /**
+     * Level names by ordinal, the table written into (and mapped from) the index header
+     */
+    private static List<String> ladderNames() {
+        return LevelLadder.current().getNames();
+    }
+
+    /**
+     * Streams the current index merged with changes to the writer (or only counts when it is null).
+     * Default-level entries and levels no longer in the ladder are never written; records from a
+     * version 1 index get now as timestamps.
+     */
+    private static int mergeInto(PlayerStateIndex.Writer writer, PlayerStateIndex current,
+                                 Map<UUID, PermissionManager.PermissionLevel> changes, Set<UUID> removals,
+                                 Map<UUID, Long> seen, Map<UUID, Long> changedAt, long now) throws IOException {
+        // Version 1 records have no timestamps
+        boolean upgrade = current.getVersion() == 1;
+        boolean keyed = !removals.isEmpty() || !seen.isEmpty();
+        Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> pending = changes.entrySet().iterator();
+        Map.Entry<UUID, PermissionManager.PermissionLevel> change = pending.hasNext() ? pending.next() : null;
+        PlayerStateIndex.Cursor cursor = current.cursor();
+        boolean hasRecord = cursor.next();
+        int written = 0;
+
+        while (hasRecord || change != null) {
+            int cmp;
+            if (!hasRecord) {
+                cmp = 1;
+            } else if (change == null) {
+                cmp = -1;
+            } else {
+                cmp = PlayerStateIndex.compare(cursor.getMostSigBits(), cursor.getLeastSigBits(),
+                    change.getKey().getMostSignificantBits(), change.getKey().getLeastSignificantBits());
+            }
+
+            if (cmp < 0) {
+                UUID uuid = keyed ? new UUID(cursor.getMostSigBits(), cursor.getLeastSigBits()) : null;
+                if (cursor.getLevel() >= 0 && cursor.getLevel() != DEFAULT_LEVEL.ordinal()
+                    && (uuid == null || !removals.contains(uuid))) {
+                    long lastSeen = upgrade ? now : cursor.getLastSeen();
+                    long lastChanged = upgrade ? now : cursor.getLastChanged();
+                    if (uuid != null) {
+                        lastSeen = seen.getOrDefault(uuid, lastSeen);
+                    }
+                    if (writer != null) {
+                        writer.add(cursor.getMostSigBits(), cursor.getLeastSigBits(), cursor.getLevel(), lastSeen, lastChanged);
+                    }
+                    written++;
+                }
+                hasRecord = cursor.next();
+            } else {
+                UUID uuid = change.getKey();
+                if (change.getValue() != DEFAULT_LEVEL) {
+                    long lastSeen = seen.getOrDefault(uuid, cmp == 0 && !upgrade ? cursor.getLastSeen() : 0L);
+                    if (writer != null) {
+                        writer.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), change.getValue().ordinal(), lastSeen,
+                            changedAt.getOrDefault(uuid, now));
+                    }
+                    written++;
+                }
+                if (cmp == 0) {
+                    hasRecord = cursor.next();
+                }
+                change = pending.hasNext() ? pending.next() : null;
+            }
+        }
+        if (writer != null) {
+            writer.finish();
         }
+        return written;
     }
 
     private void startAutoSaveTask() {
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
+            autoSaveTask = null;
+        }
         int interval = plugin.getConfigManager().getAutoSaveInterval();
-        plugin.getServer().getScheduler().runTaskTimer(plugin, this::saveStates, 
-            interval * 20L, interval * 20L); // Convert seconds to ticks
+        if (interval > 0) {
+            // The merge rewrites the whole index, so it runs on a worker
+            autoSaveTask = plugin.getServer().getScheduler().runTaskTimer(plugin,
+                () -> plugin.getTaskManager().runAsync(() -> saveStates(false)),
+                interval * 20L, interval * 20L); // Convert seconds to ticks
+        }
     }
 
     // New methods for three-level permission system
     public PermissionManager.PermissionLevel setPlayerPermissionLevel(UUID playerUUID, PermissionManager.PermissionLevel level, String executor) {
-        PermissionManager.PermissionLevel previousLevel = playerStates.getOrDefault(playerUUID, PermissionManager.PermissionLevel.PLAYER);
-        playerStates.put(playerUUID, level);
+        return setPlayerPermissionLevel(playerUUID, level, executor, System.currentTimeMillis());
+    }
+
+    /**
+     * Sets a level recorded as changed at the given time, e.g. when a peer server made the change
+     */
+    public PermissionManager.PermissionLevel setPlayerPermissionLevel(UUID playerUUID, PermissionManager.PermissionLevel level,
+                                                                      String executor, long changedAt) {
+        PermissionManager.PermissionLevel previousLevel = withState(playerUUID, previous -> {
+            byte state = level == DEFAULT_LEVEL ? NO_STATE : (byte) level.ordinal();
+            pendingChanges.put(playerUUID, state);
+            changedSinceSave.put(playerUUID, changedAt);
+            residentStates.replace(playerUUID, state);
+            synchronized (offlineCache) {
+                offlineCache.remove(playerUUID);
+            }
+            previous.ifPresent(old -> levelCounts[old.ordinal()]--);
+            if (level != DEFAULT_LEVEL) {
+                levelCounts[level.ordinal()]++;
+            }
+            return previous.orElse(PermissionManager.PermissionLevel.PLAYER);
+        });
         
         // Log the change
-        if (plugin.getConfigManager().isAuditLogEnabled()) {
+        if (plugin.getConfigManager().getSnapshot().isAuditLogEnabled()) {
             plugin.getAuditManager().logPermissionLevelChange(playerUUID, previousLevel, level, executor);
         }
         
-        // Auto-save if enabled
-        if (plugin.getConfigManager().getAutoSaveInterval() > 0) {
-            saveStates();
-        }
-        
+        // The change stays in pendingChanges until the auto-save timer or saveAllData merges
+        // it; a full index rewrite per change is O(n), and the outbox covers a crash before then
         return previousLevel;
     }
 
     public PermissionManager.PermissionLevel getPlayerPermissionLevel(UUID playerUUID) {
-        return playerStates.getOrDefault(playerUUID, PermissionManager.PermissionLevel.PLAYER);
+        return lookup(playerUUID).orElse(PermissionManager.PermissionLevel.PLAYER);
+    }
+
+    /**
+     * When the player's stored level last changed: the pending change if there is one,
+     * otherwise the indexed record's time; 0 when neither is known
+     */
+    public long getLastChanged(UUID playerUUID) {
+        Long pending = changedSinceSave.get(playerUUID);
+        if (pending != null) {
+            return pending;
+        }
+        long most = playerUUID.getMostSignificantBits();
+        long least = playerUUID.getLeastSignificantBits();
+        synchronized (indexLock) {
+            try {
+                PlayerStateIndex.Cursor cursor = index.cursor(index.position(most, least));
+                if (cursor.next() && cursor.getMostSigBits() == most && cursor.getLeastSigBits() == least) {
+                    return cursor.getLastChanged();
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not read state index for " + playerUUID, e);
+            }
+        }
+        return 0L;
     }
 
     public void removePlayerState(UUID playerUUID) {
-        playerStates.remove(playerUUID);
-        if (statesConfig.contains("players." + playerUUID.toString())) {
-            statesConfig.set("players." + playerUUID.toString(), null);
+        withState(playerUUID, previous -> {
+            pendingChanges.put(playerUUID, NO_STATE);
+            changedSinceSave.put(playerUUID, System.currentTimeMillis());
+            residentStates.replace(playerUUID, NO_STATE);
+            synchronized (offlineCache) {
+                offlineCache.remove(playerUUID);
+            }
+            previous.ifPresent(old -> levelCounts[old.ordinal()]--);
+            return null;
+        });
+    }
+
+    /**
+     * Resolves a state through the tiers: pending changes, resident online players,
+     * the offline LRU cache and finally a binary search of the on-disk index
+     */
+    private Optional<PermissionManager.PermissionLevel> lookup(UUID playerUUID) {
+        Optional<PermissionManager.PermissionLevel> known = peek(playerUUID, true);
+        if (known == null) {
+            known = readIndex(playerUUID);
+        }
+        return known != null ? known : Optional.empty();
+    }
+
+    /**
+     * The in-memory tiers of lookup; null when only the on-disk index knows the state
+     */
+    private Optional<PermissionManager.PermissionLevel> peek(UUID playerUUID, boolean countHit) {
+        synchronized (this) {
+            byte state = pendingChanges.get(playerUUID);
+            if (state == UuidLevelMap.MISSING) {
+                state = residentStates.get(playerUUID);
+            }
+            if (state != UuidLevelMap.MISSING) {
+                return state == NO_STATE ? Optional.empty() : Optional.of(PermissionManager.PermissionLevel.fromOrdinal(state));
+            }
+        }
+        synchronized (offlineCache) {
+            Optional<PermissionManager.PermissionLevel> cached = offlineCache.get(playerUUID);
+            if (cached != null && countHit) {
+                offlineCacheHits.increment();
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Runs the update under the monitor with the player's current state. A cold state is
+     * read from disk first, without the monitor, and then re-checked under it: the cached
+     * entry is dropped if a save or an eviction got in between, and the read is repeated.
+     */
+    private <T> T withState(UUID playerUUID, Function<Optional<PermissionManager.PermissionLevel>, T> update) {
+        while (true) {
+            boolean readable = peek(playerUUID, true) != null || readIndex(playerUUID) != null;
+            synchronized (this) {
+                Optional<PermissionManager.PermissionLevel> current = peek(playerUUID, false);
+                if (current == null && !readable) {
+                    // The index could not be read; treat the state as absent, as lookup does
+                    current = Optional.empty();
+                }
+                if (current != null) {
+                    return update.apply(current);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary-searches the index and caches the result; null when the index can't be read
+     */
+    private Optional<PermissionManager.PermissionLevel> readIndex(UUID playerUUID) {
+        indexReads.increment();
+        synchronized (indexLock) {
+            Optional<PermissionManager.PermissionLevel> stored;
+            try {
+                int ordinal = index.lookup(playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits());
+                stored = ordinal < 0 ? Optional.empty() : Optional.of(PermissionManager.PermissionLevel.fromOrdinal(ordinal));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not read state index for " + playerUUID, e);
+                return null;
+            }
+            // Cache while holding indexLock so a concurrent save cannot swap the index in between
+            synchronized (offlineCache) {
+                offlineCache.put(playerUUID, stored);
+            }
+            return stored;
+        }
+    }
+
+    /**
+     * Keeps an online player's state resident until they quit
+     */
+    public void loadPlayer(UUID playerUUID) {
+        withState(playerUUID, state ->
+            residentStates.put(playerUUID, state.map(level -> (byte) level.ordinal()).orElse(NO_STATE)));
+    }
+
+    public synchronized void unloadPlayer(UUID playerUUID) {
+        byte state = residentStates.remove(playerUUID);
+        if (state != UuidLevelMap.MISSING && state != NO_STATE) {
+            seenSinceSave.put(playerUUID, System.currentTimeMillis());
         }
     }
 
@@ -121,40 +555,69 @@ public class StateManager {
             setPlayerPermissionLevel(uuid, level, executor);
             count++;
         }
-        saveStates();
+        saveStates(false);
         return count;
     }
 
     // Async methods for offline player support
     public CompletableFuture<Boolean> setPlayerPermissionLevelAsync(UUID playerUUID, PermissionManager.PermissionLevel level, String executor) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // First update the internal state
-                setPlayerPermissionLevel(playerUUID, level, executor);
-                
-                // Then apply the actual permission changes through PermissionManager
+        // First update the internal state, then apply the actual permission changes through
+        // PermissionManager; chained rather than joined so no worker sits blocked on it
+        return plugin.getTaskManager().runAsync(() -> setPlayerPermissionLevel(playerUUID, level, executor))
+            .thenCompose(ignored -> {
                 org.bukkit.command.CommandSender sender = plugin.getServer().getConsoleSender();
-                return plugin.getPermissionManager().setPlayerPermissionLevel(playerUUID, level, sender).join();
-            } catch (Exception e) {
+                return plugin.getPermissionManager().setPlayerPermissionLevel(playerUUID, level, sender);
+            })
+            .exceptionally(e -> {
                 plugin.getLogger().warning("Failed to set permission level for player " + playerUUID + ": " + e.getMessage());
                 return false;
-            }
-        });
+            });
     }
 
     public CompletableFuture<Integer> setMultiplePlayersPermissionLevelAsync(List<UUID> playerUUIDs, PermissionManager.PermissionLevel level, String executor) {
-        return CompletableFuture.supplyAsync(() -> {
-            return setMultiplePlayersPermissionLevel(playerUUIDs, level, executor);
-        });
+        return plugin.getTaskManager().supplyAsync(() -> setMultiplePlayersPermissionLevel(playerUUIDs, level, executor));
     }
 
-    public Map<UUID, PermissionManager.PermissionLevel> getAllPlayerStates() {
-        return new HashMap<>(playerStates);
+    /**
+     * Streams every stored state in index order without loading them into memory.
+     * The iterator reads its own snapshot of the index and closes it once exhausted.
+     */
+    public Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> iteratePlayerStates() {
+        // Read-only entries, so handing out the subtype through the wider element type is safe
+        @SuppressWarnings("unchecked")
+        Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> states =
+            (Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>>) (Iterator<?>) iterateStoredStates();
+        return states;
+    }
+
+    /**
+     * Same stream as iteratePlayerStates, with each player's last-seen time: the later of the
+     * indexed value and any sighting not yet saved. Online players are not treated specially.
+     */
+    public Iterator<StoredState> iterateStoredStates() {
+        TreeMap<UUID, PermissionManager.PermissionLevel> changes = new TreeMap<>(INDEX_ORDER);
+        Set<UUID> removals = new HashSet<>();
+        snapshotPending(changes, removals);
+        Map<UUID, Long> seen = new HashMap<>(seenSinceSave);
+
+        PlayerStateIndex snapshot;
+        try {
+            Path path;
+            synchronized (indexLock) {
+                path = indexPath;
+            }
+            snapshot = path != null ? PlayerStateIndex.open(path, ladderNames()) : PlayerStateIndex.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open state index", e);
+        }
+        return new StateIterator(snapshot, changes, removals, seen);
     }
 
     public List<UUID> getPlayersWithPermissionLevel(PermissionManager.PermissionLevel level) {
         List<UUID> result = new ArrayList<>();
-        for (Map.Entry<UUID, PermissionManager.PermissionLevel> entry : playerStates.entrySet()) {
+        Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> iterator = iteratePlayerStates();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, PermissionManager.PermissionLevel> entry = iterator.next();
             if (entry.getValue() == level) {
                 result.add(entry.getKey());
             }
@@ -164,19 +627,46 @@ public class StateManager {
 
     // Utility methods for three-level system
     public boolean hasPlayerState(UUID playerUUID) {
-        return playerStates.containsKey(playerUUID);
+        return lookup(playerUUID).isPresent();
     }
 
     public boolean hasPermissionLevel(UUID playerUUID, PermissionManager.PermissionLevel level) {
-        return playerStates.getOrDefault(playerUUID, PermissionManager.PermissionLevel.PLAYER) == level;
+        return getPlayerPermissionLevel(playerUUID) == level;
     }
 
-    public int getTotalPlayers() {
-        return playerStates.size();
+    public synchronized int getTotalPlayers() {
+        int total = 0;
+        for (int count : levelCounts) {
+            total += count;
+        }
+        return total;
     }
 
-    public int getPlayerCountByLevel(PermissionManager.PermissionLevel level) {
-        return getPlayersWithPermissionLevel(level).size();
+    public synchronized int getPlayerCountByLevel(PermissionManager.PermissionLevel level) {
+        return levelCounts[level.ordinal()];
+    }
+
+    // State store metrics
+    public synchronized int getResidentCount() {
+        return residentStates.size();
+    }
+
+    public int getOfflineCacheSize() {
+        synchronized (offlineCache) {
+            return offlineCache.size();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingChanges.size();
+    }
+
+    public long getIndexReads() {
+        return indexReads.sum();
+    }
+
+    public long getOfflineCacheHits() {
+        return offlineCacheHits.sum();
     }
 
     // Backward compatibility methods
@@ -213,12 +703,236 @@ public class StateManager {
         return getPlayerCountByLevel(PermissionManager.PermissionLevel.OP);
     }
 
-    public void cleanupOldData(int daysOld) {
+    /**
+     * Starts a background sweep removing states neither seen nor changed in daysOld days.
+     * The index is scanned asynchronously in slices of settings.state-sweep-slice records
+     * per tick; returns false if daysOld is not positive or a sweep is already running.
+     */
+    public boolean cleanupOldData(int daysOld) {
+        if (daysOld <= 0) {
+            return false;
+        }
         long cutoffTime = System.currentTimeMillis() - (daysOld * 24L * 60L * 60L * 1000L);
-        int removed = 0;
-        
-        // This would require storing last access time, which we don't currently do
-        // For now, we'll just log that this feature is not implemented
-        plugin.getLogger().info("Data cleanup feature requires additional implementation");
+        CleanupSweep started;
+        synchronized (this) {
+            if (sweep != null) {
+                return false;
+            }
+            started = new CleanupSweep(cutoffTime, Math.max(1, plugin.getConfigManager().getStateSweepSlice()));
+            sweep = started;
+        }
+        started.runTaskTimerAsynchronously(plugin, 1L, 1L);
+        return true;
+    }
+
+    public boolean isCleanupRunning() {
+        return sweep != null;
+    }
+
+    private void startCleanupTask() {
+        if (cleanupTask != null) {
+            cleanupTask.cancel();
+            cleanupTask = null;
+        }
+        int retentionDays = plugin.getConfigManager().getStateRetentionDays();
+        if (retentionDays > 0) {
+            cleanupTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> cleanupOldData(retentionDays),
+                20L * 60L, SWEEP_PERIOD_TICKS);
+        }
+    }
+
+    /**
+     * Removes a state found stale by the sweep unless the player came back or it changed meanwhile
+     */
+    private boolean removeStale(UUID playerUUID) {
+        return withState(playerUUID, previous -> {
+            if (residentStates.containsKey(playerUUID) || pendingChanges.containsKey(playerUUID)
+                || seenSinceSave.containsKey(playerUUID) || !previous.isPresent()) {
+                return false;
+            }
+            pendingChanges.put(playerUUID, NO_STATE);
+            // Stamped like removePlayerState, so a peer record older than the removal is ignored
+            changedSinceSave.put(playerUUID, System.currentTimeMillis());
+            synchronized (offlineCache) {
+                offlineCache.remove(playerUUID);
+            }
+            levelCounts[previous.get().ordinal()]--;
+            return true;
+        });
+    }
+
+    /**
+     * Walks the index in key order a slice at a time. The position is kept as the last
+     * visited UUID, so index generations swapped in by saves between slices are fine.
+     */
+    private final class CleanupSweep extends BukkitRunnable {
+        private final long cutoffTime;
+        private final int sliceSize;
+        private boolean started;
+        private long lastMost;
+        private long lastLeast;
+        private int scanned;
+        private int removed;
+
+        private CleanupSweep(long cutoffTime, int sliceSize) {
+            this.cutoffTime = cutoffTime;
+            this.sliceSize = sliceSize;
+        }
+
+        // Async repeating tasks may overlap when a slice outlasts a tick, so slices are serialized
+        @Override
+        public synchronized void run() {
+            if (isCancelled()) {
+                return;
+            }
+            List<UUID> stale = new ArrayList<>();
+            boolean finished = true;
+            try {
+                synchronized (indexLock) {
+                    PlayerStateIndex.Cursor cursor = index.cursor(started ? index.position(lastMost, lastLeast) : 0);
+                    int read = 0;
+                    while (cursor.next()) {
+                        if (started && PlayerStateIndex.compare(cursor.getMostSigBits(), cursor.getLeastSigBits(), lastMost, lastLeast) <= 0) {
+                            continue;
+                        }
+                        if (Math.max(cursor.getLastSeen(), cursor.getLastChanged()) < cutoffTime) {
+                            stale.add(new UUID(cursor.getMostSigBits(), cursor.getLeastSigBits()));
+                        }
+                        lastMost = cursor.getMostSigBits();
+                        lastLeast = cursor.getLeastSigBits();
+                        started = true;
+                        if (++read >= sliceSize) {
+                            finished = false;
+                            break;
+                        }
+                    }
+                    scanned += read;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Player state cleanup stopped early", e);
+            }
+
+            for (UUID uuid : stale) {
+                if (removeStale(uuid)) {
+                    removed++;
+                }
+            }
+
+            if (finished) {
+                cancel();
+                sweep = null;
+                plugin.getLogger().info("State cleanup scanned " + scanned + " entries, removed " + removed + " stale entries");
+                if (removed > 0) {
+                    saveStates(false);
+                }
+            }
+        }
+    }
+
+    public static final class StoredState extends AbstractMap.SimpleImmutableEntry<UUID, PermissionManager.PermissionLevel> {
+        private static final long serialVersionUID = 1L;
+
+        private final long lastSeen;
+
+        private StoredState(UUID playerUUID, PermissionManager.PermissionLevel level, long lastSeen) {
+            super(playerUUID, level);
+            this.lastSeen = lastSeen;
+        }
+
+        /**
+         * Millisecond timestamp of the last sighting, 0 when unknown
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+
+    /**
+     * Merges a sorted index snapshot with a sorted snapshot of pending changes
+     */
+    private static final class StateIterator implements Iterator<StoredState> {
+        private final PlayerStateIndex snapshot;
+        private final PlayerStateIndex.Cursor cursor;
+        private final Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> pending;
+        private final Set<UUID> removals;
+        private final Map<UUID, Long> seen;
+        private Map.Entry<UUID, PermissionManager.PermissionLevel> change;
+        private StoredState next;
+        private boolean hasRecord;
+
+        private StateIterator(PlayerStateIndex snapshot, TreeMap<UUID, PermissionManager.PermissionLevel> changes,
+                              Set<UUID> removals, Map<UUID, Long> seen) {
+            this.snapshot = snapshot;
+            this.cursor = snapshot.cursor();
+            this.pending = changes.entrySet().iterator();
+            this.removals = removals;
+            this.seen = seen;
+            this.change = pending.hasNext() ? pending.next() : null;
+            this.hasRecord = advanceCursor();
+            this.next = computeNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public StoredState next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            StoredState current = next;
+            next = computeNext();
+            return current;
+        }
+
+        private StoredState computeNext() {
+            while (hasRecord || change != null) {
+                int cmp;
+                if (!hasRecord) {
+                    cmp = 1;
+                } else if (change == null) {
+                    cmp = -1;
+                } else {
+                    cmp = PlayerStateIndex.compare(cursor.getMostSigBits(), cursor.getLeastSigBits(),
+                        change.getKey().getMostSignificantBits(), change.getKey().getLeastSignificantBits());
+                }
+
+                if (cmp < 0) {
+                    UUID uuid = new UUID(cursor.getMostSigBits(), cursor.getLeastSigBits());
+                    int ordinal = cursor.getLevel();
+                    long lastSeen = cursor.getLastSeen();
+                    hasRecord = advanceCursor();
+                    if (ordinal >= 0 && !removals.contains(uuid)) {
+                        PermissionManager.PermissionLevel level = PermissionManager.PermissionLevel.fromOrdinal(ordinal);
+                        return new StoredState(uuid, level, Math.max(lastSeen, seen.getOrDefault(uuid, 0L)));
+                    }
+                } else {
+                    Map.Entry<UUID, PermissionManager.PermissionLevel> current = change;
+                    long lastSeen = 0L;
+                    if (cmp == 0) {
+                        lastSeen = cursor.getLastSeen();
+                        hasRecord = advanceCursor();
+                    }
+                    change = pending.hasNext() ? pending.next() : null;
+                    return new StoredState(current.getKey(), current.getValue(),
+                        Math.max(lastSeen, seen.getOrDefault(current.getKey(), 0L)));
+                }
+            }
+            return null;
+        }
+
+        private boolean advanceCursor() {
+            try {
+                if (cursor.next()) {
+                    return true;
+                }
+                snapshot.close();
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read state index", e);
+            }
+        }
     }
 }
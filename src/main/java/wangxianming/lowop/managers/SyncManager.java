@@ -0,0 +1,191 @@
+package wangxianming.lowop.managers;
+
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.FileChangeTransport;
+import wangxianming.lowop.utils.LevelContext;
+import wangxianming.lowop.utils.PluginMessageTransport;
+import wangxianming.lowop.utils.StateChangeRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Propagates level changes between servers that share players. Every change this server
+ * applies is published as a compact StateChangeRecord; records from peers update the
+ * matching state slice and drop the player's cached detection, one player at a time, so
+ * peers stay current without a reload or a rejoin. Records for contexts this server does
+ * not hold are ignored, as are records older than the player's last stored change.
+ */
+public class SyncManager {
+
+    /**
+     * Carries encoded records between servers. Delivery is best effort; a record that never
+     * arrives is corrected by the next join detection or reconcile pass.
+     */
+    public interface Transport {
+        /**
+         * Starts delivering records from peers to the receiver, on any thread
+         */
+        void start(Consumer<byte[]> receiver);
+
+        /**
+         * Sends a record to all peers; may be called from any thread
+         */
+        void publish(byte[] record);
+
+        void close();
+    }
+
+    private final LowOP plugin;
+    // Identifies this plugin instance, so records that come back to us are skipped
+    private final long origin;
+    private volatile Transport transport;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    public SyncManager(LowOP plugin) {
+        this.plugin = plugin;
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0L);
+        this.origin = id;
+
+        ConfigManager config = plugin.getConfigManager();
+        if (!config.isSyncEnabled()) {
+            return;
+        }
+        String type = config.getSyncTransport().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "plugin-message":
+                transport = new PluginMessageTransport(plugin);
+                break;
+            case "file":
+                File file = new File(config.getSyncFile());
+                if (!file.isAbsolute()) {
+                    file = new File(plugin.getDataFolder(), config.getSyncFile());
+                }
+                transport = new FileChangeTransport(plugin, file, Math.max(1, config.getSyncPollInterval()));
+                break;
+            default:
+                plugin.getLogger().warning("Unknown sync.transport '" + type + "', cross-server sync is disabled");
+                break;
+        }
+    }
+
+    /**
+     * Starts receiving peer changes; called once the plugin is enabled
+     */
+    public void start() {
+        if (transport == null) {
+            return;
+        }
+        transport.start(this::receive);
+        plugin.getLogger().info("Cross-server sync enabled over " + plugin.getConfigManager().getSyncTransport());
+    }
+
+    /**
+     * Announces a change this server has applied to LuckPerms and stored
+     */
+    public void publish(UUID playerUUID, PermissionManager.PermissionLevel level, LevelContext context) {
+        Transport current = transport;
+        if (current == null) {
+            return;
+        }
+        current.publish(new StateChangeRecord(origin, System.currentTimeMillis(), playerUUID, level.name(), context).encode());
+        published.increment();
+    }
+
+    private void receive(byte[] data) {
+        StateChangeRecord record;
+        try {
+            record = StateChangeRecord.decode(data);
+        } catch (IOException e) {
+            malformed.increment();
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().warning("Dropped change record: " + e.getMessage());
+            }
+            return;
+        }
+        if (record.getOrigin() == origin) {
+            return;
+        }
+        received.increment();
+
+        PermissionManager.PermissionLevel level = plugin.getConfigManager().getLevelLadder().find(record.getLevel());
+        StateManager slice = sliceFor(record.getContext());
+        if (level == null || slice == null) {
+            ignored.increment();
+            return;
+        }
+
+        // Queued behind the player's local changes; records older than the stored change are dropped
+        plugin.getPermissionManager().applyPeerChange(record.getPlayerUUID(), level, slice, record.getTimestamp())
+            .thenAccept(result -> {
+                if (result) {
+                    applied.increment();
+                } else {
+                    ignored.increment();
+                }
+                if (plugin.getConfigManager().isDebugEnabled()) {
+                    plugin.getLogger().info((result ? "Applied" : "Dropped stale") + " peer change " + record);
+                }
+            });
+    }
+
+    /**
+     * The slice holding a context: the server's own, or one of its configured worlds
+     */
+    private StateManager sliceFor(LevelContext context) {
+        StateManager home = plugin.getStateManager();
+        if (context.equals(home.getContext())) {
+            return home;
+        }
+        if (context.getWorld() == null || !Objects.equals(context.getServer(), home.getContext().getServer())) {
+            return null;
+        }
+        return plugin.getContextManager().getSlice(context.getWorld());
+    }
+
+    public void close() {
+        if (transport != null) {
+            transport.close();
+            transport = null;
+        }
+    }
+
+    // Metrics
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    public long getIgnored() {
+        return ignored.sum();
+    }
+
+    public long getMalformed() {
+        return malformed.sum();
+    }
+}
@@ -0,0 +1,180 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import wangxianming.lowop.LowOP;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Owns all of LowOP's threads: one named virtual thread per blocking task (backend
+ * commands, disk I/O, pacing sleeps, waits on the main thread), and a main-thread
+ * dispatcher for Bukkit calls drained once per tick. Virtual threads park instead of
+ * holding a carrier while they wait, so a slow lane such as a bulk apply or a rate-limited
+ * repair can never starve auto-saves, sync polls or selector resolution.
+ */
+public class TaskManager {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000L;
+
+    private final LowOP plugin;
+    private final ExecutorService workers;
+    private final Queue<Runnable> mainThreadQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mainThreadPending = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger peakActiveWorkers = new AtomicInteger();
+    private final LongAdder completedWorkerTasks = new LongAdder();
+    private final AtomicInteger peakMainThreadQueue = new AtomicInteger();
+    private final LongAdder mainThreadExecuted = new LongAdder();
+    private final LongAdder failedTasks = new LongAdder();
+    private final Executor mainThreadExecutor = this::runSync;
+    private final BukkitTask dispatcherTask;
+
+    public TaskManager(LowOP plugin) {
+        this.plugin = plugin;
+        ThreadFactory threadFactory = Thread.ofVirtual()
+            .name("LowOP-Worker-", 1)
+            .uncaughtExceptionHandler((t, e) -> plugin.getLogger().log(Level.SEVERE, "Uncaught exception on " + t.getName(), e))
+            .factory();
+        this.workers = Executors.newThreadPerTaskExecutor(threadFactory);
+        this.dispatcherTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::drainMainThreadQueue, 1L, 1L);
+    }
+
+    /**
+     * Runs blocking work (LuckPerms commands, disk I/O) on a worker thread
+     */
+    public CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {
+                peakActiveWorkers.accumulateAndGet(activeWorkers.incrementAndGet(), Math::max);
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    failedTasks.increment();
+                    future.completeExceptionally(e);
+                } finally {
+                    activeWorkers.decrementAndGet();
+                    completedWorkerTasks.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Runs a Bukkit call on the main thread: immediately when already there,
+     * otherwise on the next tick
+     */
+    public void runSync(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+            return;
+        }
+        mainThreadQueue.add(task);
+        peakMainThreadQueue.accumulateAndGet(mainThreadPending.incrementAndGet(), Math::max);
+    }
+
+    public <T> CompletableFuture<T> supplySync(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, mainThreadExecutor);
+    }
+
+    /**
+     * Executor for continuations that touch Bukkit, e.g. thenAcceptAsync(..., mainThread())
+     */
+    public Executor mainThread() {
+        return mainThreadExecutor;
+    }
+
+    private void drainMainThreadQueue() {
+        // Only run what was queued before this tick; tasks queued by these tasks wait a tick
+        int budget = mainThreadPending.get();
+        Runnable task;
+        while (budget-- > 0 && (task = mainThreadQueue.poll()) != null) {
+            mainThreadPending.decrementAndGet();
+            try {
+                task.run();
+                mainThreadExecuted.increment();
+            } catch (Throwable e) {
+                failedTasks.increment();
+                plugin.getLogger().log(Level.SEVERE, "Main thread task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting work and waits for in-flight tasks. Called from onDisable on the
+     * main thread, which keeps draining the dispatcher meanwhile so workers waiting on a
+     * Bukkit call can finish instead of deadlocking.
+     */
+    public void shutdown() {
+        dispatcherTask.cancel();
+        workers.shutdown();
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        try {
+            while (!workers.isTerminated() && System.currentTimeMillis() < deadline) {
+                drainMainThreadQueue();
+                workers.awaitTermination(10L, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainMainThreadQueue();
+
+        if (!workers.isTerminated()) {
+            // Tasks start on their own thread at once, so there is never a queue to drop
+            workers.shutdownNow();
+            plugin.getLogger().warning("Worker tasks did not finish within " + SHUTDOWN_TIMEOUT_MILLIS
+                + "ms; interrupted " + activeWorkers.get() + " running tasks");
+        }
+        int unrun = mainThreadPending.getAndSet(0);
+        mainThreadQueue.clear();
+        if (unrun > 0) {
+            plugin.getLogger().warning("Dropped " + unrun + " main thread tasks queued during shutdown");
+        }
+    }
+
+    // Metrics; every task gets its own thread, so there is no worker queue to report
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    public int getPeakActiveWorkers() {
+        return peakActiveWorkers.get();
+    }
+
+    public long getCompletedWorkerTasks() {
+        return completedWorkerTasks.sum();
+    }
+
+    public int getMainThreadQueueDepth() {
+        return mainThreadPending.get();
+    }
+
+    public int getPeakMainThreadQueueDepth() {
+        return peakMainThreadQueue.get();
+    }
+
+    public long getMainThreadExecuted() {
+        return mainThreadExecuted.sum();
+    }
+
+    public long getFailedTasks() {
+        return failedTasks.sum();
+    }
+}
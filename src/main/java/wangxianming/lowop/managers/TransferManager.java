@@ -0,0 +1,378 @@
+package wangxianming.lowop.managers;
+
+import org.bukkit.command.CommandSender;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.utils.DurableFile;
+import wangxianming.lowop.utils.LevelLadder;
+import wangxianming.lowop.utils.ValidationUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Moves permission levels between servers as CSV or JSONL files in the plugin's exports folder.
+ * Export streams the state store straight to disk; import parses lazily, resolves names
+ * in batches, skips players already at the requested level and feeds the rest through
+ * PermissionManager's bounded bulk pipeline.
+ */
+public class TransferManager {
+
+    // Names without a UUID are resolved together through the selector's name cache and backend lookup
+    private static final int RESOLVE_BATCH = 64;
+    // Import and export only touch files in this folder, never the plugin's own data
+    private static final String EXPORT_DIR = "exports";
+    // Base names of the files LowOP keeps in its data folder
+    private static final List<String> OWNED_NAMES = Arrays.asList(
+        "player_states", "config", "messages", "audit_log", "outbox", "expiries");
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*\"([^\"]*)\"");
+
+    public enum Format {
+        CSV, JSONL;
+
+        public static Format of(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") ? JSONL : CSV;
+        }
+    }
+
+    public static class ImportReport {
+        private final AtomicInteger read = new AtomicInteger();
+        private final AtomicInteger invalid = new AtomicInteger();
+        private final AtomicInteger unresolved = new AtomicInteger();
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger applied = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        public int getRead() {
+            return read.get();
+        }
+
+        public int getInvalid() {
+            return invalid.get();
+        }
+
+        public int getUnresolved() {
+            return unresolved.get();
+        }
+
+        public int getUnchanged() {
+            return unchanged.get();
+        }
+
+        public int getApplied() {
+            return applied.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+    }
+
+    private static final class Row {
+        private final String name;
+        private final UUID playerUUID;
+        private final PermissionManager.PermissionLevel level;
+
+        private Row(String name, UUID playerUUID, PermissionManager.PermissionLevel level) {
+            this.name = name;
+            this.playerUUID = playerUUID;
+            this.level = level;
+        }
+    }
+
+    // Marker returned by the CSV parser for the header row
+    private static final Row HEADER_ROW = new Row(null, null, null);
+
+    private final LowOP plugin;
+
+    public TransferManager(LowOP plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Resolves a .csv or .jsonl name inside the plugin's exports folder; null for unsafe
+     * paths, other extensions and names that could be mistaken for the plugin's own data
+     */
+    public File resolveFile(String path) {
+        if (!ValidationUtils.isSafeFilePath(path)) {
+            return null;
+        }
+        String lower = path.toLowerCase(Locale.ROOT);
+        if (!lower.endsWith(".csv") && !lower.endsWith(".jsonl")) {
+            return null;
+        }
+        String baseName = new File(lower).getName();
+        baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+        for (String owned : OWNED_NAMES) {
+            if (baseName.startsWith(owned)) {
+                return null;
+            }
+        }
+
+        File directory = new File(plugin.getDataFolder(), EXPORT_DIR);
+        File file = new File(directory, path);
+        try {
+            // Catches symlinks that lead out of the exports folder
+            if (!file.getCanonicalPath().startsWith(directory.getCanonicalPath() + File.separator)) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Writes every stored level to the file and returns the number of players written
+     */
+    public CompletableFuture<Integer> exportStates(File file) {
+        Format format = Format.of(file);
+        return plugin.getTaskManager().supplyAsync(() -> {
+            int[] written = new int[1];
+            try {
+                // Admins open these files, so no checksum footer
+                DurableFile.write(file, out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    if (format == Format.CSV) {
+                        writer.write("uuid,name,level\n");
+                    }
+                    // Names come from memory since Bukkit must not be called from a worker;
+                    // import prefers the UUID, so an unknown name is written empty
+                    Map<UUID, String> names = plugin.getSelectorManager().getKnownNames();
+                    Iterator<Map.Entry<UUID, PermissionManager.PermissionLevel>> states = plugin.getStateManager().iteratePlayerStates();
+                    while (states.hasNext()) {
+                        Map.Entry<UUID, PermissionManager.PermissionLevel> entry = states.next();
+                        writer.write(formatRow(format, entry.getKey(), names.getOrDefault(entry.getKey(), ""), entry.getValue()));
+                        written[0]++;
+                    }
+                    writer.flush();
+                }, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return written[0];
+        });
+    }
+
+    private static String formatRow(Format format, UUID playerUUID, String name, PermissionManager.PermissionLevel level) {
+        if (format == Format.JSONL) {
+            return "{\"uuid\":\"" + playerUUID + "\",\"name\":\"" + name + "\",\"level\":\"" + level.name() + "\"}\n";
+        }
+        return playerUUID + "," + name + "," + level.name() + "\n";
+    }
+
+    /**
+     * Applies the levels in the file. Completes once every change has been attempted.
+     */
+    public CompletableFuture<ImportReport> importStates(File file, CommandSender executor) {
+        ImportReport report = new ImportReport();
+        return plugin.getTaskManager().supplyAsync(() -> {
+            try {
+                return new ImportCursor(file, report);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).thenCompose(cursor -> plugin.getPermissionManager().applyLevelChanges(cursor, executor, (change, success) -> {
+            if (success) {
+                report.applied.incrementAndGet();
+            } else {
+                report.failed.incrementAndGet();
+            }
+        }).whenComplete((ignored, error) -> cursor.close())).thenApply(ignored -> report);
+    }
+
+    /**
+     * Lazily turns file rows into changes: parse a batch, resolve its names, drop rows
+     * already at the requested level, and hand out what is left
+     */
+    private final class ImportCursor implements Iterator<PermissionManager.LevelChange> {
+        private final BufferedReader reader;
+        private final Format format;
+        private final ImportReport report;
+        private final Deque<PermissionManager.LevelChange> ready = new ArrayDeque<>();
+        private Map<String, Integer> columns;
+        private boolean eof;
+
+        private ImportCursor(File file, ImportReport report) throws IOException {
+            this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+            this.format = Format.of(file);
+            this.report = report;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (ready.isEmpty() && !eof) {
+                    fillBatch();
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            if (ready.isEmpty()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public PermissionManager.LevelChange next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ready.poll();
+        }
+
+        private void fillBatch() throws IOException {
+            List<Row> rows = new ArrayList<>(RESOLVE_BATCH);
+            String line;
+            while (rows.size() < RESOLVE_BATCH && (line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Row row = format == Format.JSONL ? parseJson(line) : parseCsv(line);
+                if (row == HEADER_ROW) {
+                    continue;
+                }
+                report.read.incrementAndGet();
+                if (row == null) {
+                    report.invalid.incrementAndGet();
+                } else {
+                    rows.add(row);
+                }
+            }
+            if (rows.size() < RESOLVE_BATCH) {
+                eof = true;
+            }
+
+            List<String> names = new ArrayList<>();
+            for (Row row : rows) {
+                if (row.playerUUID == null) {
+                    names.add(row.name);
+                }
+            }
+            // The cursor is advanced on a worker, so waiting for the backend here is fine
+            Map<String, UUID> resolved = names.isEmpty() ? Map.of() : plugin.getSelectorManager().lookupNames(names).join();
+
+            StateManager stateManager = plugin.getStateManager();
+            for (Row row : rows) {
+                UUID playerUUID = row.playerUUID != null ? row.playerUUID : resolved.get(row.name.toLowerCase(Locale.ROOT));
+                if (playerUUID == null) {
+                    report.unresolved.incrementAndGet();
+                    continue;
+                }
+                PermissionManager.PermissionLevel current = stateManager.getPlayerPermissionLevel(playerUUID);
+                if (current == row.level) {
+                    report.unchanged.incrementAndGet();
+                    continue;
+                }
+                ready.add(new PermissionManager.LevelChange(playerUUID, current, row.level));
+            }
+        }
+
+        /**
+         * Columns are taken from a header row when there is one (any field named "level");
+         * otherwise each field is recognised by shape: UUID, level keyword or player name
+         */
+        private Row parseCsv(String line) {
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim().replace("\"", "");
+            }
+            if (columns == null && report.read.get() == 0) {
+                Map<String, Integer> header = new HashMap<>();
+                for (int i = 0; i < fields.length; i++) {
+                    header.put(fields[i].toLowerCase(Locale.ROOT), i);
+                }
+                if (header.containsKey("level")) {
+                    columns = header;
+                    return HEADER_ROW;
+                }
+            }
+
+            if (columns != null) {
+                return toRow(field(fields, "name"), field(fields, "uuid"), field(fields, "level"));
+            }
+            String name = null;
+            String uuid = null;
+            String level = null;
+            for (String field : fields) {
+                if (ValidationUtils.isValidUUID(field)) {
+                    uuid = field;
+                } else if (parseLevel(field) != null) {
+                    level = field;
+                } else if (!field.isEmpty()) {
+                    name = field;
+                }
+            }
+            return toRow(name, uuid, level);
+        }
+
+        private String field(String[] fields, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < fields.length ? fields[index] : null;
+        }
+
+        private Row parseJson(String line) {
+            Map<String, String> values = new HashMap<>();
+            Matcher matcher = JSON_FIELD.matcher(line);
+            while (matcher.find()) {
+                values.put(matcher.group(1).toLowerCase(Locale.ROOT), matcher.group(2));
+            }
+            return toRow(values.get("name"), values.get("uuid"), values.get("level"));
+        }
+
+        private Row toRow(String name, String uuid, String level) {
+            PermissionManager.PermissionLevel parsed = parseLevel(level);
+            if (parsed == null) {
+                return null;
+            }
+            if (uuid != null && !uuid.isEmpty()) {
+                if (!ValidationUtils.isValidUUID(uuid)) {
+                    return null;
+                }
+                return new Row(name, UUID.fromString(uuid), parsed);
+            }
+            if (name == null || !ValidationUtils.isValidUsername(name)) {
+                return null;
+            }
+            return new Row(name, null, parsed);
+        }
+
+        private void close() {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // Read-only; nothing to lose
+            }
+        }
+    }
+
+    private static PermissionManager.PermissionLevel parseLevel(String level) {
+        return LevelLadder.current().find(level);
+    }
+}
@@ -0,0 +1,101 @@
+package wangxianming.lowop.utils;
+
+/**
+ * 熔断器：连续失败达到阈值后断开，在冷却期内直接拒绝请求
+ * 冷却期结束后进入半开状态，只放行一个探测请求，成功则闭合，失败则重新断开
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private volatile int failureThreshold;
+    private volatile long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long trips;
+    private long rejections;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        configure(failureThreshold, openMillis);
+    }
+
+    public void configure(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0L, openMillis);
+    }
+
+    /**
+     * 是否允许发起请求；半开状态下同一时间只有一个探测请求
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        rejections++;
+        return false;
+    }
+
+    /**
+     * 记录成功，返回熔断器是否因此从断开恢复为闭合
+     */
+    public synchronized boolean recordSuccess() {
+        consecutiveFailures = 0;
+        boolean recovered = state != State.CLOSED;
+        state = State.CLOSED;
+        probeInFlight = false;
+        return recovered;
+    }
+
+    /**
+     * 记录失败，返回熔断器是否因此断开
+     */
+    public synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+            trips++;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * 距离允许探测还需等待的毫秒数，未断开时为 0
+     */
+    public synchronized long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0L;
+        }
+        return Math.max(0L, openedAt + openMillis - System.currentTimeMillis());
+    }
+
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,332 @@
+package wangxianming.lowop.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * config.yml 在某次加载时的不可变快照，加载或重载时整体构建一次，之后只做字段读取
+ * 重载时由 ConfigManager 原子替换，持有旧快照的调用方看到的始终是一份完整、一致的配置
+ * 数值在构建时做范围检查，超出范围的取值回退为默认值并记入 getProblems()
+ */
+public final class ConfigSnapshot {
+
+    // config.yml 中所有可识别的键（含节名），其余的键在加载时报告为未知
+    private static final Set<String> KNOWN_KEYS = new HashSet<>(Arrays.asList(
+        "settings", "settings.enabled", "settings.debug", "settings.audit-log-enabled",
+        "settings.auto-save-interval", "settings.max-audit-entries", "settings.command-cooldown",
+        "settings.rate-limit", "settings.batch-max-players", "settings.summary-page-size",
+        "settings.detection-cache-ttl", "settings.detect-chunk-size", "settings.state-cache-size",
+        "settings.state-retention-days", "settings.state-sweep-slice",
+        "rate-limit", "rate-limit.backend-burst", "rate-limit.backend-refill-per-second",
+        "rate-limit.backend-max-wait", "rate-limit.batch-burst", "rate-limit.batch-refill-per-second",
+        "reconcile", "reconcile.enabled", "reconcile.interval-minutes", "reconcile.slice-millis",
+        "reconcile.max-lookups", "reconcile.repairs-per-minute",
+        "sync", "sync.enabled", "sync.transport", "sync.file", "sync.poll-interval-ticks",
+        "permission-groups", "permission-groups.levels", "permission-groups.clear-existing",
+        "permission-groups.player-group", "permission-groups.lowop-group", "permission-groups.op-group",
+        "context", "context.server", "context.worlds",
+        "messages",
+        "audit", "audit.enabled", "audit.log-file", "audit.max-file-size", "audit.retention-days",
+        "audit.log-operations",
+        "health", "health.enabled", "health.check-interval", "health.max-memory-usage", "health.min-disk-space",
+        "database", "database.type", "database.mysql",
+        "advanced", "advanced.async-operations", "advanced.max-retries",
+        "advanced.retry-delay", "advanced.breaker-failure-threshold", "advanced.breaker-open-seconds",
+        "advanced.bulk-concurrency", "advanced.outbox-replay-concurrency", "advanced.validate-groups",
+        "advanced.check-on-join"
+    ));
+    // 内容不固定的节，其下的键都视为已知
+    private static final List<String> OPEN_SECTIONS = Arrays.asList("messages", "database.mysql");
+
+    private final boolean debug;
+    private final boolean auditLogEnabled;
+    private final int autoSaveInterval;
+    private final int maxAuditEntries;
+    private final int rateLimit;
+    private final double commandCooldown;
+    private final int summaryPageSize;
+    private final int detectionCacheTtl;
+    private final int detectChunkSize;
+    private final int stateCacheSize;
+    private final int stateRetentionDays;
+    private final int stateSweepSlice;
+
+    private final int backendRateBurst;
+    private final double backendRateRefill;
+    private final long backendRateMaxWait;
+    private final int batchRateBurst;
+    private final double batchRateRefill;
+
+    private final boolean reconcileEnabled;
+    private final int reconcileIntervalMinutes;
+    private final int reconcileSliceMillis;
+    private final int reconcileMaxLookups;
+    private final int reconcileRepairsPerMinute;
+
+    private final String contextServer;
+    private final List<String> contextWorlds;
+
+    private final boolean syncEnabled;
+    private final String syncTransport;
+    private final String syncFile;
+    private final int syncPollInterval;
+
+    private final int maxRetries;
+    private final long retryDelay;
+    private final int bulkConcurrency;
+    private final int outboxReplayConcurrency;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMillis;
+
+    // 超出范围的取值与未知的键，加载时由 ConfigManager 报告
+    private final List<String> problems;
+
+    private ConfigSnapshot(ConfigurationSection config) {
+        List<String> found = new ArrayList<>();
+        this.debug = config.getBoolean("settings.debug", false);
+        this.auditLogEnabled = config.getBoolean("settings.audit-log-enabled", true);
+        this.autoSaveInterval = intValue(config, found, "settings.auto-save-interval", 300, 0, 86400);
+        this.maxAuditEntries = intValue(config, found, "settings.max-audit-entries", 1000, 1, 1000000);
+        this.rateLimit = intValue(config, found, "settings.rate-limit", 3, 1, 1000);
+        this.commandCooldown = doubleValue(config, found, "settings.command-cooldown", 3, 0, 3600);
+        this.summaryPageSize = intValue(config, found, "settings.summary-page-size", 8, 1, 100);
+        this.detectionCacheTtl = intValue(config, found, "settings.detection-cache-ttl", 300, 0, 86400);
+        this.detectChunkSize = intValue(config, found, "settings.detect-chunk-size", 100, 1, 10000);
+        this.stateCacheSize = intValue(config, found, "settings.state-cache-size", 10000, 16, 10000000);
+        this.stateRetentionDays = intValue(config, found, "settings.state-retention-days", 0, 0, 36500);
+        this.stateSweepSlice = intValue(config, found, "settings.state-sweep-slice", 500, 1, 100000);
+
+        this.backendRateBurst = intValue(config, found, "rate-limit.backend-burst", 20, 1, 10000);
+        this.backendRateRefill = doubleValue(config, found, "rate-limit.backend-refill-per-second", 10, 0.01, 10000);
+        this.backendRateMaxWait = intValue(config, found, "rate-limit.backend-max-wait", 5000, 0, 600000);
+        this.batchRateBurst = intValue(config, found, "rate-limit.batch-burst", 50, 1, 100000);
+        this.batchRateRefill = doubleValue(config, found, "rate-limit.batch-refill-per-second", 2, 0.01, 10000);
+
+        this.reconcileEnabled = config.getBoolean("reconcile.enabled", true);
+        this.reconcileIntervalMinutes = intValue(config, found, "reconcile.interval-minutes", 60, 0, 10080);
+        this.reconcileSliceMillis = intValue(config, found, "reconcile.slice-millis", 2, 1, 50);
+        this.reconcileMaxLookups = intValue(config, found, "reconcile.max-lookups", 8, 1, 256);
+        this.reconcileRepairsPerMinute = intValue(config, found, "reconcile.repairs-per-minute", 60, 1, 100000);
+
+        this.contextServer = config.getString("context.server", "");
+        this.contextWorlds = Collections.unmodifiableList(config.getStringList("context.worlds"));
+
+        this.syncEnabled = config.getBoolean("sync.enabled", false);
+        this.syncTransport = config.getString("sync.transport", "plugin-message");
+        this.syncFile = config.getString("sync.file", "../../sync/lowop-changes.log");
+        this.syncPollInterval = intValue(config, found, "sync.poll-interval-ticks", 10, 1, 1200);
+
+        this.maxRetries = intValue(config, found, "advanced.max-retries", 3, 0, 10);
+        this.retryDelay = intValue(config, found, "advanced.retry-delay", 1000, 0, 60000);
+        this.bulkConcurrency = intValue(config, found, "advanced.bulk-concurrency", 4, 1, 64);
+        this.outboxReplayConcurrency = intValue(config, found, "advanced.outbox-replay-concurrency", 4, 1, 64);
+        this.breakerFailureThreshold = intValue(config, found, "advanced.breaker-failure-threshold", 5, 1, 1000);
+        this.breakerOpenMillis = intValue(config, found, "advanced.breaker-open-seconds", 30, 1, 3600) * 1000L;
+
+        for (String key : config.getKeys(true)) {
+            if (!isKnownKey(key)) {
+                found.add("Unknown key '" + key + "' is ignored");
+            }
+        }
+        this.problems = Collections.unmodifiableList(found);
+    }
+
+    /**
+     * 从已加载的配置读取全部取值，缺失的键使用默认值
+     */
+    public static ConfigSnapshot read(ConfigurationSection config) {
+        return new ConfigSnapshot(config);
+    }
+
+    private static int intValue(ConfigurationSection config, List<String> found, String path, int def, int min, int max) {
+        int value = config.getInt(path, def);
+        int checked = ValidationUtils.validateConfigRangeWithDefault(value, min, max, def, path);
+        if (checked != value) {
+            found.add(path + " = " + value + " is outside " + min + ".." + max + ", using " + def);
+        }
+        return checked;
+    }
+
+    private static double doubleValue(ConfigurationSection config, List<String> found, String path, double def, double min, double max) {
+        double value = config.getDouble(path, def);
+        if (value < min || value > max || Double.isNaN(value)) {
+            found.add(path + " = " + value + " is outside " + min + ".." + max + ", using " + def);
+            return def;
+        }
+        return value;
+    }
+
+    private static boolean isKnownKey(String key) {
+        if (KNOWN_KEYS.contains(key)) {
+            return true;
+        }
+        for (String section : OPEN_SECTIONS) {
+            if (key.startsWith(section + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 超出范围而被替换为默认值的设置，以及拼写错误等未知的键
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * 与另一份快照相比，只能在重启后生效的设置（上下文与跨服同步）是否不同
+     */
+    public boolean needsRestart(ConfigSnapshot other) {
+        return !Objects.equals(contextServer, other.contextServer)
+            || !contextWorlds.equals(other.contextWorlds)
+            || syncEnabled != other.syncEnabled
+            || !Objects.equals(syncTransport, other.syncTransport)
+            || !Objects.equals(syncFile, other.syncFile)
+            || syncPollInterval != other.syncPollInterval;
+    }
+
+    public boolean isDebugEnabled() {
+        return debug;
+    }
+
+    public boolean isAuditLogEnabled() {
+        return auditLogEnabled;
+    }
+
+    public int getAutoSaveInterval() {
+        return autoSaveInterval;
+    }
+
+    public int getMaxAuditEntries() {
+        return maxAuditEntries;
+    }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    public double getCommandCooldown() {
+        return commandCooldown;
+    }
+
+    public int getSummaryPageSize() {
+        return summaryPageSize;
+    }
+
+    public int getDetectionCacheTtl() {
+        return detectionCacheTtl;
+    }
+
+    public int getDetectChunkSize() {
+        return detectChunkSize;
+    }
+
+    public int getStateCacheSize() {
+        return stateCacheSize;
+    }
+
+    public int getStateRetentionDays() {
+        return stateRetentionDays;
+    }
+
+    public int getStateSweepSlice() {
+        return stateSweepSlice;
+    }
+
+    public int getBackendRateBurst() {
+        return backendRateBurst;
+    }
+
+    public double getBackendRateRefill() {
+        return backendRateRefill;
+    }
+
+    public long getBackendRateMaxWait() {
+        return backendRateMaxWait;
+    }
+
+    public int getBatchRateBurst() {
+        return batchRateBurst;
+    }
+
+    public double getBatchRateRefill() {
+        return batchRateRefill;
+    }
+
+    public boolean isReconcileEnabled() {
+        return reconcileEnabled;
+    }
+
+    public int getReconcileIntervalMinutes() {
+        return reconcileIntervalMinutes;
+    }
+
+    public int getReconcileSliceMillis() {
+        return reconcileSliceMillis;
+    }
+
+    public int getReconcileMaxLookups() {
+        return reconcileMaxLookups;
+    }
+
+    public int getReconcileRepairsPerMinute() {
+        return reconcileRepairsPerMinute;
+    }
+
+    public String getContextServer() {
+        return contextServer;
+    }
+
+    public List<String> getContextWorlds() {
+        return contextWorlds;
+    }
+
+    public boolean isSyncEnabled() {
+        return syncEnabled;
+    }
+
+    public String getSyncTransport() {
+        return syncTransport;
+    }
+
+    public String getSyncFile() {
+        return syncFile;
+    }
+
+    public int getSyncPollInterval() {
+        return syncPollInterval;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    public int getBulkConcurrency() {
+        return bulkConcurrency;
+    }
+
+    public int getOutboxReplayConcurrency() {
+        return outboxReplayConcurrency;
+    }
+
+    public int getBreakerFailureThreshold() {
+        return breakerFailureThreshold;
+    }
+
+    public long getBreakerOpenMillis() {
+        return breakerOpenMillis;
+    }
+}
@@ -0,0 +1,288 @@
+package wangxianming.lowop.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 崩溃一致的文件写入工具：写临时文件、fsync、原子重命名，并在末尾追加 CRC32 校验行
+ * 每次写入前会把上一份校验通过的文件保留为 &lt;name&gt;.1，读取时校验失败会回退到该版本
+ * 校验行是 YAML 注释，因此文本文件仍可被手工查看；二进制文件同样适用
+ */
+public final class DurableFile {
+
+    private static final String FOOTER_PREFIX = "# lowop-crc32: ";
+    private static final int MAX_FOOTER_LENGTH = 64;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREVIOUS_SUFFIX = ".1";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+    // 同一文件的写入串行执行，否则并发保存会争用同一个临时文件
+    private static final ConcurrentMap<Path, Object> WRITE_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * 以流的方式写出文件内容，避免大文件先拼成一个字节数组
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private DurableFile() {
+    }
+
+    /**
+     * 写入带校验的内容
+     */
+    public static void write(File file, String content) throws IOException {
+        write(file, content, true);
+    }
+
+    /**
+     * 原子写入；checksum 为 false 时不追加校验行（用于管理员会手工编辑的文件）
+     */
+    public static void write(File file, String content, boolean checksum) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        write(file, out -> out.write(body), checksum);
+    }
+
+    /**
+     * 流式写入带校验的内容
+     */
+    public static void write(File file, Content content) throws IOException {
+        write(file, content, true);
+    }
+
+    public static void write(File file, Content content, boolean checksum) throws IOException {
+        Path target = file.toPath();
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        synchronized (WRITE_LOCKS.computeIfAbsent(target.toAbsolutePath(), path -> new Object())) {
+            writeLocked(target, directory, content, checksum);
+        }
+    }
+
+    private static void writeLocked(Path target, Path directory, Content content, boolean checksum) throws IOException {
+        Path temp = sibling(target, TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            CRC32 crc = new CRC32();
+            LastByteOutputStream body = new LastByteOutputStream(new CheckedOutputStream(raw, crc));
+            content.writeTo(body);
+
+            if (checksum) {
+                // 校验行必须独占最后一行
+                if (body.written && body.lastByte != '\n') {
+                    body.write('\n');
+                }
+                raw.write((FOOTER_PREFIX + String.format("%08x", crc.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            raw.flush();
+            channel.force(true);
+        }
+
+        // 只轮换校验通过的旧文件，避免损坏的文件覆盖最后一个好版本
+        if (checksum && Files.exists(target) && isValid(target, isMigrating(target))) {
+            Files.move(target, sibling(target, PREVIOUS_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+    }
+
+    /**
+     * 读取最新的有效版本并去掉校验行；文件及其上一版本都不存在时返回 null
+     * 没有校验行的旧文件只在尚无上一版本且文件非空时视为有效，仅用于一次性迁移旧版本数据
+     */
+    public static String read(File file, Logger logger) throws IOException {
+        Path path = resolve(file, logger);
+        if (path == null) {
+            return null;
+        }
+        byte[] data = Files.readAllBytes(path);
+        return new String(data, 0, (int) contentLength(path, data.length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 返回最新的有效版本路径（目标文件或上一版本），不读入内存；都不存在时返回 null
+     */
+    public static Path resolve(File file, Logger logger) throws IOException {
+        Path target = file.toPath();
+        Files.deleteIfExists(sibling(target, TEMP_SUFFIX));
+
+        if (Files.exists(target)) {
+            if (isValid(target, isMigrating(target))) {
+                return target;
+            }
+
+            Path corrupt = sibling(target, CORRUPT_SUFFIX);
+            Files.copy(target, corrupt, StandardCopyOption.REPLACE_EXISTING);
+            logger.severe("Checksum missing or mismatched in " + file.getName() + ", copied it to " + corrupt.getFileName()
+                + " and falling back to the previous generation");
+        }
+
+        Path previous = sibling(target, PREVIOUS_SUFFIX);
+        if (Files.exists(previous)) {
+            if (isValid(previous, false)) {
+                logger.warning("Loaded " + file.getName() + " from previous generation " + previous.getFileName());
+                return previous;
+            }
+            logger.severe("Previous generation " + previous.getFileName() + " is corrupt as well");
+            throw new IOException("No valid generation of " + file.getName());
+        }
+
+        if (Files.exists(target)) {
+            throw new IOException("No valid generation of " + file.getName());
+        }
+        return null;
+    }
+
+    /**
+     * 校验行之前的内容长度；没有校验行时为整个文件长度
+     */
+    public static long contentLength(Path path) throws IOException {
+        return contentLength(path, Files.size(path));
+    }
+
+    private static long contentLength(Path path, long size) throws IOException {
+        long footerStart = findFooter(path, size);
+        return footerStart < 0 ? size : footerStart;
+    }
+
+    /**
+     * 没有上一版本的非空文件可能是旧版本写下的数据，此时允许其没有校验行
+     * 一旦写过带校验的版本就会存在 .1，之后缺少校验行（例如末尾丢失或文件被清空）都视为损坏
+     */
+    private static boolean isMigrating(Path target) throws IOException {
+        return !Files.exists(sibling(target, PREVIOUS_SUFFIX)) && Files.size(target) > 0;
+    }
+
+    /**
+     * 流式计算校验，不会把整个文件读入内存；allowLegacy 为 true 时没有校验行的文件也视为有效
+     */
+    private static boolean isValid(Path path, boolean allowLegacy) throws IOException {
+        long size = Files.size(path);
+        long footerStart = findFooter(path, size);
+        if (footerStart < 0) {
+            return allowLegacy;
+        }
+
+        CRC32 crc = new CRC32();
+        String footer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            while (position < footerStart) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), footerStart - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                crc.update(buffer.array(), 0, read);
+                position += read;
+            }
+            footer = readTail(channel, footerStart, size);
+        }
+
+        String expected = footer.substring(FOOTER_PREFIX.length()).trim();
+        return expected.equalsIgnoreCase(String.format("%08x", crc.getValue()));
+    }
+
+    /**
+     * 查找最后一行的校验行起始位置，没有校验行返回 -1
+     */
+    private static long findFooter(Path path, long size) throws IOException {
+        if (size == 0) {
+            return -1;
+        }
+        long tailStart = Math.max(0, size - MAX_FOOTER_LENGTH);
+        String tail;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            tail = readTail(channel, tailStart, size);
+        }
+
+        int end = tail.endsWith("\n") ? tail.length() - 1 : tail.length();
+        int lineStart = tail.lastIndexOf('\n', end - 1) + 1;
+        if (lineStart == 0 && tailStart > 0) {
+            return -1;
+        }
+        if (!tail.startsWith(FOOTER_PREFIX, lineStart)) {
+            return -1;
+        }
+        return tailStart + lineStart;
+    }
+
+    private static String readTail(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static Path sibling(Path target, String suffix) {
+        return target.resolveSibling(target.getFileName() + suffix);
+    }
+
+    /**
+     * 让重命名本身持久化；部分平台（如 Windows）不支持打开目录，忽略即可
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            Logger.getLogger(DurableFile.class.getName()).log(Level.FINEST, "Directory fsync not supported", e);
+        }
+    }
+
+    /**
+     * 记录最后写出的字节，用于判断是否需要补换行
+     */
+    private static final class LastByteOutputStream extends FilterOutputStream {
+        private int lastByte = -1;
+        private boolean written;
+
+        private LastByteOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            lastByte = b & 0xFF;
+            written = true;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.write(b, off, len);
+                lastByte = b[off + len - 1] & 0xFF;
+                written = true;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 由外层负责关闭通道
+            flush();
+        }
+    }
+}
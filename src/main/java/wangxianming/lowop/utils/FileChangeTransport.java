@@ -0,0 +1,128 @@
+package wangxianming.lowop.utils;
+
+import org.bukkit.scheduler.BukkitTask;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.SyncManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * 基于共享文件的本地传输，用于测试和同一主机上的多个服务器
+ * 每条记录以长度前缀追加到文件末尾（写入时持有文件锁），各服务器定期从上次读到的位置继续读取
+ * 文件只增不减，不适合长期运行的生产网络
+ */
+public final class FileChangeTransport implements SyncManager.Transport {
+
+    // 超过该长度的记录视为文件损坏
+    private static final int MAX_RECORD = 4096;
+
+    private final LowOP plugin;
+    private final File file;
+    private final long pollTicks;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile Consumer<byte[]> receiver;
+    private BukkitTask task;
+    // 只由持有 polling 的线程访问
+    private long offset;
+
+    public FileChangeTransport(LowOP plugin, File file, long pollTicks) {
+        this.plugin = plugin;
+        this.file = file;
+        this.pollTicks = pollTicks;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            plugin.getLogger().warning("Could not create " + parent + " for the sync file");
+        }
+        // 只接收启动之后的变更
+        offset = file.length();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
+            if (polling.compareAndSet(false, true)) {
+                plugin.getTaskManager().runAsync(this::poll);
+            }
+        }, pollTicks, pollTicks);
+    }
+
+    @Override
+    public void publish(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = channel.lock();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not append to sync file " + file, e);
+        }
+    }
+
+    private void poll() {
+        try {
+            Consumer<byte[]> current = receiver;
+            if (current == null || !file.exists()) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < offset) {
+                    // 文件被清空或替换，从头读取
+                    offset = 0L;
+                }
+                ByteBuffer header = ByteBuffer.allocate(4);
+                while (offset + 4 <= size) {
+                    header.clear();
+                    channel.read(header, offset);
+                    int length = header.flip().getInt();
+                    if (length <= 0 || length > MAX_RECORD) {
+                        plugin.getLogger().warning("Corrupt record in sync file " + file + ", skipping to its end");
+                        offset = size;
+                        return;
+                    }
+                    if (offset + 4 + length > size) {
+                        // 记录还没写完
+                        return;
+                    }
+                    ByteBuffer record = ByteBuffer.allocate(length);
+                    while (record.hasRemaining()) {
+                        if (channel.read(record, offset + 4 + record.position()) < 0) {
+                            return;
+                        }
+                    }
+                    offset += 4 + length;
+                    current.accept(record.array());
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read sync file " + file, e);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+}
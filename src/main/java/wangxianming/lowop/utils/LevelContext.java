@@ -0,0 +1,136 @@
+package wangxianming.lowop.utils;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * 权限等级生效的上下文，对应 LuckPerms 节点上的 server 与 world 上下文，两者都为空时表示全局
+ * 每个上下文在状态存储中是独立的分片文件，服务器只加载属于自己的分片
+ */
+public final class LevelContext {
+
+    public static final LevelContext GLOBAL = new LevelContext(null, null);
+
+    // 名称会拼进 LuckPerms 命令，只允许不会拆分参数的字符
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    private final String server;
+    private final String world;
+
+    private LevelContext(String server, String world) {
+        this.server = server;
+        this.world = world;
+    }
+
+    /**
+     * 空白的 server 或 world 表示不限；名称含非法字符时抛出 IllegalArgumentException
+     */
+    public static LevelContext of(String server, String world) {
+        String serverName = normalize(server);
+        String worldName = normalize(world);
+        if (serverName == null && worldName == null) {
+            return GLOBAL;
+        }
+        return new LevelContext(serverName, worldName);
+    }
+
+    private static String normalize(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        String trimmed = name.trim();
+        if (!NAME.matcher(trimmed).matches()) {
+            throw new IllegalArgumentException("无效的上下文名称: " + trimmed);
+        }
+        return trimmed;
+    }
+
+    /**
+     * 同一服务器下指定世界的上下文
+     */
+    public LevelContext withWorld(String world) {
+        return of(server, world);
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getWorld() {
+        return world;
+    }
+
+    public boolean isGlobal() {
+        return server == null && world == null;
+    }
+
+    /**
+     * 追加在 LuckPerms parent 命令末尾的上下文参数，例如 " server=creative world=nether"，全局时为空串
+     */
+    public String toCommandArgs() {
+        StringBuilder args = new StringBuilder();
+        if (server != null) {
+            args.append(" server=").append(server);
+        }
+        if (world != null) {
+            args.append(" world=").append(world);
+        }
+        return args.toString();
+    }
+
+    /**
+     * 该上下文的状态分片文件名，全局分片沿用 player_states.idx
+     */
+    public String getFileName() {
+        if (isGlobal()) {
+            return "player_states.idx";
+        }
+        StringBuilder name = new StringBuilder("player_states");
+        if (server != null) {
+            name.append(".server-").append(server.toLowerCase(Locale.ROOT));
+        }
+        if (world != null) {
+            name.append(".world-").append(world.toLowerCase(Locale.ROOT));
+        }
+        return name.append(".idx").toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof LevelContext)) {
+            return false;
+        }
+        LevelContext context = (LevelContext) other;
+        return Objects.equals(server, context.server) && Objects.equals(world, context.world);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(server, world);
+    }
+
+    /**
+     * 例如 server=creative,world=nether；全局为 global
+     */
+    @Override
+    public String toString() {
+        if (isGlobal()) {
+            return "global";
+        }
+        StringBuilder text = new StringBuilder();
+        if (server != null) {
+            text.append("server=").append(server);
+        }
+        if (world != null) {
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append("world=").append(world);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,255 @@
+package wangxianming.lowop.utils;
+
+import wangxianming.lowop.managers.PermissionManager.PermissionLevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 权限等级阶梯，加载配置时编译为不可变的查找表：按级别序号索引的数组，以及预先计算的权限组到级别的映射
+ * PLAYER、LOWOP、OP 为内置等级，序号固定为 0、1、2，其余等级按在配置中出现的顺序依次编号
+ * 阶梯的排列顺序即等级高低（从低到高），玩家同时属于多个组时取最高的一级
+ */
+public final class LevelLadder {
+
+    // 级别序号以单字节存储，且 Byte.MAX_VALUE 被状态表用作"无状态"标记
+    public static final int MAX_LEVELS = 32;
+    private static final Pattern NAME = Pattern.compile("[a-z0-9][a-z0-9_-]*");
+
+    private static volatile LevelLadder current = builtIn("default", "otherop", "op");
+
+    /**
+     * 配置中的一级：名称、对应的 LuckPerms 组和可选的显示名
+     */
+    public static final class Tier {
+        private final String name;
+        private final String group;
+        private final String display;
+
+        public Tier(String name, String group, String display) {
+            this.name = name;
+            this.group = group;
+            this.display = display;
+        }
+    }
+
+    private final PermissionLevel[] levels;
+    private final String[] groups;
+    private final String[] groupNodes;
+    private final String[] displays;
+    private final int[] ranks;
+    private final List<PermissionLevel> ranked;
+    private final Map<String, PermissionLevel> byName;
+    private final Map<String, PermissionLevel> byGroup;
+
+    private LevelLadder(PermissionLevel[] levels, String[] groups, String[] displays, int[] ranks, List<PermissionLevel> ranked) {
+        this.levels = levels;
+        this.groups = groups;
+        this.displays = displays;
+        this.ranks = ranks;
+        this.ranked = Collections.unmodifiableList(ranked);
+        this.groupNodes = new String[levels.length];
+        Map<String, PermissionLevel> names = new HashMap<>();
+        Map<String, PermissionLevel> members = new HashMap<>();
+        for (PermissionLevel level : levels) {
+            names.put(level.name(), level);
+            members.put(groups[level.ordinal()].toLowerCase(Locale.ROOT), level);
+            groupNodes[level.ordinal()] = "group." + groups[level.ordinal()];
+        }
+        this.byName = Collections.unmodifiableMap(names);
+        this.byGroup = Collections.unmodifiableMap(members);
+    }
+
+    /**
+     * 只有三个内置等级的阶梯（旧版配置 permission-groups.*-group）
+     */
+    public static LevelLadder builtIn(String playerGroup, String lowopGroup, String opGroup) {
+        return compile(Arrays.asList(
+            new Tier("player", playerGroup, null),
+            new Tier("lowop", lowopGroup, null),
+            new Tier("op", opGroup, null)));
+    }
+
+    /**
+     * 按从低到高的顺序编译阶梯，配置无效时抛出 IllegalArgumentException
+     * 与当前阶梯同名同序号的级别沿用已有实例
+     */
+    public static LevelLadder compile(List<Tier> tiers) {
+        if (tiers.size() > MAX_LEVELS) {
+            throw new IllegalArgumentException("at most " + MAX_LEVELS + " levels are supported");
+        }
+        PermissionLevel[] levels = new PermissionLevel[tiers.size()];
+        String[] groups = new String[tiers.size()];
+        String[] displays = new String[tiers.size()];
+        int[] ranks = new int[tiers.size()];
+        List<PermissionLevel> ranked = new ArrayList<>(tiers.size());
+        Map<String, String> groupOwners = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        LevelLadder previous = current;
+        int nextOrdinal = 3;
+
+        for (int rank = 0; rank < tiers.size(); rank++) {
+            Tier tier = tiers.get(rank);
+            String key = tier.name == null ? "" : tier.name.trim().toLowerCase(Locale.ROOT);
+            if (!NAME.matcher(key).matches()) {
+                throw new IllegalArgumentException("invalid level name '" + tier.name + "'");
+            }
+            if (tier.group == null || tier.group.trim().isEmpty()) {
+                throw new IllegalArgumentException("level '" + key + "' has no group");
+            }
+            String group = tier.group.trim();
+            String owner = groupOwners.put(group.toLowerCase(Locale.ROOT), key);
+            if (owner != null) {
+                throw new IllegalArgumentException("levels '" + owner + "' and '" + key + "' share group '" + group + "'");
+            }
+
+            PermissionLevel level = builtInLevel(key);
+            if (level == null) {
+                if (!seen.add(PermissionLevel.canonicalName(key))) {
+                    throw new IllegalArgumentException("duplicate level '" + key + "'");
+                }
+                int ordinal = nextOrdinal++;
+                String name = PermissionLevel.canonicalName(key);
+                PermissionLevel existing = previous != null ? previous.get(ordinal) : null;
+                level = existing != null && existing.name().equals(name) ? existing : PermissionLevel.define(name, ordinal);
+            }
+            if (level.ordinal() >= levels.length) {
+                // 序号按内置等级齐全编排，越界说明缺少内置等级
+                throw new IllegalArgumentException("the ladder must contain player, lowop and op");
+            }
+            if (levels[level.ordinal()] != null) {
+                throw new IllegalArgumentException("duplicate level '" + key + "'");
+            }
+            levels[level.ordinal()] = level;
+            groups[level.ordinal()] = group;
+            displays[level.ordinal()] = tier.display == null || tier.display.isEmpty() ? null : tier.display;
+            ranks[level.ordinal()] = rank;
+            ranked.add(level);
+        }
+
+        for (PermissionLevel required : new PermissionLevel[] { PermissionLevel.PLAYER, PermissionLevel.LOWOP, PermissionLevel.OP }) {
+            if (required.ordinal() >= levels.length || levels[required.ordinal()] != required) {
+                throw new IllegalArgumentException("the ladder must contain player, lowop and op");
+            }
+        }
+        if (ranked.get(0) != PermissionLevel.PLAYER) {
+            // 无状态即为 player，LuckPerms 没有任何受管组时也回落到它，所以它必须是最低一级
+            throw new IllegalArgumentException("player must be the lowest level");
+        }
+        return new LevelLadder(levels, groups, displays, ranks, ranked);
+    }
+
+    private static PermissionLevel builtInLevel(String key) {
+        switch (key) {
+            case "player":
+                return PermissionLevel.PLAYER;
+            case "lowop":
+                return PermissionLevel.LOWOP;
+            case "op":
+                return PermissionLevel.OP;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 当前生效的阶梯，配置加载前为内置的三级阶梯
+     */
+    public static LevelLadder current() {
+        return current;
+    }
+
+    public static void install(LevelLadder ladder) {
+        current = ladder;
+    }
+
+    /**
+     * 两个阶梯的级别名称与序号是否完全一致（只有组或显示名不同时可以直接替换）
+     */
+    public boolean hasSameLevels(LevelLadder other) {
+        return Arrays.equals(levels, other.levels);
+    }
+
+    public int size() {
+        return levels.length;
+    }
+
+    /**
+     * 按序号取级别，序号超出范围时返回 null
+     */
+    public PermissionLevel get(int ordinal) {
+        return ordinal >= 0 && ordinal < levels.length ? levels[ordinal] : null;
+    }
+
+    /**
+     * 按名称查找级别，不区分大小写，- 与 _ 等价；未知时返回 null
+     */
+    public PermissionLevel find(String name) {
+        return name == null ? null : byName.get(PermissionLevel.canonicalName(name.trim()));
+    }
+
+    /**
+     * 权限组对应的级别，不区分大小写；不是受管组时返回 null
+     */
+    public PermissionLevel forGroup(String group) {
+        return byGroup.get(group.toLowerCase(Locale.ROOT));
+    }
+
+    public String getGroup(PermissionLevel level) {
+        return groups[level.ordinal()];
+    }
+
+    /**
+     * LuckPerms 为该组授予的权限节点 group.&lt;组名&gt;
+     */
+    public String getGroupNode(PermissionLevel level) {
+        return groupNodes[level.ordinal()];
+    }
+
+    /**
+     * 配置的显示名，未配置时为 null
+     */
+    public String getDisplay(PermissionLevel level) {
+        return displays[level.ordinal()];
+    }
+
+    /**
+     * 在阶梯中的位置，0 为最低
+     */
+    public int getRank(PermissionLevel level) {
+        return ranks[level.ordinal()];
+    }
+
+    /**
+     * 按从低到高排列的全部级别
+     */
+    public List<PermissionLevel> getLevels() {
+        return ranked;
+    }
+
+    /**
+     * 按序号排列的级别名，即状态索引文件中的级别名表
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(levels.length);
+        for (PermissionLevel level : levels) {
+            names.add(level.name());
+        }
+        return names;
+    }
+
+    /**
+     * 全部受管组名
+     */
+    public List<String> getGroups() {
+        return Collections.unmodifiableList(Arrays.asList(groups));
+    }
+}
@@ -0,0 +1,77 @@
+package wangxianming.lowop.utils;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.context.DefaultContextKeys;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.model.user.UserManager;
+import net.luckperms.api.node.NodeType;
+import net.luckperms.api.node.matcher.NodeMatcher;
+import net.luckperms.api.node.types.InheritanceNode;
+import wangxianming.lowop.managers.ReconcileManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * 通过 LuckPerms API 读取用户的父组，离线玩家同样适用（由 LuckPerms 从存储加载）
+ * 只看上下文与给定上下文完全相同的父组节点，其他服务器或世界的等级不参与对账
+ * 只有在 LuckPerms 已加载时才会实例化，避免缺少 API 类时加载失败
+ */
+public final class LuckPermsGroupLookup implements ReconcileManager.GroupLookup {
+
+    private final UserManager userManager;
+    private final ImmutableContextSet contexts;
+
+    public LuckPermsGroupLookup(LevelContext context) {
+        LuckPerms luckPerms = LuckPermsProvider.get();
+        this.userManager = luckPerms.getUserManager();
+        ImmutableContextSet.Builder builder = ImmutableContextSet.builder();
+        if (context.getServer() != null) {
+            builder.add(DefaultContextKeys.SERVER_KEY, context.getServer());
+        }
+        if (context.getWorld() != null) {
+            builder.add(DefaultContextKeys.WORLD_KEY, context.getWorld());
+        }
+        this.contexts = builder.build();
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> getGroups(UUID playerUUID) {
+        return userManager.loadUser(playerUUID).thenApply(user -> user.getNodes(NodeType.INHERITANCE).stream()
+            .filter(node -> node.getContexts().equals(contexts))
+            .map(node -> node.getGroupName().toLowerCase(Locale.ROOT))
+            .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public CompletableFuture<Set<UUID>> getMembers(Collection<String> groups) {
+        List<CompletableFuture<Set<UUID>>> searches = new ArrayList<>();
+        for (String group : groups) {
+            String key = InheritanceNode.builder(group).build().getKey();
+            searches.add(userManager.searchAll(NodeMatcher.key(key)).thenApply(matches -> {
+                Set<UUID> members = new HashSet<>();
+                matches.forEach((playerUUID, nodes) -> {
+                    if (nodes.stream().anyMatch(node -> node.getContexts().equals(contexts))) {
+                        members.add(playerUUID);
+                    }
+                });
+                return members;
+            }));
+        }
+        return CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Set<UUID> members = new HashSet<>();
+            for (CompletableFuture<Set<UUID>> search : searches) {
+                members.addAll(search.join());
+            }
+            return members;
+        });
+    }
+}
@@ -0,0 +1,26 @@
+package wangxianming.lowop.utils;
+
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.model.user.UserManager;
+import wangxianming.lowop.managers.SelectorManager;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 通过 LuckPerms 的用户名缓存查询 UUID，在 LuckPerms 的线程上完成，不会请求 Mojang
+ * 只有在 LuckPerms 已加载时才会实例化，避免缺少 API 类时加载失败
+ */
+public final class LuckPermsNameLookup implements SelectorManager.NameLookup {
+
+    private final UserManager userManager;
+
+    public LuckPermsNameLookup() {
+        this.userManager = LuckPermsProvider.get().getUserManager();
+    }
+
+    @Override
+    public CompletableFuture<UUID> lookupUniqueId(String name) {
+        return userManager.lookupUniqueId(name);
+    }
+}
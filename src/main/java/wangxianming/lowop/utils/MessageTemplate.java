@@ -0,0 +1,114 @@
+package wangxianming.lowop.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的消息模板，由字面量片段和占位符槽位组成
+ * 颜色代码在编译时一次性转换，发送时只需单次 StringBuilder 拼接
+ */
+public final class MessageTemplate {
+
+    private static final MessageTemplate EMPTY = new MessageTemplate(new String[] { "" }, new String[0]);
+
+    // literals.length == slots.length + 1, rendered as literal[0] slot[0] literal[1] ... literal[n]
+    private final String[] literals;
+    private final String[] slots;
+    private final int baseLength;
+
+    private MessageTemplate(String[] literals, String[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.baseLength = length;
+    }
+
+    /**
+     * 编译原始消息（支持 &amp; 颜色代码与 &amp;#RRGGBB 十六进制颜色）
+     */
+    public static MessageTemplate compile(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return EMPTY;
+        }
+
+        String colored = MessageUtils.colorize(raw);
+        List<String> literalList = new ArrayList<>();
+        List<String> slotList = new ArrayList<>();
+
+        int literalStart = 0;
+        int open = colored.indexOf('{');
+        while (open >= 0) {
+            int close = colored.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            if (isPlaceholderName(colored, open + 1, close)) {
+                literalList.add(colored.substring(literalStart, open));
+                slotList.add(colored.substring(open + 1, close));
+                literalStart = close + 1;
+                open = colored.indexOf('{', literalStart);
+            } else {
+                open = colored.indexOf('{', open + 1);
+            }
+        }
+        literalList.add(colored.substring(literalStart));
+
+        return new MessageTemplate(literalList.toArray(new String[0]), slotList.toArray(new String[0]));
+    }
+
+    private static boolean isPlaceholderName(String text, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 渲染模板，未提供的占位符保持原样输出
+     */
+    public String render(Map<String, String> placeholders) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder builder = new StringBuilder(baseLength + slots.length * 16);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(literals[i]);
+            String value = placeholders != null ? placeholders.get(slots[i]) : null;
+            if (value != null) {
+                builder.append(value);
+            } else {
+                builder.append('{').append(slots[i]).append('}');
+            }
+        }
+        builder.append(literals[slots.length]);
+        return builder.toString();
+    }
+
+    /**
+     * 渲染无占位符的模板
+     */
+    public String render() {
+        return render(null);
+    }
+
+    public boolean isEmpty() {
+        return slots.length == 0 && literals[0].isEmpty();
+    }
+
+    public List<String> getPlaceholderNames() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+}
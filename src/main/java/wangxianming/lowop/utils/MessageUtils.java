@@ -26,9 +26,9 @@ public class MessageUtils {
      * 发送消息给指定发送者
      */
     public void sendMessage(CommandSender sender, String key, Map<String, String> placeholders) {
-        String message = getMessage(key, placeholders);
-        if (message != null && !message.isEmpty()) {
-            sender.sendMessage(colorize(message));
+        String message = getMessage(key, placeholders, getLocale(sender));
+        if (!message.isEmpty()) {
+            sender.sendMessage(message);
         }
     }
     
@@ -43,9 +43,9 @@ public class MessageUtils {
      * 发送消息给玩家
      */
     public void sendMessage(Player player, String key, Map<String, String> placeholders) {
-        String message = getMessage(key, placeholders);
-        if (message != null && !message.isEmpty()) {
-            player.sendMessage(colorize(message));
+        String message = getMessage(key, placeholders, getLocale(player));
+        if (!message.isEmpty()) {
+            player.sendMessage(message);
         }
     }
     
@@ -104,7 +104,7 @@ public class MessageUtils {
             "total", String.valueOf(totalCount),
             "operation", operation
         ));
-        sender.sendMessage(colorize(message));
+        sender.sendMessage(message);
     }
     
     /**
@@ -115,21 +115,32 @@ public class MessageUtils {
     }
     
     /**
-     * 获取格式化后的消息
+     * 获取格式化后的消息（使用预编译模板，已完成颜色转换）
      */
-    private String getMessage(String key, Map<String, String> placeholders) {
-        String message = configManager.getMessage(key, "&c消息键 '" + key + "' 未找到");
-        if (message == null || message.isEmpty()) {
-            return "&c消息键 '" + key + "' 未找到";
+    public String getMessage(String key, Map<String, String> placeholders) {
+        return getMessage(key, placeholders, "");
+    }
+    
+    /**
+     * 获取指定语言的格式化消息，缺失时回退到默认 messages.yml
+     */
+    public String getMessage(String key, Map<String, String> placeholders, String locale) {
+        MessageTemplate template = configManager.getMessageTemplate(key, locale);
+        if (template == null || template.isEmpty()) {
+            return colorize("&c消息键 '" + key + "' 未找到");
         }
         
-        if (placeholders != null) {
-            for (Map.Entry<String, String> entry : placeholders.entrySet()) {
-                message = message.replace("{" + entry.getKey() + "}", entry.getValue());
-            }
+        return template.render(placeholders);
+    }
+    
+    /**
+     * 获取发送者对应的消息语言（控制台使用默认语言）
+     */
+    public String getLocale(CommandSender sender) {
+        if (sender instanceof Player) {
+            return configManager.resolveMessageLocale(((Player) sender).getLocale());
         }
-        
-        return message;
+        return "";
     }
     
     /**
@@ -178,6 +189,6 @@ public class MessageUtils {
             "version", version,
             "author", author
         ));
-        sender.sendMessage(colorize(message));
+        sender.sendMessage(message);
     }
 }
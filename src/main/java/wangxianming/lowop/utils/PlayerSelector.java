@@ -0,0 +1,304 @@
+package wangxianming.lowop.utils;
+
+import wangxianming.lowop.managers.PermissionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 玩家选择符表达式，逗号分隔多个项，例如 {@code Steve,@a[level=lowop],@stored[level=op,lastseen<30d]}
+ * 支持 @a（在线）、@p、@s、@stored（所有已存储状态）、@world（指定世界的在线玩家）和玩家名
+ * 筛选条件：level=/!=（可用 | 分隔多个级别）、lastseen&lt;/&gt;（时长，单位 s/m/h/d/w）、name=（仅 @world）、limit=
+ * 只负责解析，求值见 SelectorManager
+ */
+public final class PlayerSelector {
+
+    public enum Kind {
+        NAME, ONLINE, NEAREST, SELF, STORED, WORLD
+    }
+
+    private static final Pattern FILTER = Pattern.compile("\\s*([a-zA-Z]+)\\s*(!=|<=|>=|=|<|>)\\s*(.*?)\\s*");
+    private static final Pattern DURATION = Pattern.compile("(\\d+)([smhdw])");
+
+    /**
+     * 选择符中的一项及其筛选条件
+     */
+    public static final class Term {
+        private final Kind kind;
+        private final String name;
+        private Set<PermissionManager.PermissionLevel> levels;
+        private long seenWithinMillis = -1;
+        private long notSeenForMillis = -1;
+        private String world;
+        private int limit = -1;
+
+        private Term(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * 玩家名，仅 NAME 项有值
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 允许的权限级别，无限制时为 null
+         */
+        public Set<PermissionManager.PermissionLevel> getLevels() {
+            return levels;
+        }
+
+        /**
+         * lastseen&lt;时长：最近在线时间距今不超过该毫秒数，未设置时为 -1
+         */
+        public long getSeenWithinMillis() {
+            return seenWithinMillis;
+        }
+
+        /**
+         * lastseen&gt;时长：最近在线时间距今超过该毫秒数，未设置时为 -1
+         */
+        public long getNotSeenForMillis() {
+            return notSeenForMillis;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * 是否按最近在线时间筛选
+         */
+        public boolean filtersLastSeen() {
+            return seenWithinMillis >= 0 || notSeenForMillis >= 0;
+        }
+
+        /**
+         * 按级别与最近在线时间判断是否匹配，lastSeen 为 0 表示未知（视为很久以前）
+         */
+        public boolean matches(PermissionManager.PermissionLevel level, long lastSeen, long now) {
+            if (levels != null && !levels.contains(level)) {
+                return false;
+            }
+            long age = lastSeen > 0 ? now - lastSeen : Long.MAX_VALUE;
+            if (seenWithinMillis >= 0 && age > seenWithinMillis) {
+                return false;
+            }
+            return notSeenForMillis < 0 || age > notSeenForMillis;
+        }
+    }
+
+    private final String expression;
+    private final List<Term> terms;
+
+    private PlayerSelector(String expression, List<Term> terms) {
+        this.expression = expression;
+        this.terms = Collections.unmodifiableList(terms);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public List<Term> getTerms() {
+        return terms;
+    }
+
+    /**
+     * 解析选择符表达式，语法错误时抛出 IllegalArgumentException（消息可直接展示给执行者）
+     */
+    public static PlayerSelector parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("选择符为空");
+        }
+        List<Term> terms = new ArrayList<>();
+        for (String part : splitTopLevel(expression, ',')) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            terms.add(part.startsWith("@") ? parseSelectorTerm(part) : parseNameTerm(part));
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("选择符为空");
+        }
+        return new PlayerSelector(expression, terms);
+    }
+
+    private static Term parseNameTerm(String part) {
+        if (!ValidationUtils.isValidUsername(part)) {
+            throw new IllegalArgumentException("无效的玩家名称: " + part);
+        }
+        return new Term(Kind.NAME, part);
+    }
+
+    private static Term parseSelectorTerm(String part) {
+        int bracket = part.indexOf('[');
+        String head = (bracket < 0 ? part : part.substring(0, bracket)).toLowerCase(Locale.ROOT);
+        Term term;
+        switch (head) {
+            case "@a":
+                term = new Term(Kind.ONLINE, null);
+                break;
+            case "@p":
+                term = new Term(Kind.NEAREST, null);
+                break;
+            case "@s":
+                term = new Term(Kind.SELF, null);
+                break;
+            case "@stored":
+                term = new Term(Kind.STORED, null);
+                break;
+            case "@world":
+                term = new Term(Kind.WORLD, null);
+                break;
+            default:
+                throw new IllegalArgumentException("未知的选择符: " + head);
+        }
+        if (bracket < 0) {
+            return term;
+        }
+        if (!part.endsWith("]")) {
+            throw new IllegalArgumentException("选择符缺少 ]: " + part);
+        }
+
+        for (String filter : splitTopLevel(part.substring(bracket + 1, part.length() - 1), ',')) {
+            if (filter.trim().isEmpty()) {
+                continue;
+            }
+            Matcher matcher = FILTER.matcher(filter);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("无效的筛选条件: " + filter.trim());
+            }
+            applyFilter(term, matcher.group(1).toLowerCase(Locale.ROOT), matcher.group(2), matcher.group(3));
+        }
+        return term;
+    }
+
+    private static void applyFilter(Term term, String key, String op, String value) {
+        switch (key) {
+            case "level": {
+                boolean negate = op.equals("!=");
+                if (!negate && !op.equals("=")) {
+                    throw new IllegalArgumentException("level 只支持 = 或 !=");
+                }
+                Set<PermissionManager.PermissionLevel> levels = new HashSet<>();
+                for (String level : value.split("\\|")) {
+                    levels.add(parseLevel(level.trim()));
+                }
+                if (negate) {
+                    Set<PermissionManager.PermissionLevel> others = new HashSet<>(LevelLadder.current().getLevels());
+                    others.removeAll(levels);
+                    levels = others;
+                }
+                if (term.levels != null) {
+                    levels.retainAll(term.levels);
+                }
+                term.levels = levels;
+                break;
+            }
+            case "lastseen": {
+                long millis = parseDuration(value);
+                if (op.startsWith("<")) {
+                    term.seenWithinMillis = millis;
+                } else if (op.startsWith(">")) {
+                    term.notSeenForMillis = millis;
+                } else {
+                    throw new IllegalArgumentException("lastseen 只支持 < 或 >");
+                }
+                break;
+            }
+            case "name":
+                if (term.kind != Kind.WORLD || !op.equals("=")) {
+                    throw new IllegalArgumentException("name= 只能用于 @world");
+                }
+                term.world = value;
+                break;
+            case "limit":
+                if (!op.equals("=")) {
+                    throw new IllegalArgumentException("limit 只支持 =");
+                }
+                try {
+                    term.limit = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    term.limit = -1;
+                }
+                if (term.limit <= 0) {
+                    throw new IllegalArgumentException("无效的 limit: " + value);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知的筛选条件: " + key);
+        }
+    }
+
+    private static PermissionManager.PermissionLevel parseLevel(String level) {
+        PermissionManager.PermissionLevel parsed = LevelLadder.current().find(level);
+        if (parsed == null) {
+            throw new IllegalArgumentException("无效的权限级别: " + level);
+        }
+        return parsed;
+    }
+
+    /**
+     * 解析时长，例如 30d、12h、45m
+     */
+    public static long parseDuration(String value) {
+        Matcher matcher = DURATION.matcher(value.toLowerCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("无效的时长: " + value + " (例如 30d, 12h, 45m)");
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "s":
+                return amount * 1000L;
+            case "m":
+                return amount * 60_000L;
+            case "h":
+                return amount * 3_600_000L;
+            case "d":
+                return amount * 86_400_000L;
+            default:
+                return amount * 7 * 86_400_000L;
+        }
+    }
+
+    /**
+     * 按分隔符切分，忽略方括号内的分隔符
+     */
+    private static List<String> splitTopLevel(String text, char separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth = Math.max(0, depth - 1);
+            } else if (c == separator && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+}
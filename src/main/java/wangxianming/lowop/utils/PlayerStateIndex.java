@@ -0,0 +1,352 @@
+package wangxianming.lowop.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按 UUID 排序的玩家状态二进制索引，记录定长，查找时二分并按需读取磁盘，不常驻内存
+ * 格式：魔数、版本、记录数、级别名表，随后是 (高 64 位, 低 64 位, 级别, 最后在线时间, 最后变更时间) 记录
+ * 记录中的级别是名表中的序号，打开时按当前等级阶梯重新映射，阶梯调整顺序或增删等级后旧文件仍可读取
+ * 版本 1 的记录没有时间戳，读取时时间戳为 0；版本 1、2 没有名表，序号固定为 PLAYER、LOWOP、OP
+ */
+public final class PlayerStateIndex implements Closeable {
+
+    public static final int MAGIC = 0x4C4F5049; // "LOPI"
+    public static final int VERSION = 3;
+    private static final int HEADER_SIZE = 12;
+    private static final List<String> LEGACY_LEVELS = Arrays.asList("PLAYER", "LOWOP", "OP");
+    private static final int RECORD_SIZE_V1 = 17;
+    private static final int RECORD_SIZE = 33;
+    private static final int CURSOR_BATCH = 4096;
+
+    private final FileChannel channel;
+    private final int version;
+    private final int recordSize;
+    private final int size;
+    private final long dataOffset;
+    private final List<String> levelNames;
+    // 文件中的级别序号 -> 当前阶梯中的序号，不在阶梯中的级别为 -1
+    private final int[] levelMapping;
+
+    private PlayerStateIndex(FileChannel channel, int version, int size, long dataOffset,
+                             List<String> levelNames, List<String> ladder) {
+        this.channel = channel;
+        this.version = version;
+        this.recordSize = version == 1 ? RECORD_SIZE_V1 : RECORD_SIZE;
+        this.size = size;
+        this.dataOffset = dataOffset;
+        this.levelNames = levelNames;
+        this.levelMapping = new int[levelNames.size()];
+        for (int i = 0; i < levelMapping.length; i++) {
+            levelMapping[i] = ladder.indexOf(levelNames.get(i));
+        }
+    }
+
+    /**
+     * 打开索引文件并校验文件头（文件的 CRC 已由 DurableFile 校验）
+     * ladder 为当前阶梯按序号排列的级别名，读取到的级别序号均已映射到该阶梯
+     */
+    public static PlayerStateIndex open(Path path, List<String> ladder) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a LowOP state index: " + path);
+            }
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported state index version " + version + " in " + path);
+            }
+            int size = header.getInt();
+            long dataOffset = HEADER_SIZE;
+            List<String> levelNames = LEGACY_LEVELS;
+            if (version >= 3) {
+                ByteBuffer tableSize = ByteBuffer.allocate(4);
+                readFully(channel, tableSize, HEADER_SIZE);
+                tableSize.flip();
+                int tableBytes = tableSize.getInt();
+                if (tableBytes < 1 || HEADER_SIZE + 4L + tableBytes > channel.size()) {
+                    throw new IOException("Truncated state index: " + path);
+                }
+                ByteBuffer table = ByteBuffer.allocate(tableBytes);
+                readFully(channel, table, HEADER_SIZE + 4L);
+                levelNames = readLevelNames(table.array());
+                dataOffset = HEADER_SIZE + 4L + tableBytes;
+            }
+            PlayerStateIndex index = new PlayerStateIndex(channel, version, size, dataOffset, levelNames, ladder);
+            if (size < 0 || dataOffset + (long) size * index.recordSize > channel.size()) {
+                throw new IOException("Truncated state index: " + path);
+            }
+            return index;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static PlayerStateIndex empty() {
+        return new PlayerStateIndex(null, VERSION, 0, HEADER_SIZE, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static List<String> readLevelNames(byte[] table) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(table));
+        int count = in.readUnsignedByte();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * 文件中的级别名表（按文件内序号排列）
+     */
+    public List<String> getLevelNames() {
+        return levelNames;
+    }
+
+    /**
+     * 文件中有但当前阶梯没有的级别名，这些记录读取时级别为 -1
+     */
+    public List<String> getUnknownLevels() {
+        List<String> unknown = new ArrayList<>();
+        for (int i = 0; i < levelMapping.length; i++) {
+            if (levelMapping[i] < 0) {
+                unknown.add(levelNames.get(i));
+            }
+        }
+        return unknown;
+    }
+
+    private int mapLevel(byte stored) {
+        return stored >= 0 && stored < levelMapping.length ? levelMapping[stored] : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 二分查找，返回级别序号；不存在或级别已不在当前阶梯中时返回 -1
+     */
+    public int lookup(long mostSigBits, long leastSigBits) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE_V1);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            record.clear();
+            readFully(channel, record, dataOffset + (long) mid * recordSize);
+            record.flip();
+
+            int cmp = compare(record.getLong(), record.getLong(), mostSigBits, leastSigBits);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mapLevel(record.get());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 第一个不小于给定 UUID 的记录位置，全部更小时返回 size()
+     */
+    public int position(long mostSigBits, long leastSigBits) throws IOException {
+        ByteBuffer key = ByteBuffer.allocate(16);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            key.clear();
+            readFully(channel, key, dataOffset + (long) mid * recordSize);
+            key.flip();
+            if (compare(key.getLong(), key.getLong(), mostSigBits, leastSigBits) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 顺序游标，按块读取记录
+     */
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    /**
+     * 从指定记录位置开始的游标
+     */
+    public Cursor cursor(int fromRecord) {
+        return new Cursor(fromRecord);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * 索引使用的 UUID 排序（按有符号 long 比较高位再比较低位）
+     */
+    public static int compare(long mostA, long leastA, long mostB, long leastB) {
+        int cmp = Long.compare(mostA, mostB);
+        return cmp != 0 ? cmp : Long.compare(leastA, leastB);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of state index");
+            }
+        }
+    }
+
+    public final class Cursor {
+        private final ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BATCH * recordSize);
+        private int nextRecord;
+        private long mostSigBits;
+        private long leastSigBits;
+        private int level;
+        private long lastSeen;
+        private long lastChanged;
+
+        private Cursor(int fromRecord) {
+            buffer.limit(0);
+            nextRecord = Math.max(0, fromRecord);
+        }
+
+        public boolean next() throws IOException {
+            if (nextRecord >= size) {
+                return false;
+            }
+            if (!buffer.hasRemaining()) {
+                int batch = Math.min(CURSOR_BATCH, size - nextRecord);
+                buffer.clear();
+                buffer.limit(batch * recordSize);
+                readFully(channel, buffer, dataOffset + (long) nextRecord * recordSize);
+                buffer.flip();
+            }
+            mostSigBits = buffer.getLong();
+            leastSigBits = buffer.getLong();
+            level = mapLevel(buffer.get());
+            if (version == 1) {
+                lastSeen = 0;
+                lastChanged = 0;
+            } else {
+                lastSeen = buffer.getLong();
+                lastChanged = buffer.getLong();
+            }
+            nextRecord++;
+            return true;
+        }
+
+        public long getMostSigBits() {
+            return mostSigBits;
+        }
+
+        public long getLeastSigBits() {
+            return leastSigBits;
+        }
+
+        /**
+         * 当前阶梯中的级别序号，级别已不在阶梯中时为 -1
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * 最后在线时间（毫秒时间戳），未知时为 0
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * 最后一次级别变更时间（毫秒时间戳），未知时为 0
+         */
+        public long getLastChanged() {
+            return lastChanged;
+        }
+    }
+
+    /**
+     * 顺序写出索引，调用方必须按 {@link #compare} 的顺序添加记录且总数与声明一致
+     * 记录的级别为 levelNames 中的序号
+     */
+    public static final class Writer {
+        private final DataOutputStream out;
+        private final int expected;
+        private int written;
+        private long lastMost;
+        private long lastLeast;
+
+        public Writer(OutputStream out, int expected, List<String> levelNames) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.expected = expected;
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeInt(expected);
+
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream tableOut = new DataOutputStream(table);
+            tableOut.writeByte(levelNames.size());
+            for (String name : levelNames) {
+                tableOut.writeUTF(name);
+            }
+            this.out.writeInt(table.size());
+            table.writeTo(this.out);
+        }
+
+        public void add(long mostSigBits, long leastSigBits, int level, long lastSeen, long lastChanged) throws IOException {
+            if (written > 0 && compare(lastMost, lastLeast, mostSigBits, leastSigBits) >= 0) {
+                throw new IllegalStateException("State index records must be strictly ascending");
+            }
+            if (written == expected) {
+                throw new IllegalStateException("More state index records than declared (" + expected + ")");
+            }
+            out.writeLong(mostSigBits);
+            out.writeLong(leastSigBits);
+            out.writeByte(level);
+            out.writeLong(lastSeen);
+            out.writeLong(lastChanged);
+            lastMost = mostSigBits;
+            lastLeast = leastSigBits;
+            written++;
+        }
+
+        public void finish() throws IOException {
+            if (written != expected) {
+                throw new IllegalStateException("State index declared " + expected + " records but " + written + " were written");
+            }
+            out.flush();
+        }
+    }
+}
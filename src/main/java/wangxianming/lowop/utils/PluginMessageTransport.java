@@ -0,0 +1,90 @@
+package wangxianming.lowop.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.messaging.Messenger;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+import wangxianming.lowop.LowOP;
+import wangxianming.lowop.managers.SyncManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * 经代理（BungeeCord/Velocity）的 BungeeCord 插件消息通道，用 Forward 子命令把变更转发到所有服务器
+ * 插件消息必须借助一名在线玩家发送，收方服务器同样需要有玩家在线；没有玩家时记录被丢弃，
+ * 由下次登录检测或对账修正
+ */
+public final class PluginMessageTransport implements SyncManager.Transport, PluginMessageListener {
+
+    private static final String CHANNEL = "BungeeCord";
+    private static final String SUBCHANNEL = "LowOPChanges";
+
+    private final LowOP plugin;
+    private volatile Consumer<byte[]> receiver;
+
+    public PluginMessageTransport(LowOP plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        Messenger messenger = plugin.getServer().getMessenger();
+        messenger.registerOutgoingPluginChannel(plugin, CHANNEL);
+        messenger.registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+
+    @Override
+    public void publish(byte[] record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("Forward");
+            out.writeUTF("ALL");
+            out.writeUTF(SUBCHANNEL);
+            out.writeShort(record.length);
+            out.write(record);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] message = bytes.toByteArray();
+        // 插件消息只能在主线程发送
+        plugin.getTaskManager().runSync(() -> {
+            Iterator<? extends Player> players = Bukkit.getOnlinePlayers().iterator();
+            if (players.hasNext()) {
+                players.next().sendPluginMessage(plugin, CHANNEL, message);
+            }
+        });
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<byte[]> current = receiver;
+        if (!CHANNEL.equals(channel) || current == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (!SUBCHANNEL.equals(in.readUTF())) {
+                return;
+            }
+            byte[] record = new byte[in.readUnsignedShort()];
+            in.readFully(record);
+            current.accept(record);
+        } catch (IOException e) {
+            // 其他插件在同一通道上的消息，格式不同
+        }
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        Messenger messenger = plugin.getServer().getMessenger();
+        messenger.unregisterIncomingPluginChannel(plugin, CHANNEL);
+        messenger.unregisterOutgoingPluginChannel(plugin, CHANNEL);
+    }
+}
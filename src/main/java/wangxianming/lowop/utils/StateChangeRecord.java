@@ -0,0 +1,102 @@
+package wangxianming.lowop.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * 在服务器之间广播的一条等级变更，编码为紧凑的二进制记录（通常不到 60 字节）：
+ * 版本、来源、时间戳、玩家 UUID、级别名以及 server/world 上下文
+ * 级别按名称传递，各服务器的等级阶梯序号不必一致
+ */
+public final class StateChangeRecord {
+
+    public static final byte VERSION = 1;
+
+    private final long origin;
+    private final long timestamp;
+    private final UUID playerUUID;
+    private final String level;
+    private final LevelContext context;
+
+    public StateChangeRecord(long origin, long timestamp, UUID playerUUID, String level, LevelContext context) {
+        this.origin = origin;
+        this.timestamp = timestamp;
+        this.playerUUID = playerUUID;
+        this.level = level;
+        this.context = context;
+    }
+
+    /**
+     * 发出变更的插件实例标识，用于忽略自己发出的记录
+     */
+    public long getOrigin() {
+        return origin;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * 级别名，例如 LOWOP
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    public LevelContext getContext() {
+        return context;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(origin);
+            out.writeLong(timestamp);
+            out.writeLong(playerUUID.getMostSignificantBits());
+            out.writeLong(playerUUID.getLeastSignificantBits());
+            out.writeUTF(level);
+            out.writeUTF(context.getServer() != null ? context.getServer() : "");
+            out.writeUTF(context.getWorld() != null ? context.getWorld() : "");
+        } catch (IOException e) {
+            // 写入内存流不会失败
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解码一条记录，版本不支持或内容损坏时抛出 IOException
+     */
+    public static StateChangeRecord decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported change record version " + version);
+            }
+            long origin = in.readLong();
+            long timestamp = in.readLong();
+            UUID playerUUID = new UUID(in.readLong(), in.readLong());
+            String level = in.readUTF();
+            String server = in.readUTF();
+            String world = in.readUTF();
+            return new StateChangeRecord(origin, timestamp, playerUUID, level, LevelContext.of(server, world));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid change record context: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return playerUUID + " -> " + level + " (" + context + ")";
+    }
+}
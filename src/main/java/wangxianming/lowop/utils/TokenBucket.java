@@ -0,0 +1,67 @@
+package wangxianming.lowop.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 实现），整个桶状态只是一个理论到达时间
+ * 每次获取令牌只需一次 CAS，不需要加锁或后台补充线程
+ */
+public final class TokenBucket {
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private volatile long intervalNanos;
+    private volatile long capacityNanos;
+
+    public TokenBucket(int burst, double refillPerSecond) {
+        configure(burst, refillPerSecond);
+    }
+
+    /**
+     * 调整容量与补充速率，不会重置已消耗的令牌
+     */
+    public void configure(int burst, double refillPerSecond) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(refillPerSecond, 0.001));
+        this.intervalNanos = Math.max(1L, interval);
+        this.capacityNanos = Math.max(1, burst) * this.intervalNanos;
+    }
+
+    /**
+     * 立即获取令牌，不足时返回 false
+     */
+    public boolean tryAcquire(int permits) {
+        return reserve(permits, 0L) == 0L;
+    }
+
+    /**
+     * 预留令牌并返回需要等待的纳秒数；等待时间超过 maxWaitNanos 时不预留并返回 -1
+     */
+    public long reserve(int permits, long maxWaitNanos) {
+        long cost = permits * intervalNanos;
+        long capacity = capacityNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + cost;
+            long wait = next - now - capacity;
+            if (wait > maxWaitNanos) {
+                return -1L;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return Math.max(0L, wait);
+            }
+        }
+    }
+
+    /**
+     * 桶是否已满（长时间未使用），可用于清理空闲桶
+     */
+    public boolean isFull() {
+        return theoreticalArrival.get() - System.nanoTime() <= 0L;
+    }
+
+    public int getAvailablePermits() {
+        long backlog = Math.max(0L, theoreticalArrival.get() - System.nanoTime());
+        return (int) ((capacityNanos - backlog) / intervalNanos);
+    }
+}
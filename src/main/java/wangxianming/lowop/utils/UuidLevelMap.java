@@ -0,0 +1,223 @@
+package wangxianming.lowop.utils;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 以 UUID 两个 long 为键、byte 为值的开放寻址哈希表（线性探测）
+ * 每个条目约 17 字节，不为键和值创建对象；非线程安全，由调用方加锁
+ * 值必须为非负数，{@link #MISSING} 表示键不存在
+ */
+public final class UuidLevelMap {
+
+    public static final byte MISSING = -1;
+    private static final byte FREE = Byte.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private byte[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public UuidLevelMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public UuidLevelMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public byte get(UUID uuid) {
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public byte get(long most, long least) {
+        int slot = find(most, least);
+        return slot < 0 ? MISSING : values[slot];
+    }
+
+    public boolean containsKey(UUID uuid) {
+        return find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * 写入并返回旧值，原先不存在时返回 {@link #MISSING}
+     */
+    public byte put(UUID uuid, byte value) {
+        return put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value);
+    }
+
+    public byte put(long most, long least, byte value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must be non-negative: " + value);
+        }
+        int slot = hash(most, least) & mask;
+        while (values[slot] != FREE) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                byte previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        mostBits[slot] = most;
+        leastBits[slot] = least;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(values.length << 1);
+        }
+        return MISSING;
+    }
+
+    /**
+     * 仅当键已存在时更新，返回旧值
+     */
+    public byte replace(UUID uuid, byte value) {
+        int slot = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (slot < 0) {
+            return MISSING;
+        }
+        byte previous = values[slot];
+        values[slot] = value;
+        return previous;
+    }
+
+    public byte remove(UUID uuid) {
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public byte remove(long most, long least) {
+        int slot = find(most, least);
+        if (slot < 0) {
+            return MISSING;
+        }
+        byte previous = values[slot];
+        shiftBack(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * 仅当当前值等于 expected 时删除
+     */
+    public boolean remove(long most, long least, byte expected) {
+        int slot = find(most, least);
+        if (slot < 0 || values[slot] != expected) {
+            return false;
+        }
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(values, FREE);
+        size = 0;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != FREE) {
+                visitor.accept(mostBits[slot], leastBits[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * 遍历回调，避免为每个条目创建 UUID 对象
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long most, long least, byte value);
+    }
+
+    private int find(long most, long least) {
+        int slot = hash(most, least) & mask;
+        while (values[slot] != FREE) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 线性探测的删除：把后续同一探测链上的条目前移，不使用墓碑
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != FREE) {
+            int home = hash(mostBits[next], leastBits[next]) & mask;
+            // 仅当 home 不在 (gap, next] 区间内时才能移动到空位
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                mostBits[gap] = mostBits[next];
+                leastBits[gap] = leastBits[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        byte[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != FREE) {
+                int target = hash(oldMost[slot], oldLeast[slot]) & mask;
+                while (values[target] != FREE) {
+                    target = (target + 1) & mask;
+                }
+                mostBits[target] = oldMost[slot];
+                leastBits[target] = oldLeast[slot];
+                values[target] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        values = new byte[capacity];
+        Arrays.fill(values, FREE);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        long capacity = Long.highestOneBit(Math.max(needed, MIN_CAPACITY) - 1) << 1;
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * 混合两个半部，顺序生成的 UUID 也能均匀分布
+     */
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -3,6 +3,7 @@ package wangxianming.lowop.utils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import wangxianming.lowop.LowOP;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -176,11 +177,25 @@ public class ValidationUtils {
     }
 
     /**
-     * 检查速率限制（简化版本）
+     * 检查速率限制（按发送者的令牌桶）
      */
     public static boolean checkRateLimit(CommandSender sender) {
-        // 简化实现，总是返回true
-        return true;
+        LowOP plugin = LowOP.getInstance();
+        if (plugin == null || plugin.getRateLimitManager() == null) {
+            return true;
+        }
+        return plugin.getRateLimitManager().tryAcquireCommand(sender);
+    }
+    
+    /**
+     * 检查批量操作的玩家额度
+     */
+    public static boolean checkBatchRateLimit(int playerCount) {
+        LowOP plugin = LowOP.getInstance();
+        if (plugin == null || plugin.getRateLimitManager() == null) {
+            return true;
+        }
+        return plugin.getRateLimitManager().tryAcquireBatchItems(playerCount);
     }
     
     /**
@@ -268,7 +283,7 @@ public class ValidationUtils {
     }
 
     /**
-     * 解析玩家选择符 (@a, @p, @s)，支持离线玩家
+     * 解析简单玩家选择符 (@a, @p, @s)，支持离线玩家；命令使用 SelectorManager 的完整语法
      */
     public static List<UUID> parsePlayerSelector(String selector, CommandSender sender) {
         List<UUID> playerUUIDs = new ArrayList<>();
@@ -328,9 +343,16 @@ public class ValidationUtils {
      * 验证权限级别参数
      */
     public static boolean validatePermissionLevel(String level, CommandSender sender, MessageUtils messageUtils) {
-        if (level != null && !level.equalsIgnoreCase("player") && 
-            !level.equalsIgnoreCase("lowop") && !level.equalsIgnoreCase("op")) {
-            messageUtils.sendError(sender, "权限级别必须是 'player', 'lowop' 或 'op'");
+        LevelLadder ladder = LevelLadder.current();
+        if (level != null && ladder.find(level) == null) {
+            StringBuilder names = new StringBuilder();
+            for (wangxianming.lowop.managers.PermissionManager.PermissionLevel known : ladder.getLevels()) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(known.getKey());
+            }
+            messageUtils.sendError(sender, "权限级别必须是以下之一: " + names);
             return false;
         }
         return true;
@@ -368,21 +390,10 @@ public class ValidationUtils {
     }
 
     /**
-     * 解析权限级别字符串为枚举值
+     * 按当前等级阶梯解析权限级别，未知级别视为 PLAYER
      */
     public static wangxianming.lowop.managers.PermissionManager.PermissionLevel parsePermissionLevel(String levelStr) {
-        if (levelStr == null) {
-            return wangxianming.lowop.managers.PermissionManager.PermissionLevel.PLAYER;
-        }
-        
-        switch (levelStr.toLowerCase()) {
-            case "op":
-                return wangxianming.lowop.managers.PermissionManager.PermissionLevel.OP;
-            case "lowop":
-                return wangxianming.lowop.managers.PermissionManager.PermissionLevel.LOWOP;
-            case "player":
-            default:
-                return wangxianming.lowop.managers.PermissionManager.PermissionLevel.PLAYER;
-        }
+        wangxianming.lowop.managers.PermissionManager.PermissionLevel level = LevelLadder.current().find(levelStr);
+        return level != null ? level : wangxianming.lowop.managers.PermissionManager.PermissionLevel.PLAYER;
     }
 }
@@ -0,0 +1,171 @@
+package wangxianming.lowop.testkit;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 内存中的 LuckPerms 命令面，只实现 LowOP 会下发的 lp 命令
+ * 用户的父组按名称（忽略大小写）保存，没有任何父组时视为 default 组
+ */
+public final class FakeLuckPerms {
+
+    public static final String DEFAULT_GROUP = "default";
+
+    private final Map<String, Set<String>> parentsByUser = new HashMap<>();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+    private volatile Consumer<String> changeListener;
+    private volatile boolean outage;
+
+    /**
+     * 执行一条控制台命令，不是 lp 命令或格式不支持时返回 false
+     */
+    public boolean dispatch(String commandLine) {
+        String[] parts = commandLine.trim().split("\\s+");
+        if (parts.length == 0 || !(parts[0].equalsIgnoreCase("lp") || parts[0].equalsIgnoreCase("luckperms"))) {
+            return false;
+        }
+        commands.increment();
+        if (outage) {
+            unavailable.increment();
+            return false;
+        }
+
+        if (parts.length == 2 && (parts[1].equalsIgnoreCase("sync") || parts[1].equalsIgnoreCase("info"))) {
+            if (parts[1].equalsIgnoreCase("sync")) {
+                syncs.increment();
+            }
+            return true;
+        }
+
+        // lp user <name> parent <clear|add|remove|set> [group] [context...]
+        if (parts.length >= 5 && parts[1].equalsIgnoreCase("user") && parts[3].equalsIgnoreCase("parent")) {
+            String user = parts[2].toLowerCase(Locale.ROOT);
+            String action = parts[4].toLowerCase(Locale.ROOT);
+            String group = parts.length > 5 ? parts[5].toLowerCase(Locale.ROOT) : null;
+
+            synchronized (this) {
+                Set<String> parents = parentsByUser.computeIfAbsent(user, k -> new HashSet<>());
+                switch (action) {
+                    case "clear":
+                        parents.clear();
+                        break;
+                    case "add":
+                        if (group == null) {
+                            rejected.increment();
+                            return false;
+                        }
+                        parents.add(group);
+                        break;
+                    case "remove":
+                        if (group == null) {
+                            rejected.increment();
+                            return false;
+                        }
+                        parents.remove(group);
+                        break;
+                    case "set":
+                        if (group == null) {
+                            rejected.increment();
+                            return false;
+                        }
+                        parents.clear();
+                        parents.add(group);
+                        break;
+                    default:
+                        rejected.increment();
+                        return false;
+                }
+            }
+            writes.increment();
+
+            Consumer<String> listener = changeListener;
+            if (listener != null) {
+                listener.accept(user);
+            }
+            return true;
+        }
+
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 用户当前生效的父组（default 组隐式存在）
+     */
+    public synchronized Set<String> getGroups(String playerName) {
+        Set<String> parents = parentsByUser.get(playerName.toLowerCase(Locale.ROOT));
+        Set<String> groups = parents == null ? new TreeSet<>() : new TreeSet<>(parents);
+        if (groups.isEmpty()) {
+            groups.add(DEFAULT_GROUP);
+        }
+        return groups;
+    }
+
+    /**
+     * 模拟 LuckPerms 为继承组授予的 group.&lt;name&gt; 权限节点
+     */
+    public boolean hasPermission(String playerName, String node) {
+        String lower = node.toLowerCase(Locale.ROOT);
+        String group;
+        if (lower.startsWith("group.")) {
+            group = lower.substring("group.".length());
+        } else if (lower.startsWith("luckperms.group.")) {
+            group = lower.substring("luckperms.group.".length());
+        } else {
+            return false;
+        }
+        return getGroups(playerName).contains(group);
+    }
+
+    public synchronized Set<String> getKnownUsers() {
+        return new TreeSet<>(parentsByUser.keySet());
+    }
+
+    /**
+     * 设置用户数据变化回调，相当于 UserDataRecalculateEvent
+     */
+    public void setChangeListener(Consumer<String> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * 模拟后端故障：故障期间所有 lp 命令都失败且不修改数据
+     */
+    public void setOutage(boolean outage) {
+        this.outage = outage;
+    }
+
+    public synchronized void reset() {
+        parentsByUser.clear();
+        commands.reset();
+        writes.reset();
+        syncs.reset();
+        rejected.reset();
+        unavailable.reset();
+    }
+
+    public long getUnavailableCount() {
+        return unavailable.sum();
+    }
+
+    public long getCommandCount() {
+        return commands.sum();
+    }
+
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
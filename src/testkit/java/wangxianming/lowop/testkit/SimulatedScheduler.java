@@ -0,0 +1,262 @@
+package wangxianming.lowop.testkit;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按 tick 推进的调度器：同步任务只在调用 {@link #tick()} 的线程上执行，异步任务交给真实线程池
+ * 这样负载测试可以精确测量每个 tick 中插件占用主线程的时间
+ */
+public final class SimulatedScheduler {
+
+    private final Object lock = new Object();
+    private final PriorityQueue<ScheduledTask> syncQueue = new PriorityQueue<>(
+        Comparator.comparingLong((ScheduledTask task) -> task.nextRunTick).thenComparingInt(task -> task.id));
+    private final Map<Integer, ScheduledTask> tasks = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final ThreadPoolExecutor asyncPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LowOP-Sim-Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long currentTick;
+    private volatile Thread mainThread;
+    private BukkitScheduler proxy;
+
+    /**
+     * 主线程为调用 tick 的线程；尚未开始推进时所有线程都视为主线程
+     */
+    public boolean isPrimaryThread() {
+        Thread main = mainThread;
+        return main == null || main == Thread.currentThread();
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * 执行一个 tick 内所有到期的同步任务，返回执行的任务数
+     */
+    public int tick() {
+        mainThread = Thread.currentThread();
+        long tick = ++currentTick;
+        int executed = 0;
+        while (true) {
+            ScheduledTask task;
+            synchronized (lock) {
+                task = syncQueue.peek();
+                if (task == null || task.nextRunTick > tick) {
+                    break;
+                }
+                syncQueue.poll();
+            }
+            if (task.cancelled) {
+                continue;
+            }
+
+            executed++;
+            try {
+                task.body.run();
+            } catch (Throwable t) {
+                System.err.println("[LowOP-Sim] Sync task " + task.id + " threw " + t);
+                t.printStackTrace();
+            }
+
+            synchronized (lock) {
+                if (task.period > 0 && !task.cancelled) {
+                    task.nextRunTick = tick + task.period;
+                    syncQueue.add(task);
+                } else {
+                    tasks.remove(task.id);
+                }
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * 尚未执行的一次性同步任务数（不含周期任务）
+     */
+    public int getPendingSyncTasks() {
+        synchronized (lock) {
+            int pending = 0;
+            for (ScheduledTask task : syncQueue) {
+                if (!task.cancelled && task.period <= 0) {
+                    pending++;
+                }
+            }
+            return pending;
+        }
+    }
+
+    public int getActiveAsyncTasks() {
+        return asyncPool.getActiveCount() + asyncPool.getQueue().size();
+    }
+
+    public int getPeakAsyncThreads() {
+        return asyncPool.getLargestPoolSize();
+    }
+
+    public void shutdown() throws InterruptedException {
+        synchronized (lock) {
+            syncQueue.clear();
+            tasks.clear();
+        }
+        asyncPool.shutdownNow();
+        asyncPool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 以 BukkitScheduler 接口暴露，未实现的方法返回默认值
+     */
+    public synchronized BukkitScheduler asBukkitScheduler() {
+        if (proxy != null) {
+            return proxy;
+        }
+
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("runTask", args -> schedule((Plugin) args[0], args[1], 0L, -1L, true));
+        answers.put("runTaskLater", args -> schedule((Plugin) args[0], args[1], (Long) args[2], -1L, true));
+        answers.put("runTaskTimer", args -> schedule((Plugin) args[0], args[1], (Long) args[2], (Long) args[3], true));
+        answers.put("runTaskAsynchronously", args -> schedule((Plugin) args[0], args[1], 0L, -1L, false));
+        answers.put("runTaskLaterAsynchronously", args -> schedule((Plugin) args[0], args[1], (Long) args[2], -1L, false));
+        answers.put("runTaskTimerAsynchronously", args -> schedule((Plugin) args[0], args[1], (Long) args[2], (Long) args[3], false));
+        answers.put("scheduleSyncDelayedTask", args -> schedule((Plugin) args[0], args[1], args.length > 2 ? (Long) args[2] : 0L, -1L, true).getTaskId());
+        answers.put("cancelTask", args -> {
+            cancel((Integer) args[0]);
+            return null;
+        });
+        answers.put("cancelTasks", args -> {
+            cancelAll((Plugin) args[0]);
+            return null;
+        });
+        answers.put("isQueued", args -> {
+            synchronized (lock) {
+                ScheduledTask task = tasks.get((Integer) args[0]);
+                return task != null && !task.cancelled;
+            }
+        });
+        answers.put("isCurrentlyRunning", args -> false);
+        proxy = SimulatedServer.stub(BukkitScheduler.class, answers);
+        return proxy;
+    }
+
+    private BukkitTask schedule(Plugin owner, Object body, long delay, long period, boolean sync) {
+        ScheduledTask task = new ScheduledTask(nextId.getAndIncrement(), owner, sync, period);
+        task.body = toRunnable(body, task);
+
+        if (sync) {
+            synchronized (lock) {
+                task.nextRunTick = currentTick + Math.max(1L, delay);
+                tasks.put(task.id, task);
+                syncQueue.add(task);
+            }
+        } else if (delay <= 0 && period <= 0) {
+            asyncPool.execute(() -> {
+                if (!task.cancelled) {
+                    task.body.run();
+                }
+            });
+        } else {
+            // 延迟或周期异步任务先在主线程队列中等待，到期后再移交线程池
+            Runnable asyncBody = task.body;
+            task.body = () -> asyncPool.execute(asyncBody);
+            synchronized (lock) {
+                task.nextRunTick = currentTick + Math.max(1L, delay);
+                tasks.put(task.id, task);
+                syncQueue.add(task);
+            }
+        }
+        // Consumer 变体没有返回值，多返回一个对象没有影响
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Runnable toRunnable(Object body, ScheduledTask task) {
+        if (body instanceof Runnable) {
+            return (Runnable) body;
+        }
+        if (body instanceof Consumer) {
+            return () -> ((Consumer<Object>) body).accept(task);
+        }
+        throw new IllegalArgumentException("Unsupported task type: " + body);
+    }
+
+    private void cancel(int taskId) {
+        synchronized (lock) {
+            ScheduledTask task = tasks.remove(taskId);
+            if (task != null) {
+                task.cancelled = true;
+                syncQueue.remove(task);
+            }
+        }
+    }
+
+    private void cancelAll(Plugin owner) {
+        synchronized (lock) {
+            Iterator<ScheduledTask> iterator = tasks.values().iterator();
+            while (iterator.hasNext()) {
+                ScheduledTask task = iterator.next();
+                if (task.owner == owner) {
+                    task.cancelled = true;
+                    syncQueue.remove(task);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private final class ScheduledTask implements BukkitTask {
+        private final int id;
+        private final Plugin owner;
+        private final boolean sync;
+        private final long period;
+        private volatile boolean cancelled;
+        private Runnable body;
+        private long nextRunTick;
+
+        private ScheduledTask(int id, Plugin owner, boolean sync, long period) {
+            this.id = id;
+            this.owner = owner;
+            this.sync = sync;
+            this.period = period;
+        }
+
+        @Override
+        public int getTaskId() {
+            return id;
+        }
+
+        @Override
+        public Plugin getOwner() {
+            return owner;
+        }
+
+        @Override
+        public boolean isSync() {
+            return sync;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void cancel() {
+            SimulatedScheduler.this.cancel(id);
+            cancelled = true;
+        }
+    }
+}
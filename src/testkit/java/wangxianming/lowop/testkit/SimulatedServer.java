@@ -0,0 +1,333 @@
+package wangxianming.lowop.testkit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import wangxianming.lowop.LowOP;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 基于动态代理的无头 Bukkit 服务器，供基准测试与负载测试加载插件
+ * 同步任务由 {@link SimulatedScheduler} 按 tick 推进，lp 命令由 {@link FakeLuckPerms} 处理
+ */
+public final class SimulatedServer {
+
+    private static final Logger LOGGER = Logger.getLogger("LowOP-Sim");
+    private static final Map<UUID, Player> ONLINE_BY_UUID = new LinkedHashMap<>();
+    private static final Map<String, Player> ONLINE_BY_NAME = new HashMap<>();
+    private static final Map<UUID, OfflinePlayer> OFFLINE_BY_UUID = new LinkedHashMap<>();
+    private static final Map<String, OfflinePlayer> OFFLINE_BY_NAME = new HashMap<>();
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final SimulatedScheduler SCHEDULER = new SimulatedScheduler();
+    private static final FakeLuckPerms LUCK_PERMS = new FakeLuckPerms();
+    private static final LongAdder MESSAGES_SENT = new LongAdder();
+    private static volatile boolean luckPermsInstalled = true;
+    private static Server server;
+
+    static {
+        LOGGER.setLevel(Level.WARNING);
+    }
+
+    private SimulatedServer() {
+    }
+
+    /**
+     * 创建接口代理，未列出的方法返回类型默认值
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(SimulatedServer.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0D;
+        if (type == float.class) return 0F;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        if (type == String.class) return "";
+        if (type == Logger.class) return LOGGER;
+        if (type == List.class || type == Collection.class) return Collections.emptyList();
+        if (type == Set.class) return Collections.emptySet();
+        if (type == Map.class) return Collections.emptyMap();
+        return null;
+    }
+
+    /**
+     * 安装模拟服务器（每个 JVM 只能安装一次）
+     */
+    public static synchronized Server install() {
+        if (server != null) {
+            return server;
+        }
+
+        Plugin luckPerms = stub(Plugin.class, Map.of(
+            "getName", args -> "LuckPerms",
+            "isEnabled", args -> true,
+            "getDescription", args -> new PluginDescriptionFile("LuckPerms", "5.4-simulated", "me.lucko.luckperms.Simulated")
+        ));
+        PluginManager pluginManager = stub(PluginManager.class, Map.of(
+            "getPlugin", args -> luckPermsInstalled && "LuckPerms".equals(args[0]) ? luckPerms : null,
+            "isPluginEnabled", args -> luckPermsInstalled && "LuckPerms".equals(args[0]),
+            "registerEvents", args -> {
+                LISTENERS.add((Listener) args[0]);
+                return null;
+            }
+        ));
+        ConsoleCommandSender console = stub(ConsoleCommandSender.class, Map.of(
+            "getName", args -> "CONSOLE",
+            "hasPermission", args -> true,
+            "isOp", args -> true
+        ));
+
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("getName", args -> "SimulatedServer");
+        answers.put("getVersion", args -> "simulated");
+        answers.put("getBukkitVersion", args -> "1.21-R0.1-SNAPSHOT");
+        answers.put("getLogger", args -> LOGGER);
+        answers.put("getScheduler", args -> SCHEDULER.asBukkitScheduler());
+        answers.put("getPluginManager", args -> pluginManager);
+        answers.put("getConsoleSender", args -> console);
+        answers.put("isPrimaryThread", args -> SCHEDULER.isPrimaryThread());
+        answers.put("dispatchCommand", args -> luckPermsInstalled && LUCK_PERMS.dispatch((String) args[1]));
+        answers.put("getOnlinePlayers", args -> onlinePlayers());
+        answers.put("getOfflinePlayers", args -> offlinePlayers());
+        answers.put("getPlayer", args -> args[0] instanceof UUID ? onlinePlayer((UUID) args[0]) : onlinePlayer((String) args[0]));
+        answers.put("getPlayerExact", args -> onlinePlayer((String) args[0]));
+        answers.put("getOfflinePlayer", args -> args[0] instanceof UUID ? offlinePlayer((UUID) args[0]) : offlinePlayer((String) args[0]));
+
+        server = stub(Server.class, answers);
+        Bukkit.setServer(server);
+        return server;
+    }
+
+    public static SimulatedScheduler getScheduler() {
+        return SCHEDULER;
+    }
+
+    public static FakeLuckPerms getLuckPerms() {
+        return LUCK_PERMS;
+    }
+
+    public static void setLuckPermsInstalled(boolean installed) {
+        luckPermsInstalled = installed;
+    }
+
+    public static long getMessagesSent() {
+        return MESSAGES_SENT.sum();
+    }
+
+    private static synchronized Collection<Player> onlinePlayers() {
+        return Collections.unmodifiableCollection(new ArrayList<>(ONLINE_BY_UUID.values()));
+    }
+
+    private static synchronized OfflinePlayer[] offlinePlayers() {
+        return OFFLINE_BY_UUID.values().toArray(new OfflinePlayer[0]);
+    }
+
+    private static synchronized Player onlinePlayer(UUID uuid) {
+        return ONLINE_BY_UUID.get(uuid);
+    }
+
+    private static synchronized Player onlinePlayer(String name) {
+        return ONLINE_BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static synchronized OfflinePlayer offlinePlayer(UUID uuid) {
+        OfflinePlayer known = OFFLINE_BY_UUID.get(uuid);
+        return known != null ? known : offlinePlayer(null, uuid, false);
+    }
+
+    private static synchronized OfflinePlayer offlinePlayer(String name) {
+        OfflinePlayer known = OFFLINE_BY_NAME.get(name.toLowerCase(Locale.ROOT));
+        return known != null ? known : offlinePlayer(name, UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes()), false);
+    }
+
+    public static OfflinePlayer offlinePlayer(String name, UUID uuid, boolean playedBefore) {
+        return stub(OfflinePlayer.class, Map.of(
+            "getName", args -> name,
+            "getUniqueId", args -> uuid,
+            "hasPlayedBefore", args -> playedBefore,
+            "isOnline", args -> onlinePlayer(uuid) != null
+        ));
+    }
+
+    /**
+     * 固定权限集合的玩家
+     */
+    public static Player player(String name, UUID uuid, Set<String> permissions) {
+        return stub(Player.class, Map.of(
+            "getName", args -> name,
+            "getUniqueId", args -> uuid,
+            "hasPlayedBefore", args -> true,
+            "isOnline", args -> true,
+            "hasPermission", args -> permissions.contains((String) args[0]),
+            "getLocale", args -> "zh_cn"
+        ));
+    }
+
+    /**
+     * 权限来自 {@link FakeLuckPerms} 组关系的玩家，发送给玩家的消息只计数
+     */
+    public static Player simulatedPlayer(String name, UUID uuid, boolean staff) {
+        return stub(Player.class, Map.of(
+            "getName", args -> name,
+            "getUniqueId", args -> uuid,
+            "hasPlayedBefore", args -> true,
+            "isOnline", args -> onlinePlayer(uuid) != null,
+            "hasPermission", args -> staff || LUCK_PERMS.hasPermission(name, (String) args[0]),
+            "getLocale", args -> "zh_cn",
+            "sendMessage", args -> {
+                MESSAGES_SENT.increment();
+                return null;
+            }
+        ));
+    }
+
+    /**
+     * 注册离线玩家（曾经登录过）
+     */
+    public static synchronized void addOfflinePlayers(int count) {
+        for (int i = 0; i < count; i++) {
+            String name = "Player" + i;
+            UUID uuid = UUID.nameUUIDFromBytes(name.getBytes());
+            addKnownPlayer(name, uuid);
+        }
+    }
+
+    public static synchronized void addKnownPlayer(String name, UUID uuid) {
+        OfflinePlayer offline = offlinePlayer(name, uuid, true);
+        OFFLINE_BY_UUID.put(uuid, offline);
+        OFFLINE_BY_NAME.put(name.toLowerCase(Locale.ROOT), offline);
+    }
+
+    public static synchronized void addOnlinePlayer(Player player) {
+        ONLINE_BY_UUID.put(player.getUniqueId(), player);
+        ONLINE_BY_NAME.put(player.getName().toLowerCase(Locale.ROOT), player);
+        addKnownPlayer(player.getName(), player.getUniqueId());
+    }
+
+    public static synchronized void removeOnlinePlayer(Player player) {
+        ONLINE_BY_UUID.remove(player.getUniqueId());
+        ONLINE_BY_NAME.remove(player.getName().toLowerCase(Locale.ROOT));
+    }
+
+    public static synchronized void clearPlayers() {
+        ONLINE_BY_UUID.clear();
+        ONLINE_BY_NAME.clear();
+        OFFLINE_BY_UUID.clear();
+        OFFLINE_BY_NAME.clear();
+    }
+
+    /**
+     * 玩家登录：加入在线列表后触发 PlayerJoinEvent（必须在主线程调用）
+     */
+    public static void join(Player player) {
+        addOnlinePlayer(player);
+        callEvent(new PlayerJoinEvent(player, null), PlayerJoinEvent.class);
+    }
+
+    /**
+     * 玩家退出：先触发 PlayerQuitEvent，再从在线列表移除（与 Bukkit 顺序一致）
+     */
+    public static void quit(Player player) {
+        callEvent(new PlayerQuitEvent(player, null), PlayerQuitEvent.class);
+        removeOnlinePlayer(player);
+    }
+
+    /**
+     * 将事件分发给已注册监听器中参数类型匹配的 @EventHandler 方法
+     */
+    public static void callEvent(Event event, Class<? extends Event> eventType) {
+        for (Listener listener : LISTENERS) {
+            for (Method method : listener.getClass().getMethods()) {
+                if (!method.isAnnotationPresent(EventHandler.class) || method.getParameterCount() != 1
+                        || !method.getParameterTypes()[0].isAssignableFrom(eventType)) {
+                    continue;
+                }
+                try {
+                    method.invoke(listener, event);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                } catch (InvocationTargetException e) {
+                    System.err.println("[LowOP-Sim] " + method.getName() + " threw " + e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * 在临时数据目录中加载并启用插件
+     */
+    public static LowOP enablePlugin(File dataFolder) throws Exception {
+        Server simulatedServer = install();
+        PluginDescriptionFile description;
+        try (InputStream in = LowOP.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            description = new PluginDescriptionFile(in);
+        }
+
+        LISTENERS.clear();
+        LowOP plugin = new LowOP(new JavaPluginLoader(simulatedServer), description, dataFolder, new File(dataFolder, "LowOP.jar")) {
+        };
+        plugin.onEnable();
+        return plugin;
+    }
+
+    public static File createDataFolder() throws IOException {
+        File folder = Files.createTempDirectory("lowop-sim").toFile();
+        folder.deleteOnExit();
+        return folder;
+    }
+
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}